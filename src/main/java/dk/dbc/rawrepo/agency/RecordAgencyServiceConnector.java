@@ -2,20 +2,20 @@ package dk.dbc.rawrepo.agency;
 
 import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.httpclient.HttpGet;
-import dk.dbc.httpclient.PathBuilder;
+import dk.dbc.httpclient.HttpRequest;
 import dk.dbc.invariant.InvariantUtil;
+import dk.dbc.rawrepo.client.Bulkhead;
+import dk.dbc.rawrepo.client.ConnectorRetries;
+import dk.dbc.rawrepo.client.PathTemplate;
+import dk.dbc.rawrepo.client.TimingLogger;
 import dk.dbc.rawrepo.dto.AgencyCollectionDTO;
 import dk.dbc.rawrepo.dto.RecordIdCollectionDTO;
-import dk.dbc.util.Stopwatch;
-import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.core.Response;
-import net.jodah.failsafe.RetryPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.util.concurrent.TimeUnit;
 
 public class RecordAgencyServiceConnector {
     public enum TimingLogLevel {
@@ -25,21 +25,16 @@ public class RecordAgencyServiceConnector {
     private static final Logger LOGGER = LoggerFactory.getLogger(RecordAgencyServiceConnector.class);
 
     private static final String PATH_VARIABLE_AGENCY_ID = "agencyId";
-    private static final String PATH_ALL_AGENCIES = "/api/v1/agencies";
-    private static final String PATH_BIBLIOGRAPHIC_RECORD_IDS_FOR_AGENCY = String.format("api/v1/agency/{%s}/recordids",
-            PATH_VARIABLE_AGENCY_ID);
-
-    private static final RetryPolicy<Response> RETRY_POLICY = new RetryPolicy<Response>()
-            .handle(ProcessingException.class)
-            .handleResultIf(response -> response.getStatus() == 404
-                    || response.getStatus() == 500
-                    || response.getStatus() == 502)
-            .withDelay(Duration.ofSeconds(10))
-            .withMaxRetries(6);
+    private static final PathTemplate PATH_ALL_AGENCIES = new PathTemplate("/api/v1/agencies");
+    private static final PathTemplate PATH_BIBLIOGRAPHIC_RECORD_IDS_FOR_AGENCY = new PathTemplate(String.format("api/v1/agency/{%s}/recordids",
+            PATH_VARIABLE_AGENCY_ID));
+
+    private static final ConnectorRetries RETRIES = new ConnectorRetries(Duration.ofSeconds(10), 6, 404, 500, 502);
 
     private final FailSafeHttpClient failSafeHttpClient;
     private final String baseUrl;
-    private final RecordAgencyServiceConnector.LogLevelMethod logger;
+    private final TimingLogger logger;
+    private final Bulkhead bulkhead;
 
     /**
      * Returns new instance with default retry policy
@@ -48,7 +43,7 @@ public class RecordAgencyServiceConnector {
      * @param baseUrl    base URL for record service endpoint
      */
     public RecordAgencyServiceConnector(Client httpClient, String baseUrl) {
-        this(FailSafeHttpClient.create(httpClient, RETRY_POLICY), baseUrl, RecordAgencyServiceConnector.TimingLogLevel.INFO);
+        this(builder(httpClient, baseUrl));
     }
 
     /**
@@ -59,7 +54,7 @@ public class RecordAgencyServiceConnector {
      * @param level      timings log level
      */
     public RecordAgencyServiceConnector(Client httpClient, String baseUrl, RecordAgencyServiceConnector.TimingLogLevel level) {
-        this(FailSafeHttpClient.create(httpClient, RETRY_POLICY), baseUrl, level);
+        this(builder(httpClient, baseUrl).withTimingLogLevel(level));
     }
 
     /**
@@ -69,7 +64,7 @@ public class RecordAgencyServiceConnector {
      * @param baseUrl            base URL for record service endpoint
      */
     public RecordAgencyServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
-        this(failSafeHttpClient, baseUrl, RecordAgencyServiceConnector.TimingLogLevel.INFO);
+        this(builder(failSafeHttpClient, baseUrl));
     }
 
     /**
@@ -80,30 +75,38 @@ public class RecordAgencyServiceConnector {
      * @param level              timings log level
      */
     public RecordAgencyServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, RecordAgencyServiceConnector.TimingLogLevel level) {
+        this(builder(failSafeHttpClient, baseUrl).withTimingLogLevel(level));
+    }
+
+    private RecordAgencyServiceConnector(Builder builder) {
         this.failSafeHttpClient = InvariantUtil.checkNotNullOrThrow(
-                failSafeHttpClient, "failSafeHttpClient");
+                builder.failSafeHttpClient, "failSafeHttpClient");
         this.baseUrl = InvariantUtil.checkNotNullNotEmptyOrThrow(
-                baseUrl, "baseUrl");
-        switch (level) {
-            case TRACE:
-                logger = LOGGER::trace;
-                break;
-            case DEBUG:
-                logger = LOGGER::debug;
-                break;
-            case INFO:
-                logger = LOGGER::info;
-                break;
-            case WARN:
-                logger = LOGGER::warn;
-                break;
-            case ERROR:
-                logger = LOGGER::error;
-                break;
-            default:
-                logger = LOGGER::info;
-                break;
-        }
+                builder.baseUrl, "baseUrl");
+        logger = new TimingLogger(LOGGER, builder.level.name());
+        bulkhead = builder.bulkhead;
+    }
+
+    /**
+     * Returns builder of an instance with default retry policy
+     *
+     * @param httpClient web resources client
+     * @param baseUrl    base URL for record service endpoint
+     * @return new builder
+     */
+    public static Builder builder(Client httpClient, String baseUrl) {
+        return new Builder(FailSafeHttpClient.create(httpClient, RETRIES.getRetryPolicy()), baseUrl);
+    }
+
+    /**
+     * Returns builder of an instance with custom retry policy
+     *
+     * @param failSafeHttpClient web resources client with custom retry policy
+     * @param baseUrl            base URL for record service endpoint
+     * @return new builder
+     */
+    public static Builder builder(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
+        return new Builder(failSafeHttpClient, baseUrl);
     }
 
     public void close() {
@@ -111,48 +114,70 @@ public class RecordAgencyServiceConnector {
     }
 
     public Integer[] getAllAgencies() throws RecordAgencyServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_ALL_AGENCIES, AgencyCollectionDTO.class).toArray();
         } finally {
-            logger.log("getAllAgencies() took {} milliseconds",
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+            logger.log("getAllAgencies() took {} milliseconds", start);
         }
     }
 
     public RecordIdCollectionDTO getBibliographicRecordIdsForAgencyId(String agencyId) throws RecordAgencyServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_BIBLIOGRAPHIC_RECORD_IDS_FOR_AGENCY, agencyId, RecordIdCollectionDTO.class);
         } finally {
             logger.log("getBibliographicRecordIdsForAgencyId({}) took {} milliseconds",
-                    agencyId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, start);
         }
     }
 
-    private <T> T sendRequest(String basePath, String agencyId, Class<T> type)
+    private <T> T sendRequest(PathTemplate path, String agencyId, Class<T> type)
             throws RecordAgencyServiceConnectorException {
         InvariantUtil.checkNotNullNotEmptyOrThrow(agencyId, "agencyId");
-        final PathBuilder path = new PathBuilder(basePath)
-                .bind(PATH_VARIABLE_AGENCY_ID, agencyId);
         final HttpGet httpGet = new HttpGet(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
-                .withPathElements(path.build());
-        final Response response = httpGet.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, type);
+                .withPathElements(path.bind(agencyId));
+        acquireBulkhead();
+        try {
+            final Response response = execute(httpGet);
+            assertResponseStatus(response, Response.Status.OK);
+            return readResponseEntity(response, type);
+        } finally {
+            releaseBulkhead();
+        }
     }
 
-    private <T> T sendRequest(String basePath, Class<T> type)
+    private <T> T sendRequest(PathTemplate path, Class<T> type)
             throws RecordAgencyServiceConnectorException {
-        final PathBuilder path = new PathBuilder(basePath);
         final HttpGet httpGet = new HttpGet(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
-                .withPathElements(path.build());
-        final Response response = httpGet.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, type);
+                .withPathElements(path.elements());
+        acquireBulkhead();
+        try {
+            final Response response = execute(httpGet);
+            assertResponseStatus(response, Response.Status.OK);
+            return readResponseEntity(response, type);
+        } finally {
+            releaseBulkhead();
+        }
+    }
+
+    private void acquireBulkhead() throws RecordAgencyServiceConnectorException {
+        if (bulkhead != null && !bulkhead.acquire()) {
+            throw new RecordAgencyServiceConnectorException(
+                    String.format("Request rejected by %s bulkhead: %s", bulkhead.getName(), bulkhead));
+        }
+    }
+
+    private void releaseBulkhead() {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    private Response execute(HttpRequest<?> request) throws RecordAgencyServiceConnectorTimeoutException {
+        return RETRIES.execute(request, RecordAgencyServiceConnectorTimeoutException::new);
     }
 
     private <T> T readResponseEntity(Response response, Class<T> type)
@@ -178,8 +203,37 @@ public class RecordAgencyServiceConnector {
         }
     }
 
-    @FunctionalInterface
-    interface LogLevelMethod {
-        void log(String format, Object... objs);
+    public static class Builder {
+        private final FailSafeHttpClient failSafeHttpClient;
+        private final String baseUrl;
+        private RecordAgencyServiceConnector.TimingLogLevel level = RecordAgencyServiceConnector.TimingLogLevel.INFO;
+        private Bulkhead bulkhead;
+
+        private Builder(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
+            this.failSafeHttpClient = failSafeHttpClient;
+            this.baseUrl = baseUrl;
+        }
+
+        /**
+         * @param level timings log level, default INFO
+         * @return this builder
+         */
+        public Builder withTimingLogLevel(RecordAgencyServiceConnector.TimingLogLevel level) {
+            this.level = InvariantUtil.checkNotNullOrThrow(level, "level");
+            return this;
+        }
+
+        /**
+         * @param bulkhead bulkhead limiting the concurrency of agency requests
+         * @return this builder
+         */
+        public Builder withBulkhead(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+            return this;
+        }
+
+        public RecordAgencyServiceConnector build() {
+            return new RecordAgencyServiceConnector(this);
+        }
     }
 }
@@ -9,4 +9,8 @@ public class RecordAgencyServiceConnectorException extends Exception {
     public RecordAgencyServiceConnectorException(String msg) {
         super(msg);
     }
+
+    public RecordAgencyServiceConnectorException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
 }
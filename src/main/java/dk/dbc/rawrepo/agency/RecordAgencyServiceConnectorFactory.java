@@ -1,14 +1,16 @@
 package dk.dbc.rawrepo.agency;
 
-import dk.dbc.httpclient.HttpClient;
+import dk.dbc.rawrepo.client.Bulkhead;
+import dk.dbc.rawrepo.client.ClientFactory;
+import dk.dbc.rawrepo.client.ClientSettings;
+import dk.dbc.rawrepo.client.ClientSettingsConfig;
+import dk.dbc.rawrepo.client.LoadBalancer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.client.Client;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.jackson.JacksonFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,17 +18,38 @@ public class RecordAgencyServiceConnectorFactory {
     private static final Logger LOGGER = LoggerFactory.getLogger(RecordAgencyServiceConnectorFactory.class);
 
     public static RecordAgencyServiceConnector create(String recordAgencyServiceBaseUrl) {
-        final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
-        LOGGER.info("Creating RecordAgencyServiceConnector for: {}", recordAgencyServiceBaseUrl);
-        return new RecordAgencyServiceConnector(client, recordAgencyServiceBaseUrl);
+        return create(recordAgencyServiceBaseUrl, RecordAgencyServiceConnector.TimingLogLevel.INFO);
     }
 
     public static RecordAgencyServiceConnector create(String recordAgencyServiceBaseUrl, RecordAgencyServiceConnector.TimingLogLevel level) {
-        final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
-        LOGGER.info("Creating RecordAgencyServiceConnector for: {}", recordAgencyServiceBaseUrl);
-        return new RecordAgencyServiceConnector(client, recordAgencyServiceBaseUrl, level);
+        return create(recordAgencyServiceBaseUrl, level, new ClientSettings());
+    }
+
+    /**
+     * @param recordAgencyServiceBaseUrl base URL, or comma separated list of base URLs to load balance requests across
+     * @param level                      timings log level
+     * @param settings                   client settings
+     * @return new connector
+     */
+    public static RecordAgencyServiceConnector create(String recordAgencyServiceBaseUrl, RecordAgencyServiceConnector.TimingLogLevel level, ClientSettings settings) {
+        if (recordAgencyServiceBaseUrl != null && recordAgencyServiceBaseUrl.contains(",")) {
+            return create(new LoadBalancer(LoadBalancer.parseBaseUrls(recordAgencyServiceBaseUrl), settings), level, settings);
+        }
+        final Client client = ClientFactory.newClient(settings);
+        LOGGER.info("Creating RecordAgencyServiceConnector for: {} with {}", recordAgencyServiceBaseUrl, settings);
+        return RecordAgencyServiceConnector.builder(client, recordAgencyServiceBaseUrl)
+                .withTimingLogLevel(level)
+                .withBulkhead(Bulkhead.forGroup(settings, ClientSettings.BulkheadGroup.AGENCY))
+                .build();
+    }
+
+    public static RecordAgencyServiceConnector create(LoadBalancer loadBalancer, RecordAgencyServiceConnector.TimingLogLevel level, ClientSettings settings) {
+        final Client client = ClientFactory.newClient(settings, ClientFactory.newExecutorService(settings), loadBalancer);
+        LOGGER.info("Creating RecordAgencyServiceConnector for: {} with {}", loadBalancer, settings);
+        return RecordAgencyServiceConnector.builder(client, loadBalancer.getBaseUrl())
+                .withTimingLogLevel(level)
+                .withBulkhead(Bulkhead.forGroup(settings, ClientSettings.BulkheadGroup.AGENCY))
+                .build();
     }
 
     @Inject
@@ -37,11 +60,15 @@ public class RecordAgencyServiceConnectorFactory {
     @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_TIMING_LOG_LEVEL", defaultValue = "INFO")
     private RecordAgencyServiceConnector.TimingLogLevel level;
 
+    @Inject
+    private ClientSettingsConfig clientSettingsConfig;
+
     RecordAgencyServiceConnector recordAgencyServiceConnector;
 
     @PostConstruct
     public void initializeConnector() {
-        recordAgencyServiceConnector = RecordAgencyServiceConnectorFactory.create(recordAgencyServiceBaseUrl, level);
+        recordAgencyServiceConnector = RecordAgencyServiceConnectorFactory.create(recordAgencyServiceBaseUrl, level,
+                clientSettingsConfig.toClientSettings());
     }
 
     @Produces
@@ -0,0 +1,16 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.agency;
+
+/**
+ * Thrown when an agency lookup is not retried, because the {@link dk.dbc.rawrepo.client.Deadline}
+ * of the calling thread leaves no time for the retry delay
+ */
+public class RecordAgencyServiceConnectorTimeoutException extends RecordAgencyServiceConnectorException {
+    public RecordAgencyServiceConnectorTimeoutException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Small state files, like high-water marks and checkpoints, replaced
+ * atomically so a reader sees either the previous or the new content,
+ * also after a power loss
+ */
+public final class AtomicFiles {
+    private AtomicFiles() {
+    }
+
+    /**
+     * @param path state file
+     * @return trimmed content of the file, empty if the file does not exist or is blank
+     * @throws IOException on failure to read the file
+     */
+    public static Optional<String> read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        final String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+        return content.isEmpty() ? Optional.empty() : Optional.of(content);
+    }
+
+    /**
+     * Writes the content to a sibling temporary file, forces it to disk and
+     * moves it in place of the state file. The directory is then synced, so
+     * the move is durable, where the platform allows opening a directory.
+     *
+     * @param path    state file
+     * @param content content
+     * @throws IOException on failure to write, force or move the temporary file
+     */
+    public static void write(Path path, String content) throws IOException {
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = StandardCharsets.UTF_8.encode(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(path.toAbsolutePath().getParent());
+    }
+
+    private static void syncDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened or synced on some platforms, like Windows
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of reusable byte buffers for reading response bodies
+ * <p>
+ * Buffers are pooled in power of two size classes from 8 KiB up to the
+ * max buffer size. Leasing a buffer takes a pooled buffer of the smallest
+ * sufficient size class, if any, and closing the lease gives it back.
+ * Buffers larger than the max buffer size are allocated on demand and
+ * never pooled.
+ * </p>
+ * <pre>
+ *    try (BufferPool.Lease content = recordServiceConnector.leaseRecordContent(agencyId, bibliographicRecordId, params)) {
+ *        parse(content.getBuffer());
+ *    }
+ * </pre>
+ * <p>
+ * This class is thread safe, leases are not.
+ * </p>
+ */
+public class BufferPool {
+    private static final int MIN_SIZE_CLASS_SHIFT = 13;
+
+    private final int maxBufferSize;
+    private final ArrayBlockingQueue<ByteBuffer>[] sizeClasses;
+
+    private final LongAdder leased = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+
+    /**
+     * @param maxBufferSize          max size of pooled buffers, rounded up to a power of two
+     * @param maxBuffersPerSizeClass max number of idle buffers kept per size class
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int maxBufferSize, int maxBuffersPerSizeClass) {
+        if (maxBuffersPerSizeClass < 1) {
+            throw new IllegalArgumentException("maxBuffersPerSizeClass must be positive, was " + maxBuffersPerSizeClass);
+        }
+        final int sizeClassCount = sizeClass(Math.max(maxBufferSize, 1)) + 1;
+        this.maxBufferSize = sizeOf(sizeClassCount - 1);
+        this.sizeClasses = new ArrayBlockingQueue[sizeClassCount];
+        for (int i = 0; i < sizeClassCount; i++) {
+            sizeClasses[i] = new ArrayBlockingQueue<>(maxBuffersPerSizeClass);
+        }
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * @return number of buffers leased, including buffers replacing outgrown buffers
+     */
+    public long getLeased() {
+        return leased.sum();
+    }
+
+    /**
+     * @return number of buffers leased from the pool rather than allocated
+     */
+    public long getReused() {
+        return reused.sum();
+    }
+
+    /**
+     * @return number of buffers allocated
+     */
+    public long getAllocated() {
+        return allocated.sum();
+    }
+
+    /**
+     * @return number of idle buffers in the pool
+     */
+    public int getIdle() {
+        int idle = 0;
+        for (ArrayBlockingQueue<ByteBuffer> sizeClass : sizeClasses) {
+            idle += sizeClass.size();
+        }
+        return idle;
+    }
+
+    /**
+     * Leases cleared buffer of at least the given capacity
+     *
+     * @param minCapacity min capacity
+     * @return lease, to be closed when the buffer is no longer used
+     */
+    public Lease lease(int minCapacity) {
+        return new Lease(take(minCapacity));
+    }
+
+    private ByteBuffer take(int minCapacity) {
+        leased.increment();
+        allocated.increment();
+        if (minCapacity > maxBufferSize) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        final int sizeClass = sizeClass(minCapacity);
+        final ByteBuffer pooled = sizeClasses[sizeClass].poll();
+        if (pooled != null) {
+            allocated.decrement();
+            reused.increment();
+            return pooled.clear();
+        }
+        return ByteBuffer.allocate(sizeOf(sizeClass));
+    }
+
+    private void giveBack(ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        if (capacity <= maxBufferSize && Integer.bitCount(capacity) == 1) {
+            final int sizeClass = sizeClass(capacity);
+            if (sizeOf(sizeClass) == capacity) {
+                sizeClasses[sizeClass].offer(buffer);
+            }
+        }
+    }
+
+    private static int sizeClass(int capacity) {
+        final int shift = 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1);
+        return Math.max(0, shift - MIN_SIZE_CLASS_SHIFT);
+    }
+
+    private static int sizeOf(int sizeClass) {
+        return 1 << (sizeClass + MIN_SIZE_CLASS_SHIFT);
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{" +
+                "maxBufferSize=" + maxBufferSize +
+                ", leased=" + getLeased() +
+                ", reused=" + getReused() +
+                ", allocated=" + getAllocated() +
+                ", idle=" + getIdle() +
+                '}';
+    }
+
+    /**
+     * Buffer leased from the pool until closed
+     */
+    public final class Lease implements AutoCloseable {
+        private ByteBuffer buffer;
+
+        private Lease(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return leased buffer, not to be used after the lease is closed
+         * @throws IllegalStateException if the lease is closed
+         */
+        public ByteBuffer getBuffer() {
+            if (buffer == null) {
+                throw new IllegalStateException("Lease is closed");
+            }
+            return buffer;
+        }
+
+        /**
+         * Replaces the leased buffer by a buffer of at least the given capacity,
+         * holding the content of the current buffer up to its position
+         *
+         * @param minCapacity min capacity
+         * @return new buffer positioned after the copied content
+         */
+        public ByteBuffer grow(int minCapacity) {
+            final ByteBuffer current = getBuffer();
+            if (minCapacity <= current.capacity()) {
+                return current;
+            }
+            final ByteBuffer grown = take(minCapacity);
+            current.flip();
+            grown.put(current);
+            giveBack(current);
+            buffer = grown;
+            return grown;
+        }
+
+        /**
+         * Gives the buffer back to the pool
+         */
+        @Override
+        public void close() {
+            if (buffer != null) {
+                giveBack(buffer);
+                buffer = null;
+            }
+        }
+    }
+}
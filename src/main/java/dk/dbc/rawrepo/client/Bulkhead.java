@@ -0,0 +1,156 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of concurrent requests of a group of endpoints, so slow
+ * requests of one group cannot use up the capacity needed by other groups
+ * <p>
+ * Requests exceeding the concurrency limit wait for a permit, up to the max wait
+ * time. Requests arriving while the max number of requests is already waiting
+ * are rejected immediately.
+ * </p>
+ * <p>
+ * One bulkhead is shared by all requests of its group, permits are handed out
+ * fairly in the order requests started waiting.
+ * </p>
+ */
+public class Bulkhead {
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxWaiting;
+    private final long maxWaitNanos;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param name          name used in rejection messages
+     * @param maxConcurrent max number of concurrent requests
+     * @param maxWaiting    max number of requests waiting for a permit
+     * @param maxWait       max time a request waits for a permit, further
+     *                      limited by the {@link Deadline} of the calling thread
+     */
+    public Bulkhead(String name, int maxConcurrent, int maxWaiting, Duration maxWait) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be positive, was " + maxConcurrent);
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaiting = maxWaiting;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Creates bulkhead for the given group as configured by the given settings
+     *
+     * @param settings client settings
+     * @param group    endpoint group
+     * @return bulkhead or null if the concurrency of the group is not limited
+     */
+    public static Bulkhead forGroup(ClientSettings settings, ClientSettings.BulkheadGroup group) {
+        final int maxConcurrent = settings.getBulkheadMaxConcurrent(group);
+        if (maxConcurrent <= 0) {
+            return null;
+        }
+        return new Bulkhead(group.name().toLowerCase(Locale.ROOT), maxConcurrent,
+                settings.getBulkheadMaxWaiting(), Duration.ofMillis(settings.getBulkheadMaxWaitMs()));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * @return number of requests currently holding a permit
+     */
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * @return number of requests currently waiting for a permit
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * @return number of requests given a permit
+     */
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * @return number of requests rejected because of a full queue or wait timeout
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Acquires a permit, which must be given back by {@link #release()}
+     *
+     * @return true if a permit was acquired, false if the request is rejected
+     */
+    public boolean acquire() {
+        try {
+            // Unlike the untimed tryAcquire, a zero timeout does not barge ahead of waiting requests
+            if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                accepted.increment();
+                return true;
+            }
+            if (waiting.incrementAndGet() > maxWaiting) {
+                waiting.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+            try {
+                if (permits.tryAcquire(Deadline.boundNanos(maxWaitNanos), TimeUnit.NANOSECONDS)) {
+                    accepted.increment();
+                    return true;
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead{" +
+                "name='" + name + '\'' +
+                ", maxConcurrent=" + maxConcurrent +
+                ", active=" + getActive() +
+                ", waiting=" + getWaiting() +
+                ", accepted=" + getAccepted() +
+                ", rejected=" + getRejected() +
+                '}';
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import dk.dbc.httpclient.HttpClient;
+import jakarta.ws.rs.client.Client;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientLifecycleListener;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.HttpUrlConnectorProvider;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds the web resources clients used by the connector factories
+ */
+public final class ClientFactory {
+    private ClientFactory() {
+    }
+
+    /**
+     * Creates new web resources client
+     *
+     * @param settings client settings
+     * @return client, owning any executor created for it
+     */
+    public static Client newClient(ClientSettings settings) {
+        return newClient(settings, newExecutorService(settings));
+    }
+
+    /**
+     * Creates new web resources client
+     * <p>
+     * The given executor service (if any) runs the asynchronous invocations of
+     * the client, synchronous requests are unaffected. It is shut down when the
+     * client is closed.
+     * </p>
+     *
+     * @param settings        client settings
+     * @param executorService executor service, may be null
+     * @return client
+     */
+    public static Client newClient(ClientSettings settings, ExecutorService executorService) {
+        return newClient(settings, executorService, null);
+    }
+
+    /**
+     * Creates new web resources client
+     * <p>
+     * The given executor service (if any) runs the asynchronous invocations of
+     * the client, synchronous requests are unaffected. It is shut down when the
+     * client is closed. Requests addressing any of
+     * the endpoints of the given load balancer (if any) are spread over
+     * all its endpoints.
+     * </p>
+     *
+     * @param settings        client settings
+     * @param executorService executor service, may be null
+     * @param loadBalancer    load balancer, may be null
+     * @return client
+     */
+    public static Client newClient(ClientSettings settings, ExecutorService executorService,
+                                   LoadBalancer loadBalancer) {
+        final ClientConfig config = new ClientConfig()
+                .register(new JacksonFeature())
+                .register(new RecordDTOFeature());
+        if (executorService != null) {
+            config.executorService(executorService);
+            config.register(new OnClientClose(executorService::shutdownNow));
+        }
+        if (settings.getConnectTimeoutMs() > 0) {
+            config.property(ClientProperties.CONNECT_TIMEOUT, settings.getConnectTimeoutMs());
+        }
+        if (settings.getReadTimeoutMs() > 0) {
+            config.property(ClientProperties.READ_TIMEOUT, settings.getReadTimeoutMs());
+        }
+        config.register(new DeadlineFilter(settings));
+        if (settings.isCompression()) {
+            config.register(EncodingFilter.class)
+                    .register(GZipEncoder.class)
+                    .register(DeflateEncoder.class)
+                    .register(new TransferCountingInterceptor.Compressed(settings.getTransferStatistics()))
+                    .register(new TransferCountingInterceptor.Decoded(settings.getTransferStatistics()));
+        }
+        ConnectorProvider connectorProvider = null;
+        switch (settings.getTransport()) {
+            case POOLED:
+                connectorProvider = PooledTransport.configure(config, settings);
+                break;
+            case HTTP2:
+                connectorProvider = new JavaNetHttpConnectorProvider(settings, executorService);
+                break;
+            case DEFAULT:
+            default:
+                break;
+        }
+        if (loadBalancer != null) {
+            connectorProvider = new LoadBalancingConnectorProvider(connectorProvider == null
+                    ? new HttpUrlConnectorProvider() : connectorProvider, loadBalancer);
+        }
+        if (connectorProvider != null) {
+            config.connectorProvider(connectorProvider);
+        }
+        return HttpClient.newClient(config);
+    }
+
+    /**
+     * Creates executor service matching the executor mode of the given settings
+     *
+     * @param settings client settings
+     * @return executor service or null if Jersey defaults should be used
+     * @throws IllegalStateException if virtual threads are requested on a JVM without them
+     */
+    public static ExecutorService newExecutorService(ClientSettings settings) {
+        switch (settings.getExecutorMode()) {
+            case VIRTUAL:
+                return newVirtualThreadPerTaskExecutor();
+            case DEFAULT:
+            default:
+                return null;
+        }
+    }
+
+    /* Resolved reflectively, since the library is still
+       compiled for JDKs predating virtual threads */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Executor mode VIRTUAL requires virtual threads, not supported by JVM "
+                    + Runtime.version(), e);
+        }
+    }
+
+    /* Releases resources tied to the lifetime of a client */
+    static class OnClientClose implements ClientLifecycleListener {
+        private final Runnable action;
+
+        OnClientClose(Runnable action) {
+            this.action = action;
+        }
+
+        @Override
+        public void onInit() {
+        }
+
+        @Override
+        public void onClose() {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings used by the connector factories when building web resources clients
+ * <p>
+ * All settings default to the behaviour of a plain Jersey client, so
+ * {@code new ClientSettings()} yields the same client as the factories
+ * have always created.
+ * </p>
+ */
+public class ClientSettings {
+    /**
+     * Default max number of concurrent requests of a single connector fan-out
+     */
+    public static final int DEFAULT_FAN_OUT_PARALLELISM = 16;
+
+    /**
+     * Executors of connector fan-out, prefetching and hedging
+     * <p>
+     * The executor is also handed to Jersey, where it only runs asynchronous
+     * invocations ({@code request().async()}), synchronous requests always run
+     * in the calling thread.
+     * </p>
+     */
+    public enum ExecutorMode {
+        /**
+         * No executor, connector fan-out runs in the calling thread
+         */
+        DEFAULT,
+        /**
+         * Connector fan-out runs on virtual threads, limited by the fan-out parallelism.
+         * Requires a JVM with virtual threads, clients can not be created without.
+         */
+        VIRTUAL
+    }
+
+    public enum Transport {
+        /**
+         * Jersey default HttpURLConnection based transport
+         */
+        DEFAULT,
+        /**
+         * Apache HttpClient transport with a pool of persistent connections
+         */
+        POOLED,
+        /**
+         * JDK java.net.http transport multiplexing requests over HTTP/2
+         * connections, for plain http only if the server accepts an h2c upgrade.
+         * The read timeout limits the time until the response headers are received.
+         */
+        HTTP2
+    }
+
+    public enum LoadBalancing {
+        /**
+         * Requests go to the endpoint with fewest requests in flight
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * Requests go to the less loaded of two randomly picked endpoints
+         */
+        POWER_OF_TWO_CHOICES
+    }
+
+    public enum BulkheadGroup {
+        /**
+         * Single record lookups of the record service
+         */
+        LOOKUP,
+        /**
+         * Record collection requests of the record service
+         */
+        COLLECTION,
+        /**
+         * Dump service requests
+         */
+        DUMP,
+        /**
+         * Queue service requests
+         */
+        QUEUE,
+        /**
+         * Agency requests of the record service
+         */
+        AGENCY
+    }
+
+    private ExecutorMode executorMode = ExecutorMode.DEFAULT;
+    private Transport transport = Transport.DEFAULT;
+    private int maxConnections = 100;
+    private int maxConnectionsPerRoute = 20;
+    private int connectTimeoutMs = 0;
+    private int readTimeoutMs = 0;
+    private long idleTimeoutMs = 30000;
+    private long keepAliveMs = 60000;
+    private long connectionTtlMs = 0;
+    private boolean compression = false;
+    private TransferStatistics transferStatistics = new TransferStatistics();
+    private LoadBalancing loadBalancing = LoadBalancing.LEAST_OUTSTANDING;
+    private int ejectionThreshold = 5;
+    private long ejectionTimeMs = 30000;
+    private final Map<BulkheadGroup, Integer> bulkheadMaxConcurrent = new EnumMap<>(BulkheadGroup.class);
+    private int bulkheadMaxWaiting = 100;
+    private long bulkheadMaxWaitMs = 10000;
+    private int fanOutParallelism = DEFAULT_FAN_OUT_PARALLELISM;
+
+    public ClientSettings withExecutorMode(ExecutorMode executorMode) {
+        this.executorMode = executorMode == null ? ExecutorMode.DEFAULT : executorMode;
+        return this;
+    }
+
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+    public ClientSettings withTransport(Transport transport) {
+        this.transport = transport == null ? Transport.DEFAULT : transport;
+        return this;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @param maxConnections max number of pooled connections in total (POOLED transport only)
+     * @return this settings object
+     */
+    public ClientSettings withMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnectionsPerRoute max number of pooled connections per host (POOLED transport only)
+     * @return this settings object
+     */
+    public ClientSettings withMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        return this;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * @param connectTimeoutMs connect timeout in milliseconds, 0 means no timeout
+     * @return this settings object
+     */
+    public ClientSettings withConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        return this;
+    }
+
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    /**
+     * @param readTimeoutMs read timeout in milliseconds, 0 means no timeout
+     * @return this settings object
+     */
+    public ClientSettings withReadTimeoutMs(int readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+        return this;
+    }
+
+    public int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    /**
+     * @param idleTimeoutMs pooled connections idle for longer than this are evicted,
+     *                      0 disables eviction (POOLED transport only)
+     * @return this settings object
+     */
+    public ClientSettings withIdleTimeoutMs(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+        return this;
+    }
+
+    public long getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    /**
+     * @param keepAliveMs max time an idle connection is kept alive after a response,
+     *                    capping any keep-alive announced by the server (POOLED transport only)
+     * @return this settings object
+     */
+    public ClientSettings withKeepAliveMs(long keepAliveMs) {
+        this.keepAliveMs = keepAliveMs;
+        return this;
+    }
+
+    public long getKeepAliveMs() {
+        return keepAliveMs;
+    }
+
+    /**
+     * @param connectionTtlMs max total lifetime of a pooled connection, however busy,
+     *                        0 means no limit (POOLED transport only)
+     * @return this settings object
+     */
+    public ClientSettings withConnectionTtlMs(long connectionTtlMs) {
+        this.connectionTtlMs = connectionTtlMs;
+        return this;
+    }
+
+    public long getConnectionTtlMs() {
+        return connectionTtlMs;
+    }
+
+    /**
+     * @param compression if true, responses are requested gzip or deflate encoded
+     *                    and decoded transparently
+     * @return this settings object
+     */
+    public ClientSettings withCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * @param transferStatistics statistics object updated by clients created with
+     *                           these settings, allows sharing between clients
+     * @return this settings object
+     */
+    public ClientSettings withTransferStatistics(TransferStatistics transferStatistics) {
+        this.transferStatistics = transferStatistics == null ? new TransferStatistics() : transferStatistics;
+        return this;
+    }
+
+    public TransferStatistics getTransferStatistics() {
+        return transferStatistics;
+    }
+
+    /**
+     * @param loadBalancing strategy for selecting between multiple service base URLs
+     * @return this settings object
+     */
+    public ClientSettings withLoadBalancing(LoadBalancing loadBalancing) {
+        this.loadBalancing = loadBalancing == null ? LoadBalancing.LEAST_OUTSTANDING : loadBalancing;
+        return this;
+    }
+
+    public LoadBalancing getLoadBalancing() {
+        return loadBalancing;
+    }
+
+    /**
+     * @param ejectionThreshold number of consecutive failures ejecting a load balanced
+     *                          endpoint from selection, 0 disables ejection
+     * @return this settings object
+     */
+    public ClientSettings withEjectionThreshold(int ejectionThreshold) {
+        this.ejectionThreshold = ejectionThreshold;
+        return this;
+    }
+
+    public int getEjectionThreshold() {
+        return ejectionThreshold;
+    }
+
+    /**
+     * @param ejectionTimeMs time in milliseconds an ejected endpoint is left out of selection
+     * @return this settings object
+     */
+    public ClientSettings withEjectionTimeMs(long ejectionTimeMs) {
+        this.ejectionTimeMs = ejectionTimeMs;
+        return this;
+    }
+
+    public long getEjectionTimeMs() {
+        return ejectionTimeMs;
+    }
+
+    /**
+     * @param group         endpoint group
+     * @param maxConcurrent max number of concurrent requests of the group, 0 means no limit
+     * @return this settings object
+     */
+    public ClientSettings withBulkheadMaxConcurrent(BulkheadGroup group, int maxConcurrent) {
+        bulkheadMaxConcurrent.put(group, maxConcurrent);
+        return this;
+    }
+
+    public int getBulkheadMaxConcurrent(BulkheadGroup group) {
+        return bulkheadMaxConcurrent.getOrDefault(group, 0);
+    }
+
+    /**
+     * @param bulkheadMaxWaiting max number of requests of a group waiting for a bulkhead
+     *                           permit, more requests are rejected immediately
+     * @return this settings object
+     */
+    public ClientSettings withBulkheadMaxWaiting(int bulkheadMaxWaiting) {
+        this.bulkheadMaxWaiting = bulkheadMaxWaiting;
+        return this;
+    }
+
+    public int getBulkheadMaxWaiting() {
+        return bulkheadMaxWaiting;
+    }
+
+    /**
+     * @param bulkheadMaxWaitMs max time in milliseconds a request waits for a bulkhead permit
+     * @return this settings object
+     */
+    public ClientSettings withBulkheadMaxWaitMs(long bulkheadMaxWaitMs) {
+        this.bulkheadMaxWaitMs = bulkheadMaxWaitMs;
+        return this;
+    }
+
+    public long getBulkheadMaxWaitMs() {
+        return bulkheadMaxWaitMs;
+    }
+
+    /**
+     * @param fanOutParallelism max number of concurrent requests of a single connector
+     *                          fan-out, e.g. a bulk lookup (VIRTUAL executor mode only)
+     * @return this settings object
+     */
+    public ClientSettings withFanOutParallelism(int fanOutParallelism) {
+        this.fanOutParallelism = fanOutParallelism;
+        return this;
+    }
+
+    public int getFanOutParallelism() {
+        return fanOutParallelism;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientSettings{" +
+                "executorMode=" + executorMode +
+                ", transport=" + transport +
+                ", maxConnections=" + maxConnections +
+                ", maxConnectionsPerRoute=" + maxConnectionsPerRoute +
+                ", connectTimeoutMs=" + connectTimeoutMs +
+                ", readTimeoutMs=" + readTimeoutMs +
+                ", idleTimeoutMs=" + idleTimeoutMs +
+                ", keepAliveMs=" + keepAliveMs +
+                ", connectionTtlMs=" + connectionTtlMs +
+                ", compression=" + compression +
+                ", loadBalancing=" + loadBalancing +
+                ", ejectionThreshold=" + ejectionThreshold +
+                ", ejectionTimeMs=" + ejectionTimeMs +
+                ", bulkheadMaxConcurrent=" + bulkheadMaxConcurrent +
+                ", bulkheadMaxWaiting=" + bulkheadMaxWaiting +
+                ", bulkheadMaxWaitMs=" + bulkheadMaxWaitMs +
+                ", fanOutParallelism=" + fanOutParallelism +
+                '}';
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Client settings shared by the connector factories in CDI enabled environments
+ * <p>
+ * Settings are read from system properties or environment variables:
+ * </p>
+ * <ul>
+ *     <li>RAWREPO_RECORD_SERVICE_EXECUTOR_MODE: DEFAULT(default) or VIRTUAL</li>
+ *     <li>RAWREPO_RECORD_SERVICE_TRANSPORT: DEFAULT(default), POOLED or HTTP2</li>
+ *     <li>RAWREPO_RECORD_SERVICE_MAX_CONNECTIONS: default 100</li>
+ *     <li>RAWREPO_RECORD_SERVICE_MAX_CONNECTIONS_PER_ROUTE: default 20</li>
+ *     <li>RAWREPO_RECORD_SERVICE_CONNECT_TIMEOUT_MS: default 0 (no timeout)</li>
+ *     <li>RAWREPO_RECORD_SERVICE_READ_TIMEOUT_MS: default 0 (no timeout)</li>
+ *     <li>RAWREPO_RECORD_SERVICE_IDLE_TIMEOUT_MS: default 30000</li>
+ *     <li>RAWREPO_RECORD_SERVICE_KEEP_ALIVE_MS: default 60000</li>
+ *     <li>RAWREPO_RECORD_SERVICE_CONNECTION_TTL_MS: default 0 (no limit)</li>
+ *     <li>RAWREPO_RECORD_SERVICE_COMPRESSION: default false</li>
+ *     <li>RAWREPO_RECORD_SERVICE_LOAD_BALANCING: LEAST_OUTSTANDING(default) or POWER_OF_TWO_CHOICES</li>
+ *     <li>RAWREPO_RECORD_SERVICE_EJECTION_THRESHOLD: default 5</li>
+ *     <li>RAWREPO_RECORD_SERVICE_EJECTION_TIME_MS: default 30000</li>
+ *     <li>RAWREPO_RECORD_SERVICE_BULKHEAD_LOOKUP_MAX_CONCURRENT: default 0 (no limit)</li>
+ *     <li>RAWREPO_RECORD_SERVICE_BULKHEAD_COLLECTION_MAX_CONCURRENT: default 0 (no limit)</li>
+ *     <li>RAWREPO_RECORD_SERVICE_BULKHEAD_DUMP_MAX_CONCURRENT: default 0 (no limit)</li>
+ *     <li>RAWREPO_RECORD_SERVICE_BULKHEAD_QUEUE_MAX_CONCURRENT: default 0 (no limit)</li>
+ *     <li>RAWREPO_RECORD_SERVICE_BULKHEAD_AGENCY_MAX_CONCURRENT: default 0 (no limit)</li>
+ *     <li>RAWREPO_RECORD_SERVICE_BULKHEAD_MAX_WAITING: default 100</li>
+ *     <li>RAWREPO_RECORD_SERVICE_BULKHEAD_MAX_WAIT_MS: default 10000</li>
+ *     <li>RAWREPO_RECORD_SERVICE_FAN_OUT_PARALLELISM: default 16</li>
+ * </ul>
+ * <p>
+ * All connectors created from these settings report compressed transfers to
+ * the same {@link TransferStatistics} instance.
+ * </p>
+ */
+@ApplicationScoped
+public class ClientSettingsConfig {
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_EXECUTOR_MODE", defaultValue = "DEFAULT")
+    private ClientSettings.ExecutorMode executorMode;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_TRANSPORT", defaultValue = "DEFAULT")
+    private ClientSettings.Transport transport;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_MAX_CONNECTIONS", defaultValue = "100")
+    private int maxConnections;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_MAX_CONNECTIONS_PER_ROUTE", defaultValue = "20")
+    private int maxConnectionsPerRoute;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_CONNECT_TIMEOUT_MS", defaultValue = "0")
+    private int connectTimeoutMs;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_READ_TIMEOUT_MS", defaultValue = "0")
+    private int readTimeoutMs;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_IDLE_TIMEOUT_MS", defaultValue = "30000")
+    private long idleTimeoutMs;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_KEEP_ALIVE_MS", defaultValue = "60000")
+    private long keepAliveMs;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_CONNECTION_TTL_MS", defaultValue = "0")
+    private long connectionTtlMs;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_COMPRESSION", defaultValue = "false")
+    private boolean compression;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_LOAD_BALANCING", defaultValue = "LEAST_OUTSTANDING")
+    private ClientSettings.LoadBalancing loadBalancing;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_EJECTION_THRESHOLD", defaultValue = "5")
+    private int ejectionThreshold;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_EJECTION_TIME_MS", defaultValue = "30000")
+    private long ejectionTimeMs;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_BULKHEAD_LOOKUP_MAX_CONCURRENT", defaultValue = "0")
+    private int bulkheadLookupMaxConcurrent;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_BULKHEAD_COLLECTION_MAX_CONCURRENT", defaultValue = "0")
+    private int bulkheadCollectionMaxConcurrent;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_BULKHEAD_DUMP_MAX_CONCURRENT", defaultValue = "0")
+    private int bulkheadDumpMaxConcurrent;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_BULKHEAD_QUEUE_MAX_CONCURRENT", defaultValue = "0")
+    private int bulkheadQueueMaxConcurrent;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_BULKHEAD_AGENCY_MAX_CONCURRENT", defaultValue = "0")
+    private int bulkheadAgencyMaxConcurrent;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_BULKHEAD_MAX_WAITING", defaultValue = "100")
+    private int bulkheadMaxWaiting;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_BULKHEAD_MAX_WAIT_MS", defaultValue = "10000")
+    private long bulkheadMaxWaitMs;
+
+    @Inject
+    @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_FAN_OUT_PARALLELISM", defaultValue = "16")
+    private int fanOutParallelism;
+
+    private final TransferStatistics transferStatistics = new TransferStatistics();
+
+    public TransferStatistics getTransferStatistics() {
+        return transferStatistics;
+    }
+
+    public ClientSettings toClientSettings() {
+        return new ClientSettings()
+                .withExecutorMode(executorMode)
+                .withTransport(transport)
+                .withMaxConnections(maxConnections)
+                .withMaxConnectionsPerRoute(maxConnectionsPerRoute)
+                .withConnectTimeoutMs(connectTimeoutMs)
+                .withReadTimeoutMs(readTimeoutMs)
+                .withIdleTimeoutMs(idleTimeoutMs)
+                .withKeepAliveMs(keepAliveMs)
+                .withConnectionTtlMs(connectionTtlMs)
+                .withCompression(compression)
+                .withTransferStatistics(transferStatistics)
+                .withLoadBalancing(loadBalancing)
+                .withEjectionThreshold(ejectionThreshold)
+                .withEjectionTimeMs(ejectionTimeMs)
+                .withBulkheadMaxConcurrent(ClientSettings.BulkheadGroup.LOOKUP, bulkheadLookupMaxConcurrent)
+                .withBulkheadMaxConcurrent(ClientSettings.BulkheadGroup.COLLECTION, bulkheadCollectionMaxConcurrent)
+                .withBulkheadMaxConcurrent(ClientSettings.BulkheadGroup.DUMP, bulkheadDumpMaxConcurrent)
+                .withBulkheadMaxConcurrent(ClientSettings.BulkheadGroup.QUEUE, bulkheadQueueMaxConcurrent)
+                .withBulkheadMaxConcurrent(ClientSettings.BulkheadGroup.AGENCY, bulkheadAgencyMaxConcurrent)
+                .withBulkheadMaxWaiting(bulkheadMaxWaiting)
+                .withBulkheadMaxWaitMs(bulkheadMaxWaitMs)
+                .withFanOutParallelism(fanOutParallelism);
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import dk.dbc.httpclient.HttpRequest;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Connector request parameters, which can be frozen into an immutable instance
+ * <p>
+ * Freezing copies the parameters, collection and map values included, into
+ * unmodifiable copies, so later changes to the original parameters or to the
+ * collections they were given do not show through. The parameters are sorted
+ * by name and URL encoded once, when frozen, and the hash code is computed
+ * once, making frozen parameters cheap to use as cache keys. Adding frozen
+ * parameters to a request still adds each of them as a query parameter, but
+ * without sorting or copying. Frozen parameters can be shared between threads,
+ * all attempts to modify them throw {@link UnsupportedOperationException}.
+ * </p>
+ * <pre>
+ *    static final Params MERGED = new Params()
+ *            .withMode(Params.Mode.MERGED)
+ *            .withAllowDeleted(true)
+ *            .freeze();
+ * </pre>
+ */
+public abstract class ConnectorParams extends HashMap<String, Object> {
+    private volatile boolean frozen;
+    private String[] names;
+    private Object[] values;
+    private String encoded;
+    private int hash;
+    private Map<String, Object> view;
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Adds the parameters as query parameters of the given request
+     *
+     * @param request request
+     */
+    public void addQueryParameters(HttpRequest<?> request) {
+        if (frozen) {
+            for (int i = 0; i < names.length; i++) {
+                request.withQueryParameter(names[i], values[i]);
+            }
+        } else {
+            for (Map.Entry<String, Object> param : entrySet()) {
+                request.withQueryParameter(param.getKey(), param.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return parameters sorted by name in URL encoded form, e.g. allow-deleted=true&amp;mode=merged
+     */
+    public String toQueryString() {
+        if (frozen) {
+            return encoded;
+        }
+        return encode(new TreeMap<>(this));
+    }
+
+    /**
+     * Returns immutable copy of these parameters
+     *
+     * @param factory creates empty parameters of the same class as these
+     * @param <P>     parameters type
+     * @return frozen parameters, this instance if already frozen
+     */
+    @SuppressWarnings("unchecked")
+    protected <P extends ConnectorParams> P freeze(Supplier<P> factory) {
+        if (frozen) {
+            return (P) this;
+        }
+        final ConnectorParams copy = factory.get();
+        copy.seal(this);
+        return (P) copy;
+    }
+
+    private void seal(Map<String, Object> params) {
+        final TreeMap<String, Object> sorted = new TreeMap<>();
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            sorted.put(param.getKey(), immutableCopy(param.getValue()));
+        }
+        super.putAll(sorted);
+        names = sorted.keySet().toArray(new String[0]);
+        values = sorted.values().toArray();
+        encoded = encode(sorted);
+        hash = super.hashCode();
+        view = Collections.unmodifiableMap(sorted);
+        frozen = true;
+    }
+
+    /* Lists stay lists and sets stay sets, so typed getters keep working */
+    private static Object immutableCopy(Object value) {
+        if (value instanceof List) {
+            return Collections.unmodifiableList(new ArrayList<>((List<?>) value));
+        }
+        if (value instanceof Set) {
+            return Collections.unmodifiableSet(new LinkedHashSet<>((Set<?>) value));
+        }
+        if (value instanceof Collection) {
+            return Collections.unmodifiableCollection(new ArrayList<>((Collection<?>) value));
+        }
+        if (value instanceof Map) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>((Map<?, ?>) value));
+        }
+        return value;
+    }
+
+    private static String encode(TreeMap<String, Object> sorted) {
+        final StringBuilder query = new StringBuilder();
+        for (Map.Entry<String, Object> param : sorted.entrySet()) {
+            if (query.length() > 0) {
+                query.append('&');
+            }
+            query.append(URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8))
+                    .append('=')
+                    .append(URLEncoder.encode(String.valueOf(param.getValue()), StandardCharsets.UTF_8));
+        }
+        return query.toString();
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Frozen parameters can not be modified");
+        }
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        checkNotFrozen();
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ?> m) {
+        checkNotFrozen();
+        super.putAll(m);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        checkNotFrozen();
+        return super.remove(key);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        checkNotFrozen();
+        return super.remove(key, value);
+    }
+
+    @Override
+    public void clear() {
+        checkNotFrozen();
+        super.clear();
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        checkNotFrozen();
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        checkNotFrozen();
+        return super.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        checkNotFrozen();
+        return super.replace(key, value);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        checkNotFrozen();
+        super.replaceAll(function);
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        checkNotFrozen();
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        checkNotFrozen();
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        checkNotFrozen();
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        checkNotFrozen();
+        return super.merge(key, value, remappingFunction);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return frozen ? view.keySet() : super.keySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return frozen ? view.values() : super.values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return frozen ? view.entrySet() : super.entrySet();
+    }
+
+    @Override
+    public int hashCode() {
+        return frozen ? hash : super.hashCode();
+    }
+}
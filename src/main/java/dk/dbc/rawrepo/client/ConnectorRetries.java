@@ -0,0 +1,90 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import dk.dbc.httpclient.HttpRequest;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.core.Response;
+import net.jodah.failsafe.RetryPolicy;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Default retry policy of a connector, and execution of requests honouring
+ * the {@link Deadline} of the calling thread
+ * <p>
+ * Connection errors and the given response statuses are retried after a fixed
+ * delay, until the max number of retries is reached or the delay would pass
+ * the deadline. A request given up on because of the deadline, after a
+ * connection error or a retried server error status, is reported by
+ * {@link #execute(HttpRequest, BiFunction)} as the timeout exception of the
+ * connector. A retried 404 is an answer of the service and is returned as is.
+ * </p>
+ */
+public final class ConnectorRetries {
+    private final Duration delay;
+    private final Set<Integer> retriedStatuses;
+    private final RetryPolicy<Response> retryPolicy;
+
+    /**
+     * @param delay           delay between attempts
+     * @param maxRetries      max number of retries
+     * @param retriedStatuses response statuses retried
+     */
+    public ConnectorRetries(Duration delay, int maxRetries, Integer... retriedStatuses) {
+        this.delay = delay;
+        this.retriedStatuses = Set.of(retriedStatuses);
+        this.retryPolicy = new RetryPolicy<Response>()
+                .handle(ProcessingException.class)
+                .handleResultIf(response -> this.retriedStatuses.contains(response.getStatus()))
+                .abortIf((response, failure) -> Deadline.expiresWithin(delay))
+                .withDelay(delay)
+                .withMaxRetries(maxRetries);
+    }
+
+    public RetryPolicy<Response> getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Executes request
+     *
+     * @param request          request
+     * @param timeoutException constructor of the timeout exception of the connector
+     * @param <E>              timeout exception type
+     * @return response
+     * @throws E if retries were given up on because of the deadline
+     */
+    public <E extends Exception> Response execute(HttpRequest<?> request,
+                                                  BiFunction<String, Throwable, E> timeoutException) throws E {
+        final Response response;
+        try {
+            response = request.execute();
+        } catch (ProcessingException e) {
+            if (Deadline.expiresWithin(delay)) {
+                throw timeoutException.apply("Request failed with no time left before deadline", e);
+            }
+            throw e;
+        }
+        final int status = response.getStatus();
+        if (status >= 500 && retriedStatuses.contains(status) && Deadline.expiresWithin(delay)) {
+            response.close();
+            throw timeoutException.apply(String.format(
+                    "Request answered with status code %d with no time left before deadline", status), null);
+        }
+        return response;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectorRetries{" +
+                "delay=" + delay +
+                ", retriedStatuses=" + retriedStatuses +
+                '}';
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * Deadline for all connector calls made by the current thread
+ * <p>
+ * Synopsis:
+ * </p>
+ * <pre>
+ *    try (Deadline deadline = Deadline.start(Duration.ofMillis(500))) {
+ *        RecordDTO record = recordServiceConnector.getRecordData(recordId);
+ *        ...
+ *    }
+ * </pre>
+ * <p>
+ * While a deadline is active, connect and read timeouts of clients created by
+ * {@link ClientFactory} are capped by the remaining time, retries are abandoned
+ * when the retry delay would pass the deadline, and connector calls failing
+ * after the deadline has passed throw the timeout exception of the connector.
+ * Nested deadlines never extend an enclosing deadline. Connector fan-out
+ * propagates the deadline to the executing threads.
+ * </p>
+ */
+public final class Deadline implements AutoCloseable {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final Deadline previous;
+
+    private Deadline(long deadlineNanos, Deadline previous) {
+        this.deadlineNanos = deadlineNanos;
+        this.previous = previous;
+    }
+
+    /**
+     * Activates deadline for the current thread until closed
+     *
+     * @param timeout time from now until the deadline
+     * @return deadline, to be closed when the calls it covers are done
+     */
+    public static Deadline start(Duration timeout) {
+        final Deadline current = CURRENT.get();
+        long deadlineNanos = System.nanoTime() + timeout.toNanos();
+        if (current != null && current.deadlineNanos - deadlineNanos < 0) {
+            deadlineNanos = current.deadlineNanos;
+        }
+        return activate(deadlineNanos);
+    }
+
+    /**
+     * @return deadline active for the current thread or null if none is active
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Wraps task, so it runs under the deadline active for the current thread (if any)
+     *
+     * @param task task to be run by another thread
+     * @param <T>  result type
+     * @return wrapped task
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        final Deadline current = CURRENT.get();
+        if (current == null) {
+            return task;
+        }
+        return () -> {
+            try (Deadline ignored = activate(current.deadlineNanos)) {
+                return task.call();
+            }
+        };
+    }
+
+    /**
+     * @param duration duration
+     * @return true if a deadline is active for the current thread and
+     * is reached before the given duration has passed
+     */
+    public static boolean expiresWithin(Duration duration) {
+        final Deadline current = CURRENT.get();
+        return current != null && current.remainingNanos() < duration.toNanos();
+    }
+
+    /**
+     * @param nanos max time in nanoseconds
+     * @return given time capped by the time remaining of the deadline
+     * active for the current thread (if any)
+     */
+    public static long boundNanos(long nanos) {
+        final Deadline current = CURRENT.get();
+        if (current == null) {
+            return nanos;
+        }
+        return Math.max(0, Math.min(nanos, current.remainingNanos()));
+    }
+
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, remainingNanos()));
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * Restores the deadline active when this deadline was started
+     */
+    @Override
+    public void close() {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + remaining() + '}';
+    }
+
+    private static Deadline activate(long deadlineNanos) {
+        final Deadline deadline = new Deadline(deadlineNanos, CURRENT.get());
+        CURRENT.set(deadline);
+        return deadline;
+    }
+}
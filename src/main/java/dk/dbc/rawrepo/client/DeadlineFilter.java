@@ -0,0 +1,49 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import org.glassfish.jersey.client.ClientProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps connect and read timeouts of each request by the time
+ * remaining of the {@link Deadline} active for the calling thread
+ */
+class DeadlineFilter implements ClientRequestFilter {
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    DeadlineFilter(ClientSettings settings) {
+        this.connectTimeoutMs = settings.getConnectTimeoutMs();
+        this.readTimeoutMs = settings.getReadTimeoutMs();
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        final Deadline deadline = Deadline.current();
+        if (deadline == null) {
+            return;
+        }
+        final long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline.remainingNanos());
+        if (remainingMs <= 0) {
+            throw new ProcessingException("Deadline exceeded before sending request to " + requestContext.getUri());
+        }
+        requestContext.setProperty(ClientProperties.CONNECT_TIMEOUT, cap(connectTimeoutMs, remainingMs));
+        requestContext.setProperty(ClientProperties.READ_TIMEOUT, cap(readTimeoutMs, remainingMs));
+    }
+
+    /* A timeout of 0 means no timeout */
+    private static int cap(int timeoutMs, long remainingMs) {
+        if (timeoutMs > 0 && timeoutMs < remainingMs) {
+            return timeoutMs;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, remainingMs);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.core.Configuration;
+import jakarta.ws.rs.core.Response;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jersey connector provider using the JDK {@link HttpClient}, which multiplexes
+ * concurrent requests over a few HTTP/2 connections and falls back to HTTP/1.1
+ * if the server does not support HTTP/2
+ * <p>
+ * For https URLs HTTP/2 is negotiated during the TLS handshake. For plain http
+ * URLs the first request to a server is sent as HTTP/1.1 with an h2c upgrade
+ * header, and the connection continues as HTTP/2 only if the server accepts
+ * the upgrade. The JDK client never attempts the upgrade for requests with a
+ * body, so a connection opened by a POST stays HTTP/1.1.
+ * </p>
+ * <p>
+ * The read timeout ({@link ClientProperties#READ_TIMEOUT}) is applied as the
+ * request timeout of the JDK client, which limits the time until the response
+ * headers are received, not the time between reads of the response body.
+ * </p>
+ * <p>
+ * Request entities are written to memory before the request is sent, since
+ * entity writers and interceptors may still set headers while writing. The
+ * entities of the connectors are small JSON documents.
+ * </p>
+ */
+class JavaNetHttpConnectorProvider implements ConnectorProvider {
+    private final ClientSettings settings;
+    private final ExecutorService executorService;
+
+    JavaNetHttpConnectorProvider(ClientSettings settings, ExecutorService executorService) {
+        this.settings = settings;
+        this.executorService = executorService;
+    }
+
+    @Override
+    public Connector getConnector(Client client, Configuration runtimeConfig) {
+        return new JavaNetHttpConnector(settings, executorService);
+    }
+
+    static class JavaNetHttpConnector implements Connector {
+        private static final Logger LOGGER = LoggerFactory.getLogger(JavaNetHttpConnector.class);
+        private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+        /* Headers managed by the JDK client itself */
+        private static final Set<String> RESTRICTED_HEADERS =
+                Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+        private final HttpClient httpClient;
+        /* Executor created for the JDK client, null if the client executor is used */
+        private final ExecutorService ownExecutorService;
+
+        JavaNetHttpConnector(ClientSettings settings, ExecutorService executorService) {
+            final HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .followRedirects(HttpClient.Redirect.NORMAL);
+            if (settings.getConnectTimeoutMs() > 0) {
+                builder.connectTimeout(Duration.ofMillis(settings.getConnectTimeoutMs()));
+            }
+            if (executorService != null) {
+                ownExecutorService = null;
+                builder.executor(executorService);
+            } else {
+                // Otherwise the JDK client creates an executor that is only released when garbage collected
+                ownExecutorService = Executors.newCachedThreadPool(runnable -> {
+                    final Thread thread = new Thread(runnable, "rawrepo-http2-" + THREAD_COUNTER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                builder.executor(ownExecutorService);
+            }
+            httpClient = builder.build();
+        }
+
+        @Override
+        public ClientResponse apply(ClientRequest request) {
+            try {
+                final HttpResponse<InputStream> response = httpClient.send(
+                        toHttpRequest(request), HttpResponse.BodyHandlers.ofInputStream());
+                return toClientResponse(request, response);
+            } catch (IOException e) {
+                throw new ProcessingException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessingException(e);
+            }
+        }
+
+        @Override
+        public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+            final HttpRequest httpRequest;
+            try {
+                httpRequest = toHttpRequest(request);
+            } catch (IOException | RuntimeException e) {
+                callback.failure(e);
+                return CompletableFuture.failedFuture(e);
+            }
+            return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream())
+                    .whenComplete((response, failure) -> {
+                        if (failure != null) {
+                            callback.failure(failure);
+                        } else {
+                            callback.response(toClientResponse(request, response));
+                        }
+                    });
+        }
+
+        @Override
+        public String getName() {
+            return "java.net.http.HttpClient";
+        }
+
+        /* Closes the JDK client where it is closeable (JDK 21+), older clients
+           release their connections once garbage collected. An executor created
+           for the client is shut down right away. */
+        @Override
+        public void close() {
+            if (httpClient instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) httpClient).close();
+                } catch (Exception e) {
+                    LOGGER.debug("Closing JDK HTTP client failed", e);
+                }
+            }
+            if (ownExecutorService != null) {
+                ownExecutorService.shutdownNow();
+            }
+        }
+
+        private HttpRequest toHttpRequest(ClientRequest request) throws IOException {
+            final HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri());
+            final Integer readTimeoutMs = request.resolveProperty(ClientProperties.READ_TIMEOUT, 0);
+            if (readTimeoutMs != null && readTimeoutMs > 0) {
+                builder.timeout(Duration.ofMillis(readTimeoutMs));
+            }
+            // The entity is written first, writers and interceptors may set headers while writing it
+            final HttpRequest.BodyPublisher bodyPublisher = toBodyPublisher(request);
+            for (Map.Entry<String, List<String>> header : request.getStringHeaders().entrySet()) {
+                if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                    for (String value : header.getValue()) {
+                        builder.header(header.getKey(), value);
+                    }
+                }
+            }
+            return builder.method(request.getMethod(), bodyPublisher).build();
+        }
+
+        private HttpRequest.BodyPublisher toBodyPublisher(ClientRequest request) throws IOException {
+            if (!request.hasEntity()) {
+                return HttpRequest.BodyPublishers.noBody();
+            }
+            final ByteArrayOutputStream entity = new ByteArrayOutputStream();
+            request.setStreamProvider(contentLength -> entity);
+            request.writeEntity();
+            return HttpRequest.BodyPublishers.ofByteArray(entity.toByteArray());
+        }
+
+        private static ClientResponse toClientResponse(ClientRequest request, HttpResponse<InputStream> response) {
+            final ClientResponse clientResponse = new ClientResponse(toStatusType(response.statusCode()), request);
+            for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+                for (String value : header.getValue()) {
+                    clientResponse.getHeaders().add(header.getKey(), value);
+                }
+            }
+            clientResponse.setEntityStream(response.body());
+            return clientResponse;
+        }
+
+        private static Response.StatusType toStatusType(int statusCode) {
+            final Response.Status status = Response.Status.fromStatusCode(statusCode);
+            if (status != null) {
+                return status;
+            }
+            return new Response.StatusType() {
+                @Override
+                public int getStatusCode() {
+                    return statusCode;
+                }
+
+                @Override
+                public Response.Status.Family getFamily() {
+                    return Response.Status.Family.familyOf(statusCode);
+                }
+
+                @Override
+                public String getReasonPhrase() {
+                    return "";
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client side load balancer spreading requests over several instances of a service
+ * <p>
+ * Connectors are given the first base URL, clients created by
+ * {@link ClientFactory#newClient(ClientSettings, java.util.concurrent.ExecutorService, LoadBalancer)}
+ * route each request attempt (retries included) to the endpoint selected by
+ * the {@link ClientSettings.LoadBalancing} strategy. Endpoints failing a number of
+ * consecutive requests (connection errors or 5xx responses) are ejected from
+ * selection for a while, unless all endpoints are ejected.
+ * </p>
+ * <p>
+ * Endpoint selection is lock free, outstanding requests and failures of each
+ * endpoint are tracked with atomic counters.
+ * </p>
+ */
+public class LoadBalancer {
+    private final List<Endpoint> endpoints;
+    private final ClientSettings.LoadBalancing strategy;
+    private final int ejectionThreshold;
+    private final long ejectionTimeNanos;
+    private final AtomicInteger nextEndpoint = new AtomicInteger();
+
+    /**
+     * @param baseUrls base URLs of the service instances
+     * @param settings client settings supplying strategy and ejection settings
+     */
+    public LoadBalancer(List<String> baseUrls, ClientSettings settings) {
+        if (baseUrls == null || baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("baseUrls must not be empty");
+        }
+        final List<Endpoint> endpoints = new ArrayList<>(baseUrls.size());
+        for (String baseUrl : baseUrls) {
+            endpoints.add(new Endpoint(baseUrl));
+        }
+        this.endpoints = Collections.unmodifiableList(endpoints);
+        this.strategy = settings.getLoadBalancing();
+        this.ejectionThreshold = settings.getEjectionThreshold();
+        this.ejectionTimeNanos = Duration.ofMillis(settings.getEjectionTimeMs()).toNanos();
+    }
+
+    /**
+     * Splits comma separated list of base URLs
+     *
+     * @param baseUrls comma separated base URLs
+     * @return list of base URLs
+     */
+    public static List<String> parseBaseUrls(String baseUrls) {
+        final List<String> result = new ArrayList<>();
+        for (String baseUrl : baseUrls.split(",")) {
+            if (!baseUrl.isBlank()) {
+                result.add(baseUrl.trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return base URL to give connectors using this load balancer
+     */
+    public String getBaseUrl() {
+        return endpoints.get(0).getBaseUrl();
+    }
+
+    /**
+     * @return endpoints with their statistics
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    Endpoint select() {
+        final long now = System.nanoTime();
+        final int size = endpoints.size();
+        if (strategy == ClientSettings.LoadBalancing.POWER_OF_TWO_CHOICES && size > 1) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int first = random.nextInt(size);
+            final int second = (first + 1 + random.nextInt(size - 1)) % size;
+            final Endpoint endpoint = lessLoaded(endpoints.get(first), endpoints.get(second), now);
+            if (endpoint != null) {
+                return endpoint;
+            }
+        }
+        // Scanning from a rotating start spreads ties evenly
+        final int start = Math.floorMod(nextEndpoint.getAndIncrement(), size);
+        Endpoint selected = null;
+        Endpoint fallback = null;
+        for (int i = 0; i < size; i++) {
+            final Endpoint endpoint = endpoints.get((start + i) % size);
+            if (fallback == null || endpoint.getOutstanding() < fallback.getOutstanding()) {
+                fallback = endpoint;
+            }
+            if (!endpoint.isEjected(now)
+                    && (selected == null || endpoint.getOutstanding() < selected.getOutstanding())) {
+                selected = endpoint;
+            }
+        }
+        return selected != null ? selected : fallback;
+    }
+
+    /* Returns request URI routed to the given endpoint, or the URI
+       unchanged if it does not address any of the endpoints */
+    URI route(URI uri, Endpoint target) {
+        final String uriString = uri.toString();
+        for (Endpoint endpoint : endpoints) {
+            final String baseUrl = endpoint.getBaseUrl();
+            if (uriString.startsWith(baseUrl) && (uriString.length() == baseUrl.length()
+                    || "/?#".indexOf(uriString.charAt(baseUrl.length())) >= 0)) {
+                if (endpoint == target) {
+                    return uri;
+                }
+                return URI.create(target.getBaseUrl() + uriString.substring(baseUrl.length()));
+            }
+        }
+        return uri;
+    }
+
+    private Endpoint lessLoaded(Endpoint first, Endpoint second, long now) {
+        final boolean firstEjected = first.isEjected(now);
+        final boolean secondEjected = second.isEjected(now);
+        if (firstEjected && secondEjected) {
+            return null;
+        }
+        if (firstEjected) {
+            return second;
+        }
+        if (secondEjected) {
+            return first;
+        }
+        return first.getOutstanding() <= second.getOutstanding() ? first : second;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadBalancer{" +
+                "endpoints=" + endpoints +
+                ", strategy=" + strategy +
+                '}';
+    }
+
+    /**
+     * Service instance and its request statistics
+     */
+    public final class Endpoint {
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder ejections = new LongAdder();
+        private final LongAdder totalLatencyNanos = new LongAdder();
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+
+        private Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        /**
+         * @return number of requests currently in flight, a request is in
+         * flight until its response entity is closed
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * @return number of completed requests
+         */
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * @return number of requests failing with connection errors or 5xx responses
+         */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * @return number of times the endpoint has been ejected
+         */
+        public long getEjections() {
+            return ejections.sum();
+        }
+
+        /**
+         * @return mean time until response headers were received
+         */
+        public Duration getMeanLatency() {
+            final long count = requests.sum();
+            return count == 0 ? Duration.ZERO : Duration.ofNanos(totalLatencyNanos.sum() / count);
+        }
+
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+
+        boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+
+        void started() {
+            outstanding.incrementAndGet();
+        }
+
+        /* Request is no longer in flight, its response entity is consumed or closed */
+        void released() {
+            outstanding.decrementAndGet();
+        }
+
+        void responded(long latencyNanos, boolean failed) {
+            requests.increment();
+            totalLatencyNanos.add(latencyNanos);
+            if (!failed) {
+                consecutiveFailures.set(0);
+                return;
+            }
+            failures.increment();
+            if (ejectionThreshold > 0 && consecutiveFailures.incrementAndGet() >= ejectionThreshold) {
+                consecutiveFailures.set(0);
+                ejectedUntil = System.nanoTime() + ejectionTimeNanos;
+                ejected = true;
+                ejections.increment();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Endpoint{" +
+                    "baseUrl='" + baseUrl + '\'' +
+                    ", outstanding=" + getOutstanding() +
+                    ", requests=" + getRequests() +
+                    ", failures=" + getFailures() +
+                    ", meanLatency=" + getMeanLatency() +
+                    ", ejected=" + isEjected() +
+                    '}';
+        }
+    }
+}
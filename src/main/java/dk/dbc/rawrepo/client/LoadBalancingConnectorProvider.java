@@ -0,0 +1,146 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.core.Configuration;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Jersey connector provider routing each request through a {@link LoadBalancer}
+ * before handing it to the connector of the underlying transport
+ */
+class LoadBalancingConnectorProvider implements ConnectorProvider {
+    private final ConnectorProvider delegate;
+    private final LoadBalancer loadBalancer;
+
+    LoadBalancingConnectorProvider(ConnectorProvider delegate, LoadBalancer loadBalancer) {
+        this.delegate = delegate;
+        this.loadBalancer = loadBalancer;
+    }
+
+    @Override
+    public Connector getConnector(Client client, Configuration runtimeConfig) {
+        return new LoadBalancingConnector(delegate.getConnector(client, runtimeConfig), loadBalancer);
+    }
+
+    static class LoadBalancingConnector implements Connector {
+        private final Connector delegate;
+        private final LoadBalancer loadBalancer;
+
+        LoadBalancingConnector(Connector delegate, LoadBalancer loadBalancer) {
+            this.delegate = delegate;
+            this.loadBalancer = loadBalancer;
+        }
+
+        @Override
+        public ClientResponse apply(ClientRequest request) {
+            final LoadBalancer.Endpoint endpoint = route(request);
+            final long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                final ClientResponse response = delegate.apply(request);
+                failed = isFailure(response);
+                return releasedOnClose(response, endpoint);
+            } catch (RuntimeException e) {
+                endpoint.released();
+                throw e;
+            } finally {
+                endpoint.responded(System.nanoTime() - start, failed);
+            }
+        }
+
+        @Override
+        public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+            final LoadBalancer.Endpoint endpoint = route(request);
+            final long start = System.nanoTime();
+            try {
+                return delegate.apply(request, new AsyncConnectorCallback() {
+                    @Override
+                    public void response(ClientResponse response) {
+                        endpoint.responded(System.nanoTime() - start, isFailure(response));
+                        callback.response(releasedOnClose(response, endpoint));
+                    }
+
+                    @Override
+                    public void failure(Throwable failure) {
+                        endpoint.responded(System.nanoTime() - start, true);
+                        endpoint.released();
+                        callback.failure(failure);
+                    }
+                });
+            } catch (RuntimeException e) {
+                endpoint.responded(System.nanoTime() - start, true);
+                endpoint.released();
+                throw e;
+            }
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+        private LoadBalancer.Endpoint route(ClientRequest request) {
+            final LoadBalancer.Endpoint endpoint = loadBalancer.select();
+            request.setUri(loadBalancer.route(request.getUri(), endpoint));
+            endpoint.started();
+            return endpoint;
+        }
+
+        /* A request stays outstanding while its response entity is read,
+           large responses keep loading the endpoint after the headers */
+        private static ClientResponse releasedOnClose(ClientResponse response, LoadBalancer.Endpoint endpoint) {
+            final InputStream entityStream = response.getEntityStream();
+            if (entityStream == null) {
+                endpoint.released();
+            } else {
+                response.setEntityStream(new ReleasingInputStream(entityStream, endpoint));
+            }
+            return response;
+        }
+
+        private static boolean isFailure(ClientResponse response) {
+            return response.getStatus() >= 500;
+        }
+    }
+
+    private static class ReleasingInputStream extends FilterInputStream {
+        private final LoadBalancer.Endpoint endpoint;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingInputStream(InputStream in, LoadBalancer.Endpoint endpoint) {
+            super(in);
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    endpoint.released();
+                }
+            }
+        }
+    }
+}
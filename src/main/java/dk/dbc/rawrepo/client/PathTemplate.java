@@ -0,0 +1,117 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Endpoint path template split into path elements once, when the template is created
+ * <p>
+ * Each {name} path segment of the template is a variable. Variables are bound
+ * by position, in the order they appear in the template, so binding a request
+ * path is a copy of the precompiled path elements with the variable elements
+ * replaced:
+ * </p>
+ * <pre>
+ *    PathTemplate template = new PathTemplate("/api/v1/record/{agencyId}/{bibliographicRecordId}");
+ *    httpGet.withPathElements(template.bind("870970", "52880645"));
+ * </pre>
+ * <p>
+ * The path elements are those of {@link dk.dbc.httpclient.PathBuilder} for the same
+ * template and values, except that empty elements are left out.
+ * </p>
+ * <p>
+ * Templates are immutable and may be shared as constants, each bind returns
+ * a fresh array of path elements.
+ * </p>
+ */
+public final class PathTemplate {
+    private final String template;
+    private final String[] elements;
+    private final int[] variables;
+
+    /**
+     * @param template path template, variables must be entire path segments
+     * @throws IllegalArgumentException if a variable is only part of a path segment
+     */
+    public PathTemplate(String template) {
+        this.template = template;
+        final List<String> elementList = new ArrayList<>();
+        final List<Integer> variableList = new ArrayList<>();
+        for (String segment : template.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.startsWith("{") && segment.endsWith("}") && segment.indexOf('{', 1) < 0) {
+                variableList.add(elementList.size());
+            } else if (segment.indexOf('{') >= 0 || segment.indexOf('}') >= 0) {
+                throw new IllegalArgumentException(
+                        String.format("Variable must be an entire path segment in template '%s'", template));
+            }
+            elementList.add(segment);
+        }
+        this.elements = elementList.toArray(new String[0]);
+        this.variables = variableList.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    /**
+     * @return path elements of a template without variables
+     * @throws IllegalStateException if the template has variables
+     */
+    public String[] elements() {
+        checkVariableCount(0);
+        return elements.clone();
+    }
+
+    public String[] bind(String value) {
+        checkVariableCount(1);
+        final String[] path = elements.clone();
+        path[variables[0]] = value;
+        return path;
+    }
+
+    public String[] bind(String value1, String value2) {
+        checkVariableCount(2);
+        final String[] path = elements.clone();
+        path[variables[0]] = value1;
+        path[variables[1]] = value2;
+        return path;
+    }
+
+    public String[] bind(String value1, String value2, String value3) {
+        checkVariableCount(3);
+        final String[] path = elements.clone();
+        path[variables[0]] = value1;
+        path[variables[1]] = value2;
+        path[variables[2]] = value3;
+        return path;
+    }
+
+    private void checkVariableCount(int count) {
+        if (variables.length != count) {
+            throw new IllegalStateException(String.format("Template '%s' has %d variables, %d values given",
+                    template, variables.length, count));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PathTemplate{" +
+                "template='" + template + '\'' +
+                ", elements=" + Arrays.toString(elements) +
+                '}';
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.apache.connector.ApacheHttpClientBuilderConfigurator;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures a client to use the Apache HttpClient connector with
+ * a pool of persistent connections
+ */
+final class PooledTransport {
+    private PooledTransport() {
+    }
+
+    /* Returns the connector provider, to be installed by the caller */
+    static ConnectorProvider configure(ClientConfig config, ClientSettings settings) {
+        final PoolingHttpClientConnectionManager connectionManager = settings.getConnectionTtlMs() > 0
+                ? new PoolingHttpClientConnectionManager(settings.getConnectionTtlMs(), TimeUnit.MILLISECONDS)
+                : new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(settings.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+
+        config.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+                .register(new PoolConfigurator(settings.getKeepAliveMs(), settings.isCompression()));
+
+        final long idleTimeoutMs = settings.getIdleTimeoutMs();
+        if (idleTimeoutMs > 0) {
+            final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "rawrepo-connection-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(() -> {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(idleTimeoutMs, TimeUnit.MILLISECONDS);
+            }, idleTimeoutMs, idleTimeoutMs, TimeUnit.MILLISECONDS);
+            config.register(new ClientFactory.OnClientClose(evictor::shutdownNow));
+        }
+        return new ApacheConnectorProvider();
+    }
+
+    /* Caps the keep-alive announced by the server, or applies the configured
+       keep-alive if the server announces none. Unlike the connection TTL the
+       keep-alive is the time an idle connection may wait for its next request,
+       and it is renewed by every response.
+       With compression enabled responses are decoded by the Jersey encoders,
+       so the transparent decoding of HttpClient is disabled. */
+    private static class PoolConfigurator implements ApacheHttpClientBuilderConfigurator {
+        private final long keepAliveMs;
+        private final boolean compression;
+
+        PoolConfigurator(long keepAliveMs, boolean compression) {
+            this.keepAliveMs = keepAliveMs;
+            this.compression = compression;
+        }
+
+        @Override
+        public HttpClientBuilder configure(HttpClientBuilder httpClientBuilder) {
+            if (compression) {
+                httpClientBuilder.disableContentCompression();
+            }
+            return httpClientBuilder.setKeepAliveStrategy((response, context) -> {
+                final long announced = DefaultConnectionKeepAliveStrategy.INSTANCE
+                        .getKeepAliveDuration(response, context);
+                return announced > 0 ? Math.min(announced, keepAliveMs) : keepAliveMs;
+            });
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import jakarta.ws.rs.core.Feature;
+import jakarta.ws.rs.core.FeatureContext;
+
+/**
+ * Registers the streaming {@link RecordDTOReader} readers of record DTOs
+ * <p>
+ * Clients created by {@link ClientFactory} have this feature registered,
+ * other clients given to the connectors can register it themselves.
+ * </p>
+ */
+public class RecordDTOFeature implements Feature {
+    @Override
+    public boolean configure(FeatureContext context) {
+        context.register(new RecordDTOReader.Record());
+        context.register(new RecordDTOReader.RecordCollection());
+        context.register(new RecordDTOReader.RecordCollectionV2());
+        context.register(new RecordDTOReader.View());
+        context.register(new RecordDTOReader.ViewCollection());
+        return true;
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBase;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import dk.dbc.rawrepo.dto.RecordCollectionDTO;
+import dk.dbc.rawrepo.dto.RecordCollectionDTOv2;
+import dk.dbc.rawrepo.dto.RecordDTO;
+import dk.dbc.rawrepo.dto.RecordIdDTO;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming JSON reader of record DTOs
+ * <p>
+ * Records are read token by token from the entity stream, without an
+ * intermediate tree or reflection, and base64 encoded content is decoded
+ * straight into the content byte array. Fields without a dedicated
+ * mapping, like contentJSON, are bound straight from the parser by the Jackson
+ * data binding deserializer of the property.
+ * </p>
+ * <p>
+ * The readers are registered by {@link RecordDTOFeature}.
+ * </p>
+ *
+ * @param <T> DTO type
+ */
+@Consumes(MediaType.APPLICATION_JSON)
+public abstract class RecordDTOReader<T> implements MessageBodyReader<T> {
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final Class<T> type;
+
+    RecordDTOReader(Class<T> type) {
+        this.type = type;
+    }
+
+    /**
+     * @param type DTO type
+     * @return true if the given type is read by a streaming reader
+     */
+    public static boolean isSupported(Class<?> type) {
+        return type == RecordDTO.class || type == RecordCollectionDTO.class || type == RecordCollectionDTOv2.class
+                || type == RecordView.class || type == RecordViewCollection.class;
+    }
+
+    /**
+     * Reads DTO from JSON content
+     *
+     * @param content JSON content
+     * @param type    DTO type, see {@link #isSupported(Class)}
+     * @param <T>     DTO type
+     * @return DTO
+     * @throws IOException              on invalid JSON
+     * @throws IllegalArgumentException if the given type is not supported
+     */
+    public static <T> T read(byte[] content, Class<T> type) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+            parser.nextToken();
+            return type.cast(readerFor(type).read(parser));
+        }
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return this.type == type;
+    }
+
+    @Override
+    public T readFrom(Class<T> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                      MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(entityStream)) {
+            if (parser.nextToken() == null) {
+                return null;
+            }
+            return read(parser);
+        }
+    }
+
+    /* Reads value starting at the current token of the parser */
+    abstract T read(JsonParser parser) throws IOException;
+
+    private static RecordDTOReader<?> readerFor(Class<?> type) {
+        if (type == RecordDTO.class) {
+            return new Record();
+        }
+        if (type == RecordCollectionDTO.class) {
+            return new RecordCollection();
+        }
+        if (type == RecordCollectionDTOv2.class) {
+            return new RecordCollectionV2();
+        }
+        if (type == RecordView.class) {
+            return new View();
+        }
+        if (type == RecordViewCollection.class) {
+            return new ViewCollection();
+        }
+        throw new IllegalArgumentException("No streaming reader of " + type.getName());
+    }
+
+    static RecordDTO readRecord(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_OBJECT);
+        final RecordDTO record = new RecordDTO();
+        DefaultDeserializationContext context = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (name) {
+                case "recordId":
+                    record.setRecordId(readRecordId(parser));
+                    break;
+                case "deleted":
+                    record.setDeleted(parser.getBooleanValue());
+                    break;
+                case "mimetype":
+                    record.setMimetype(parser.getText());
+                    break;
+                case "created":
+                    record.setCreated(parser.getText());
+                    break;
+                case "modified":
+                    record.setModified(parser.getText());
+                    break;
+                case "trackingId":
+                    record.setTrackingId(parser.getText());
+                    break;
+                case "enrichmentTrail":
+                    record.setEnrichmentTrail(parser.getText());
+                    break;
+                case "content":
+                    record.setContent(parser.getBinaryValue());
+                    break;
+                default:
+                    if (context == null) {
+                        context = ((DefaultDeserializationContext) OBJECT_MAPPER.getDeserializationContext())
+                                .createInstance(OBJECT_MAPPER.getDeserializationConfig(), parser, null);
+                    }
+                    readUnmapped(parser, context, name, record);
+                    break;
+            }
+        }
+        return record;
+    }
+
+    /* Binds the value at the current token to the named property of the bean
+       like data binding would, skipping the value of an unknown property */
+    private static void readUnmapped(JsonParser parser, DefaultDeserializationContext context,
+                                     String name, Object bean) throws IOException {
+        final JsonDeserializer<Object> deserializer =
+                context.findRootValueDeserializer(context.constructType(bean.getClass()));
+        final SettableBeanProperty property = deserializer instanceof BeanDeserializerBase
+                ? ((BeanDeserializerBase) deserializer).findProperty(name) : null;
+        if (property == null) {
+            parser.skipChildren();
+            return;
+        }
+        property.deserializeAndSet(parser, context, bean);
+    }
+
+    /* Like readRecord, but keeps the content base64 encoded and skips unmapped fields */
+    static RecordView readRecordView(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_OBJECT);
+        final RecordView record = new RecordView();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (name) {
+                case "recordId":
+                    record.setRecordId(readRecordId(parser));
+                    break;
+                case "deleted":
+                    record.setDeleted(parser.getBooleanValue());
+                    break;
+                case "mimetype":
+                    record.setMimetype(parser.getText());
+                    break;
+                case "created":
+                    record.setCreated(parser.getText());
+                    break;
+                case "modified":
+                    record.setModified(parser.getText());
+                    break;
+                case "trackingId":
+                    record.setTrackingId(parser.getText());
+                    break;
+                case "enrichmentTrail":
+                    record.setEnrichmentTrail(parser.getText());
+                    break;
+                case "content":
+                    record.setEncodedContent(parser.getText());
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return record;
+    }
+
+    static RecordIdDTO readRecordId(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_OBJECT);
+        final RecordIdDTO recordId = new RecordIdDTO();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            parser.nextToken();
+            if ("bibliographicRecordId".equals(name)) {
+                recordId.setBibliographicRecordId(parser.getValueAsString());
+            } else if ("agencyId".equals(name)) {
+                recordId.setAgencyId(parser.getValueAsInt());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return recordId;
+    }
+
+    static <E> List<E> readArray(JsonParser parser, ElementReader<E> elementReader) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_ARRAY);
+        final List<E> elements = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            elements.add(elementReader.read(parser));
+        }
+        return elements;
+    }
+
+    private static void expect(JsonParser parser, JsonToken token) throws IOException {
+        if (parser.currentToken() != token) {
+            throw new IOException(String.format("Expected %s but was %s at %s",
+                    token, parser.currentToken(), parser.getCurrentLocation()));
+        }
+    }
+
+    @FunctionalInterface
+    interface ElementReader<E> {
+        E read(JsonParser parser) throws IOException;
+    }
+
+    public static final class Record extends RecordDTOReader<RecordDTO> {
+        public Record() {
+            super(RecordDTO.class);
+        }
+
+        @Override
+        RecordDTO read(JsonParser parser) throws IOException {
+            return readRecord(parser);
+        }
+    }
+
+    public static final class RecordCollection extends RecordDTOReader<RecordCollectionDTO> {
+        public RecordCollection() {
+            super(RecordCollectionDTO.class);
+        }
+
+        @Override
+        RecordCollectionDTO read(JsonParser parser) throws IOException {
+            expect(parser, JsonToken.START_OBJECT);
+            final RecordCollectionDTO collection = new RecordCollectionDTO();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.currentName();
+                parser.nextToken();
+                if ("records".equals(name)) {
+                    collection.setRecords(readArray(parser, RecordDTOReader::readRecord));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return collection;
+        }
+    }
+
+    public static final class RecordCollectionV2 extends RecordDTOReader<RecordCollectionDTOv2> {
+        public RecordCollectionV2() {
+            super(RecordCollectionDTOv2.class);
+        }
+
+        @Override
+        RecordCollectionDTOv2 read(JsonParser parser) throws IOException {
+            expect(parser, JsonToken.START_OBJECT);
+            final RecordCollectionDTOv2 collection = new RecordCollectionDTOv2();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.currentName();
+                parser.nextToken();
+                if ("found".equals(name)) {
+                    collection.setFound(readArray(parser, RecordDTOReader::readRecord));
+                } else if ("missing".equals(name)) {
+                    collection.setMissing(readArray(parser, RecordDTOReader::readRecordId));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return collection;
+        }
+    }
+
+    public static final class View extends RecordDTOReader<RecordView> {
+        public View() {
+            super(RecordView.class);
+        }
+
+        @Override
+        RecordView read(JsonParser parser) throws IOException {
+            return readRecordView(parser);
+        }
+    }
+
+    public static final class ViewCollection extends RecordDTOReader<RecordViewCollection> {
+        public ViewCollection() {
+            super(RecordViewCollection.class);
+        }
+
+        @Override
+        RecordViewCollection read(JsonParser parser) throws IOException {
+            expect(parser, JsonToken.START_OBJECT);
+            List<RecordView> records = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.currentName();
+                parser.nextToken();
+                if ("records".equals(name)) {
+                    records = readArray(parser, RecordDTOReader::readRecordView);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new RecordViewCollection(records);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import dk.dbc.rawrepo.dto.RecordDTO;
+import dk.dbc.rawrepo.dto.RecordIdDTO;
+
+import java.util.Base64;
+
+/**
+ * Read-only view of a record, keeping the content in its base64 encoded
+ * form until first accessed
+ * <p>
+ * Callers only looking at record meta data never pay for decoding the content.
+ * The contentJSON field of the record service response is not part of the view.
+ * </p>
+ * <p>
+ * A view may be shared between threads once read. Threads racing the first
+ * content access may each decode it, all of them getting equal bytes.
+ * </p>
+ */
+public final class RecordView {
+    private RecordIdDTO recordId;
+    private boolean deleted;
+    private String mimetype;
+    private String created;
+    private String modified;
+    private String trackingId;
+    private String enrichmentTrail;
+    private String encodedContent;
+    private volatile byte[] content;
+
+    RecordView() {
+    }
+
+    public RecordIdDTO getRecordId() {
+        return recordId;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public String getMimetype() {
+        return mimetype;
+    }
+
+    public String getCreated() {
+        return created;
+    }
+
+    public String getModified() {
+        return modified;
+    }
+
+    public String getTrackingId() {
+        return trackingId;
+    }
+
+    public String getEnrichmentTrail() {
+        return enrichmentTrail;
+    }
+
+    public boolean hasContent() {
+        return encodedContent != null;
+    }
+
+    /**
+     * @return true if the content has been decoded
+     */
+    public boolean isContentDecoded() {
+        return content != null;
+    }
+
+    /**
+     * Decodes the content on first access, later calls return the same array
+     *
+     * @return record content or null if the record has no content
+     */
+    public byte[] getContent() {
+        byte[] decoded = content;
+        if (decoded == null && encodedContent != null) {
+            decoded = Base64.getDecoder().decode(encodedContent);
+            content = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * @return record DTO with decoded content
+     */
+    public RecordDTO toRecordDTO() {
+        final RecordDTO record = new RecordDTO();
+        record.setRecordId(recordId);
+        record.setDeleted(deleted);
+        record.setMimetype(mimetype);
+        record.setCreated(created);
+        record.setModified(modified);
+        record.setTrackingId(trackingId);
+        record.setEnrichmentTrail(enrichmentTrail);
+        record.setContent(getContent());
+        return record;
+    }
+
+    void setRecordId(RecordIdDTO recordId) {
+        this.recordId = recordId;
+    }
+
+    void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    void setMimetype(String mimetype) {
+        this.mimetype = mimetype;
+    }
+
+    void setCreated(String created) {
+        this.created = created;
+    }
+
+    void setModified(String modified) {
+        this.modified = modified;
+    }
+
+    void setTrackingId(String trackingId) {
+        this.trackingId = trackingId;
+    }
+
+    void setEnrichmentTrail(String enrichmentTrail) {
+        this.enrichmentTrail = enrichmentTrail;
+    }
+
+    void setEncodedContent(String encodedContent) {
+        this.encodedContent = encodedContent;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordView{" +
+                "recordId=" + recordId +
+                ", deleted=" + deleted +
+                ", mimetype='" + mimetype + '\'' +
+                ", created='" + created + '\'' +
+                ", modified='" + modified + '\'' +
+                ", trackingId='" + trackingId + '\'' +
+                ", enrichmentTrail='" + enrichmentTrail + '\'' +
+                ", contentDecoded=" + isContentDecoded() +
+                '}';
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records of a record collection response as {@link RecordView} views
+ */
+public final class RecordViewCollection {
+    private final List<RecordView> records;
+
+    RecordViewCollection(List<RecordView> records) {
+        this.records = records == null ? Collections.emptyList() : Collections.unmodifiableList(records);
+    }
+
+    /**
+     * @return records in the order of the response
+     */
+    public List<RecordView> getRecords() {
+        return records;
+    }
+}
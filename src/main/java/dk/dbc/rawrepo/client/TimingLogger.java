@@ -0,0 +1,213 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import org.slf4j.Logger;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs connector call timings at a fixed log level
+ * <p>
+ * Synopsis:
+ * </p>
+ * <pre>
+ *    final long start = logger.start();
+ *    try {
+ *        ...
+ *    } finally {
+ *        logger.log("getRecordData({}, {}) took {} milliseconds", agencyId, bibliographicRecordId, start);
+ *    }
+ * </pre>
+ * <p>
+ * Nothing is measured, boxed or allocated while the log level is disabled,
+ * {@link #start()} then returns {@link #DISABLED}. Enabled levels format the
+ * message into a string builder reused by the calling thread, appending
+ * CharSequence and primitive arguments and the elapsed milliseconds without
+ * boxing, and hand the builder to SLF4J as the single argument of a "{}"
+ * pattern. The builder is overwritten by the next call of the thread, so the
+ * message must be formatted during the call, as the SLF4J backends do by
+ * default, also with asynchronous appenders.
+ * </p>
+ */
+public final class TimingLogger {
+    private enum Level {
+        TRACE, DEBUG, INFO, WARN, ERROR
+    }
+
+    /**
+     * Start time returned by {@link #start()} while the log level is disabled
+     */
+    public static final long DISABLED = Long.MIN_VALUE;
+
+    private static final String PLACEHOLDER = "{}";
+    private static final int MAX_RETAINED_CAPACITY = 1024;
+    private static final ThreadLocal<StringBuilder> MESSAGE = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    private final Logger logger;
+    private final Level level;
+
+    /**
+     * @param logger    logger
+     * @param levelName one of TRACE, DEBUG, INFO, WARN or ERROR, unknown names log at INFO
+     */
+    public TimingLogger(Logger logger, String levelName) {
+        this.logger = logger;
+        this.level = toLevel(levelName);
+    }
+
+    public boolean isEnabled() {
+        switch (level) {
+            case TRACE:
+                return logger.isTraceEnabled();
+            case DEBUG:
+                return logger.isDebugEnabled();
+            case WARN:
+                return logger.isWarnEnabled();
+            case ERROR:
+                return logger.isErrorEnabled();
+            case INFO:
+            default:
+                return logger.isInfoEnabled();
+        }
+    }
+
+    /**
+     * @return start time to pass to log, or {@link #DISABLED} if the log level is disabled
+     */
+    public long start() {
+        return isEnabled() ? System.nanoTime() : DISABLED;
+    }
+
+    public void log(String format, long startNanos) {
+        if (startNanos != DISABLED && isEnabled()) {
+            final StringBuilder message = message();
+            final int from = appendUntilPlaceholder(message, format, 0);
+            message.append(elapsedMs(startNanos));
+            write(message, format, from);
+        }
+    }
+
+    public void log(String format, Object arg, long startNanos) {
+        if (startNanos != DISABLED && isEnabled()) {
+            final StringBuilder message = message();
+            int from = appendUntilPlaceholder(message, format, 0);
+            append(message, arg);
+            from = appendUntilPlaceholder(message, format, from);
+            message.append(elapsedMs(startNanos));
+            write(message, format, from);
+        }
+    }
+
+    public void log(String format, long arg, long startNanos) {
+        if (startNanos != DISABLED && isEnabled()) {
+            final StringBuilder message = message();
+            int from = appendUntilPlaceholder(message, format, 0);
+            message.append(arg);
+            from = appendUntilPlaceholder(message, format, from);
+            message.append(elapsedMs(startNanos));
+            write(message, format, from);
+        }
+    }
+
+    public void log(String format, Object arg1, Object arg2, long startNanos) {
+        if (startNanos != DISABLED && isEnabled()) {
+            final StringBuilder message = message();
+            int from = appendUntilPlaceholder(message, format, 0);
+            append(message, arg1);
+            from = appendUntilPlaceholder(message, format, from);
+            append(message, arg2);
+            from = appendUntilPlaceholder(message, format, from);
+            message.append(elapsedMs(startNanos));
+            write(message, format, from);
+        }
+    }
+
+    /**
+     * Logs message without timing
+     *
+     * @param format message format with two {} placeholders
+     * @param arg1   first argument
+     * @param arg2   second argument
+     */
+    public void message(String format, Object arg1, Object arg2) {
+        if (isEnabled()) {
+            final StringBuilder message = message();
+            int from = appendUntilPlaceholder(message, format, 0);
+            append(message, arg1);
+            from = appendUntilPlaceholder(message, format, from);
+            append(message, arg2);
+            write(message, format, from);
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static StringBuilder message() {
+        StringBuilder message = MESSAGE.get();
+        if (message.capacity() > MAX_RETAINED_CAPACITY) {
+            // Do not hold on to the builder of an unusually long message
+            message = new StringBuilder(128);
+            MESSAGE.set(message);
+        }
+        message.setLength(0);
+        return message;
+    }
+
+    /* Appends the format from the given index up to the next placeholder,
+       returns the index following the placeholder, or the length of the format if there is none */
+    private static int appendUntilPlaceholder(StringBuilder message, String format, int from) {
+        final int placeholder = format.indexOf(PLACEHOLDER, from);
+        if (placeholder < 0) {
+            message.append(format, from, format.length());
+            return format.length();
+        }
+        message.append(format, from, placeholder);
+        return placeholder + PLACEHOLDER.length();
+    }
+
+    private static void append(StringBuilder message, Object arg) {
+        if (arg instanceof CharSequence) {
+            message.append((CharSequence) arg);
+        } else {
+            message.append(arg);
+        }
+    }
+
+    /* Appends the rest of the format and logs the message */
+    private void write(StringBuilder message, String format, int from) {
+        message.append(format, from, format.length());
+        switch (level) {
+            case TRACE:
+                logger.trace(PLACEHOLDER, message);
+                break;
+            case DEBUG:
+                logger.debug(PLACEHOLDER, message);
+                break;
+            case WARN:
+                logger.warn(PLACEHOLDER, message);
+                break;
+            case ERROR:
+                logger.error(PLACEHOLDER, message);
+                break;
+            case INFO:
+            default:
+                logger.info(PLACEHOLDER, message);
+                break;
+        }
+    }
+
+    private static Level toLevel(String levelName) {
+        try {
+            return Level.valueOf(levelName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return Level.INFO;
+        }
+    }
+}
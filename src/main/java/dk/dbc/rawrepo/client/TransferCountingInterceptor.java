@@ -0,0 +1,116 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.ext.ReaderInterceptor;
+import jakarta.ws.rs.ext.ReaderInterceptorContext;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts the bytes of compressed responses into {@link TransferStatistics}
+ * <p>
+ * Responses are decoded by the Jersey content encoders, which run at
+ * {@link Priorities#ENTITY_CODER}. The {@link Compressed} interceptor runs
+ * before them and counts the bytes read off the wire, the {@link Decoded}
+ * interceptor runs after them and counts the bytes they decode into. Both
+ * wrap the entity stream, so streamed entities are counted while they are
+ * consumed.
+ * </p>
+ */
+final class TransferCountingInterceptor {
+    /* Content encodings decoded by the registered Jersey encoders */
+    static final Set<String> DECODED_ENCODINGS = Set.of("gzip", "x-gzip", "deflate");
+
+    private static final String COMPRESSED_PROPERTY = TransferCountingInterceptor.class.getName() + ".compressed";
+
+    private TransferCountingInterceptor() {
+    }
+
+    @Priority(Priorities.ENTITY_CODER - 100)
+    static class Compressed implements ReaderInterceptor {
+        private final TransferStatistics transferStatistics;
+
+        Compressed(TransferStatistics transferStatistics) {
+            this.transferStatistics = transferStatistics;
+        }
+
+        @Override
+        public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+            final String contentEncoding = context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+            if (contentEncoding != null
+                    && DECODED_ENCODINGS.contains(contentEncoding.trim().toLowerCase(Locale.ROOT))) {
+                transferStatistics.addCompressedResponse();
+                context.setProperty(COMPRESSED_PROPERTY, Boolean.TRUE);
+                context.setInputStream(new CountingInputStream(context.getInputStream(),
+                        transferStatistics::addCompressedBytes));
+            }
+            return context.proceed();
+        }
+    }
+
+    @Priority(Priorities.ENTITY_CODER + 100)
+    static class Decoded implements ReaderInterceptor {
+        private final TransferStatistics transferStatistics;
+
+        Decoded(TransferStatistics transferStatistics) {
+            this.transferStatistics = transferStatistics;
+        }
+
+        @Override
+        public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+            if (Boolean.TRUE.equals(context.getProperty(COMPRESSED_PROPERTY))) {
+                context.setInputStream(new CountingInputStream(context.getInputStream(),
+                        transferStatistics::addUncompressedBytes));
+            }
+            return context.proceed();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongConsumer counter;
+
+        CountingInputStream(InputStream in, LongConsumer counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                counter.accept(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                counter.accept(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            if (skipped > 0) {
+                counter.accept(skipped);
+            }
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.client;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Byte counts of compressed responses read through clients
+ * created with compression enabled
+ * <p>
+ * Bytes are counted as response entities are consumed, so a streamed
+ * entity is accounted for incrementally while it is being read.
+ * </p>
+ */
+public class TransferStatistics {
+    private final LongAdder compressedResponses = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+
+    /**
+     * @return number of responses received with a supported content encoding
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.sum();
+    }
+
+    /**
+     * @return number of bytes read off the wire for compressed responses
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * @return number of bytes compressed responses decoded into
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    void addCompressedResponse() {
+        compressedResponses.increment();
+    }
+
+    void addCompressedBytes(long bytes) {
+        compressedBytes.add(bytes);
+    }
+
+    void addUncompressedBytes(long bytes) {
+        uncompressedBytes.add(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "TransferStatistics{" +
+                "compressedResponses=" + getCompressedResponses() +
+                ", compressedBytes=" + getCompressedBytes() +
+                ", uncompressedBytes=" + getUncompressedBytes() +
+                '}';
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.dump;
+
+import dk.dbc.invariant.InvariantUtil;
+import dk.dbc.rawrepo.client.AtomicFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Incremental feed of records changed since the last poll, built on
+ * {@link RecordDumpServiceConnector#dumpAgencies(RecordDumpServiceConnector.AgencyParams)}
+ * <p>
+ * Each poll dumps the records modified in a window starting at the high-water
+ * mark, the end of the last completed window, and ending at most the window
+ * size later, but never later than the current time minus the lag. The
+ * high-water mark is stored once every record of the window has been passed
+ * to the listener, so records are delivered at least once, also across restarts.
+ * </p>
+ * <p>
+ * Windows start the overlap before the high-water mark to catch records whose
+ * modification became visible late. Records of the overlap already delivered
+ * by the previous window, having the same 001 *c and content, are skipped.
+ * </p>
+ * <pre>
+ *    final ChangeFeed feed = new ChangeFeed(connector,
+ *            new AgencyParams().withAgencies(List.of(870970)).withRecordStatus(AgencyParams.RecordStatus.ALL),
+ *            new ChangeFeed.FileHighWaterMarkStore(Path.of("/data/870970.hwm")),
+ *            record -&gt; index(record.getAgencyId(), record.getBibliographicRecordId(), record.getContent()))
+ *            .withWindow(Duration.ofMinutes(5))
+ *            .withOverlap(Duration.ofSeconds(30));
+ *    executor.scheduleWithFixedDelay(feed, 0, 1, TimeUnit.MINUTES);
+ * </pre>
+ * <p>
+ * Records are dumped in line format, the content passed to the listener is
+ * the record lines without the terminating $ line.
+ * </p>
+ * <p>
+ * This class is not thread safe, polls must not run concurrently.
+ * </p>
+ */
+public class ChangeFeed implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeFeed.class);
+
+    /**
+     * Default format of modifiedFrom and modifiedTo, ISO local date-time in Danish time
+     */
+    public static final DateTimeFormatter DEFAULT_TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.of("Europe/Copenhagen"));
+
+    private final RecordDumpServiceConnector connector;
+    private final RecordDumpServiceConnector.AgencyParams params;
+    private final HighWaterMarkStore highWaterMarkStore;
+    private final Listener listener;
+
+    private Duration window = Duration.ofMinutes(5);
+    private Duration overlap = Duration.ofSeconds(30);
+    private Duration lag = Duration.ofSeconds(5);
+    private DateTimeFormatter timestampFormat = DEFAULT_TIMESTAMP_FORMAT;
+    private Clock clock = Clock.systemUTC();
+    private Instant initialHighWaterMark;
+
+    private Instant highWaterMark;
+    /* Versions of the records delivered by the previous window, by record id */
+    private Map<String, String> delivered = new HashMap<>();
+
+    /**
+     * @param connector          dump service connector
+     * @param params             dump parameters selecting agencies, record types and status,
+     *                           modification interval, output format and encoding are set by the feed
+     * @param highWaterMarkStore store of the high-water mark
+     * @param listener           listener receiving changed records
+     */
+    public ChangeFeed(RecordDumpServiceConnector connector, RecordDumpServiceConnector.AgencyParams params,
+                      HighWaterMarkStore highWaterMarkStore, Listener listener) {
+        this.connector = InvariantUtil.checkNotNullOrThrow(connector, "connector");
+        this.params = InvariantUtil.checkNotNullOrThrow(params, "params");
+        this.highWaterMarkStore = InvariantUtil.checkNotNullOrThrow(highWaterMarkStore, "highWaterMarkStore");
+        this.listener = InvariantUtil.checkNotNullOrThrow(listener, "listener");
+    }
+
+    /**
+     * @param window max length of the modification interval dumped by a single poll, default 5 minutes
+     * @return this feed
+     */
+    public ChangeFeed withWindow(Duration window) {
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("window must be positive, was " + window);
+        }
+        this.window = window;
+        return this;
+    }
+
+    /**
+     * @param overlap length of the interval before the high-water mark dumped again, default 30 seconds
+     * @return this feed
+     */
+    public ChangeFeed withOverlap(Duration overlap) {
+        if (overlap.isNegative()) {
+            throw new IllegalArgumentException("overlap must not be negative, was " + overlap);
+        }
+        this.overlap = overlap;
+        return this;
+    }
+
+    /**
+     * @param lag time left for modifications to become visible before they are dumped, default 5 seconds
+     * @return this feed
+     */
+    public ChangeFeed withLag(Duration lag) {
+        if (lag.isNegative()) {
+            throw new IllegalArgumentException("lag must not be negative, was " + lag);
+        }
+        this.lag = lag;
+        return this;
+    }
+
+    /**
+     * @param timestampFormat format of modifiedFrom and modifiedTo, must have a zone
+     * @return this feed
+     */
+    public ChangeFeed withTimestampFormat(DateTimeFormatter timestampFormat) {
+        this.timestampFormat = InvariantUtil.checkNotNullOrThrow(timestampFormat, "timestampFormat");
+        return this;
+    }
+
+    /**
+     * @param initialHighWaterMark high-water mark used when none is stored, default the time of the first poll
+     * @return this feed
+     */
+    public ChangeFeed withInitialHighWaterMark(Instant initialHighWaterMark) {
+        this.initialHighWaterMark = initialHighWaterMark;
+        return this;
+    }
+
+    public ChangeFeed withClock(Clock clock) {
+        this.clock = InvariantUtil.checkNotNullOrThrow(clock, "clock");
+        return this;
+    }
+
+    /**
+     * @return high-water mark, null before the first poll
+     */
+    public Instant getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Polls windows until the high-water mark has caught up with the current time minus the lag.
+     * Failures are logged and the remaining windows are left for the next run.
+     */
+    @Override
+    public void run() {
+        try {
+            int changed = 0;
+            int polled;
+            do {
+                polled = poll();
+                changed += Math.max(polled, 0);
+            } while (polled >= 0 && !isCaughtUp());
+            LOGGER.debug("Change feed delivered {} records, high-water mark is {}", changed, highWaterMark);
+        } catch (RecordDumpServiceConnectorException | IOException | RuntimeException e) {
+            LOGGER.error("Change feed poll failed at high-water mark {}", highWaterMark, e);
+        }
+    }
+
+    /**
+     * Dumps the next window and passes its changed records to the listener
+     *
+     * @return number of records passed to the listener, or -1 if the high-water mark
+     * is already caught up with the current time minus the lag
+     * @throws RecordDumpServiceConnectorException on failure to dump the window
+     * @throws IOException                         on failure to read the dump or to store the high-water mark
+     */
+    public int poll() throws RecordDumpServiceConnectorException, IOException {
+        if (highWaterMark == null) {
+            highWaterMark = highWaterMarkStore.load()
+                    .orElseGet(() -> initialHighWaterMark != null ? initialHighWaterMark : clock.instant());
+        }
+        final Instant latest = clock.instant().minus(lag);
+        if (!highWaterMark.isBefore(latest)) {
+            return -1;
+        }
+        final Instant from = highWaterMark.minus(overlap);
+        final Instant to = min(highWaterMark.plus(window), latest);
+
+        final RecordDumpServiceConnector.AgencyParams windowParams = new RecordDumpServiceConnector.AgencyParams();
+        windowParams.putAll(params);
+        windowParams.withModifiedFrom(timestampFormat.format(from))
+                .withModifiedTo(timestampFormat.format(to))
+                .withOutputFormat(RecordDumpServiceConnector.AgencyParams.OutputFormat.LINE)
+                .withOutputEncoding("UTF-8");
+
+        final Map<String, String> versions = new HashMap<>();
+        int changed = 0;
+        try (InputStream dump = connector.dumpAgencies(windowParams);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(dump, StandardCharsets.UTF_8))) {
+            ChangedRecord record;
+            while ((record = readRecord(reader)) != null) {
+                final String key = record.getAgencyId() + ":" + record.getBibliographicRecordId();
+                final String version = record.getVersion() + ':' + record.getContent().hashCode();
+                versions.put(key, version);
+                if (version.equals(delivered.get(key))) {
+                    continue;
+                }
+                listener.onChange(record);
+                changed++;
+            }
+        }
+        highWaterMarkStore.store(to);
+        highWaterMark = to;
+        delivered = versions;
+        LOGGER.debug("Change feed window {} - {} delivered {} of {} records", from, to, changed, versions.size());
+        return changed;
+    }
+
+    private boolean isCaughtUp() {
+        return !highWaterMark.isBefore(clock.instant().minus(lag));
+    }
+
+    private static Instant min(Instant a, Instant b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    /* Reads the lines of the next record up to the terminating $ line,
+       returns null at end of stream */
+    static ChangedRecord readRecord(BufferedReader reader) throws IOException {
+        final StringBuilder content = new StringBuilder();
+        String bibliographicRecordId = null;
+        String agencyId = null;
+        String version = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if ("$".equals(line)) {
+                if (bibliographicRecordId == null || agencyId == null) {
+                    throw new IOException("Dumped record has no 001 *a and *b: " + content);
+                }
+                try {
+                    return new ChangedRecord(Integer.parseInt(agencyId), bibliographicRecordId,
+                            version, content.toString());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Dumped record has invalid agency in 001 *b: " + agencyId, e);
+                }
+            }
+            if (line.startsWith("001 ")) {
+                bibliographicRecordId = subfield(line, 'a');
+                agencyId = subfield(line, 'b');
+                version = subfield(line, 'c');
+            }
+            content.append(line).append('\n');
+        }
+        if (content.toString().trim().isEmpty()) {
+            return null;
+        }
+        throw new IOException("Dumped record is not terminated by $: " + content);
+    }
+
+    /* Returns the value of the first subfield with the given code in a line format field,
+       subfields are introduced by *, escaped as @* */
+    private static String subfield(String line, char code) {
+        int at = line.indexOf('*');
+        while (at >= 0 && at + 1 < line.length()) {
+            if (at == 0 || line.charAt(at - 1) != '@') {
+                if (line.charAt(at + 1) == code) {
+                    int end = at + 2;
+                    while ((end = line.indexOf('*', end)) > 0 && line.charAt(end - 1) == '@') {
+                        end++;
+                    }
+                    return line.substring(at + 2, end < 0 ? line.length() : end).trim();
+                }
+            }
+            at = line.indexOf('*', at + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Receives changed records
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param record changed record
+         * @throws RuntimeException to fail the poll, leaving the high-water mark unchanged
+         */
+        void onChange(ChangedRecord record);
+    }
+
+    /**
+     * Persistent store of the high-water mark
+     */
+    public interface HighWaterMarkStore {
+        Optional<Instant> load() throws IOException;
+
+        void store(Instant highWaterMark) throws IOException;
+    }
+
+    /**
+     * High-water mark store keeping the high-water mark as ISO instant in a file,
+     * replaced atomically on store
+     */
+    public static class FileHighWaterMarkStore implements HighWaterMarkStore {
+        private final Path path;
+
+        public FileHighWaterMarkStore(Path path) {
+            this.path = InvariantUtil.checkNotNullOrThrow(path, "path");
+        }
+
+        @Override
+        public Optional<Instant> load() throws IOException {
+            return AtomicFiles.read(path).map(Instant::parse);
+        }
+
+        @Override
+        public void store(Instant highWaterMark) throws IOException {
+            AtomicFiles.write(path, highWaterMark.toString());
+        }
+    }
+
+    public static class ChangedRecord {
+        private final int agencyId;
+        private final String bibliographicRecordId;
+        private final String version;
+        private final String content;
+
+        ChangedRecord(int agencyId, String bibliographicRecordId, String version, String content) {
+            this.agencyId = agencyId;
+            this.bibliographicRecordId = bibliographicRecordId;
+            this.version = version;
+            this.content = content;
+        }
+
+        public int getAgencyId() {
+            return agencyId;
+        }
+
+        public String getBibliographicRecordId() {
+            return bibliographicRecordId;
+        }
+
+        /**
+         * @return modification timestamp of 001 *c, or null if not present
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * @return record in line format
+         */
+        public String getContent() {
+            return content;
+        }
+
+        @Override
+        public String toString() {
+            return "ChangedRecord{" +
+                    "agencyId=" + agencyId +
+                    ", bibliographicRecordId='" + bibliographicRecordId + '\'' +
+                    ", version='" + version + '\'' +
+                    '}';
+        }
+    }
+}
@@ -4,24 +4,25 @@ import dk.dbc.commons.jsonb.JSONBContext;
 import dk.dbc.commons.jsonb.JSONBException;
 import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.httpclient.HttpPost;
+import dk.dbc.httpclient.HttpRequest;
 import dk.dbc.invariant.InvariantUtil;
+import dk.dbc.rawrepo.client.Bulkhead;
+import dk.dbc.rawrepo.client.ConnectorParams;
+import dk.dbc.rawrepo.client.ConnectorRetries;
+import dk.dbc.rawrepo.client.TimingLogger;
 import dk.dbc.rawrepo.dto.ParamsValidationDTO;
-import dk.dbc.util.Stopwatch;
-import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.core.Response;
-import net.jodah.failsafe.RetryPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
@@ -39,15 +40,12 @@ public class RecordDumpServiceConnector {
     private static final String PATH_DUMP_RECORD = "/api/v1/dump/record";
     private static final String PATH_DUMP_AGENCY_DRYRUN = "/api/v1/dump/dryrun";
 
-    private static final RetryPolicy<Response> RETRY_POLICY = new RetryPolicy<Response>()
-            .handle(ProcessingException.class)
-            .handleResultIf(response -> response.getStatus() == 404)
-            .withDelay(Duration.ofSeconds(10))
-            .withMaxRetries(1);
+    private static final ConnectorRetries RETRIES = new ConnectorRetries(Duration.ofSeconds(10), 1, 404);
 
     private final FailSafeHttpClient failSafeHttpClient;
     private final String baseUrl;
-    private final RecordDumpServiceConnector.LogLevelMethod logger;
+    private final TimingLogger logger;
+    private final Bulkhead bulkhead;
 
     /**
      * Returns new instance with default retry policy
@@ -56,7 +54,7 @@ public class RecordDumpServiceConnector {
      * @param baseUrl    base URL for record service endpoint
      */
     public RecordDumpServiceConnector(Client httpClient, String baseUrl) {
-        this(FailSafeHttpClient.create(httpClient, RETRY_POLICY), baseUrl, RecordDumpServiceConnector.TimingLogLevel.INFO);
+        this(builder(httpClient, baseUrl));
     }
 
     /**
@@ -67,7 +65,7 @@ public class RecordDumpServiceConnector {
      * @param level      timings log level
      */
     public RecordDumpServiceConnector(Client httpClient, String baseUrl, RecordDumpServiceConnector.TimingLogLevel level) {
-        this(FailSafeHttpClient.create(httpClient, RETRY_POLICY), baseUrl, level);
+        this(builder(httpClient, baseUrl).withTimingLogLevel(level));
     }
 
     /**
@@ -77,7 +75,7 @@ public class RecordDumpServiceConnector {
      * @param baseUrl            base URL for record service endpoint
      */
     public RecordDumpServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
-        this(failSafeHttpClient, baseUrl, RecordDumpServiceConnector.TimingLogLevel.INFO);
+        this(builder(failSafeHttpClient, baseUrl));
     }
 
     /**
@@ -88,94 +86,121 @@ public class RecordDumpServiceConnector {
      * @param level              timings log level
      */
     public RecordDumpServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, RecordDumpServiceConnector.TimingLogLevel level) {
+        this(builder(failSafeHttpClient, baseUrl).withTimingLogLevel(level));
+    }
+
+    private RecordDumpServiceConnector(Builder builder) {
         this.failSafeHttpClient = InvariantUtil.checkNotNullOrThrow(
-                failSafeHttpClient, "failSafeHttpClient");
+                builder.failSafeHttpClient, "failSafeHttpClient");
         this.baseUrl = InvariantUtil.checkNotNullNotEmptyOrThrow(
-                baseUrl, "baseUrl");
-        switch (level) {
-            case TRACE:
-                logger = LOGGER::trace;
-                break;
-            case DEBUG:
-                logger = LOGGER::debug;
-                break;
-            case INFO:
-                logger = LOGGER::info;
-                break;
-            case WARN:
-                logger = LOGGER::warn;
-                break;
-            case ERROR:
-                logger = LOGGER::error;
-                break;
-            default:
-                logger = LOGGER::info;
-                break;
-        }
+                builder.baseUrl, "baseUrl");
+        logger = new TimingLogger(LOGGER, builder.level.name());
+        bulkhead = builder.bulkhead;
+    }
+
+    /**
+     * Returns builder of an instance with default retry policy
+     *
+     * @param httpClient web resources client
+     * @param baseUrl    base URL for record service endpoint
+     * @return new builder
+     */
+    public static Builder builder(Client httpClient, String baseUrl) {
+        return new Builder(FailSafeHttpClient.create(httpClient, RETRIES.getRetryPolicy()), baseUrl);
+    }
+
+    /**
+     * Returns builder of an instance with custom retry policy
+     *
+     * @param failSafeHttpClient web resources client with custom retry policy
+     * @param baseUrl            base URL for record service endpoint
+     * @return new builder
+     */
+    public static Builder builder(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
+        return new Builder(failSafeHttpClient, baseUrl);
     }
 
     public InputStream dumpAgenciesDryRun(AgencyParams params) throws RecordDumpServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return postRequestAgency(PATH_DUMP_AGENCY_DRYRUN, params, InputStream.class);
         } finally {
             logger.log("dumpAgencies({}) took {} milliseconds",
-                    params,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    params, start);
         }
     }
 
     public InputStream dumpAgencies(AgencyParams params) throws RecordDumpServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return postRequestAgency(PATH_DUMP_AGENCY, params, InputStream.class);
         } finally {
             logger.log("dumpAgencies({}) took {} milliseconds",
-                    params,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    params, start);
         }
     }
 
     public InputStream dumpRecords(RecordParams params, String body) throws RecordDumpServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return postRequestRecord(PATH_DUMP_RECORD, body, params, InputStream.class);
         } finally {
             logger.log("dumpRecords({}) took {} milliseconds",
-                    params,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    params, start);
         }
 
     }
 
     private <S, T> T postRequestAgency(String path, S data, Class<T> returnType) throws RecordDumpServiceConnectorException {
-        logger.log("POST {} with data {}", path, data);
+        logger.message("POST {} with data {}", path, data);
         final HttpPost httpPost = new HttpPost(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
                 .withPathElements(path)
                 .withJsonData(data)
                 .withHeader("Accept", TEXT_PLAIN)
                 .withHeader("Content-type", APPLICATION_JSON);
-        final Response response = httpPost.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, returnType);
+        return executeWithinBulkhead(httpPost, returnType);
     }
 
     private <S, T> T postRequestRecord(String basePath, String body, RecordParams params, Class<T> returnType) throws RecordDumpServiceConnectorException {
-        logger.log("POST {} with data \n{}", basePath, body);
+        logger.message("POST {} with data \n{}", basePath, body);
         final HttpPost httpPost = new HttpPost(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
                 .withPathElements(basePath)
                 .withData(body, TEXT_PLAIN)
                 .withHeader("Accept", TEXT_PLAIN);
         if (params != null) {
-            for (Map.Entry<String, Object> param : params.entrySet()) {
-                httpPost.withQueryParameter(param.getKey(), param.getValue());
+            params.addQueryParameters(httpPost);
+        }
+        return executeWithinBulkhead(httpPost, returnType);
+    }
+
+    /* Executes request within the bulkhead. The permit of an InputStream
+       result is held until the stream is closed. */
+    private <T> T executeWithinBulkhead(HttpPost httpPost, Class<T> returnType) throws RecordDumpServiceConnectorException {
+        if (bulkhead != null && !bulkhead.acquire()) {
+            throw new RecordDumpServiceConnectorException(
+                    String.format("Request rejected by %s bulkhead: %s", bulkhead.getName(), bulkhead));
+        }
+        boolean released = false;
+        try {
+            final Response response = execute(httpPost);
+            assertResponseStatus(response, Response.Status.OK);
+            final T entity = readResponseEntity(response, returnType);
+            if (bulkhead != null && entity instanceof InputStream) {
+                released = true;
+                return returnType.cast(new BulkheadReleasingInputStream((InputStream) entity, bulkhead));
+            }
+            return entity;
+        } finally {
+            if (bulkhead != null && !released) {
+                bulkhead.release();
             }
         }
-        final Response response = httpPost.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, returnType);
+    }
+
+    private Response execute(HttpRequest<?> request) throws RecordDumpServiceConnectorTimeoutException {
+        return RETRIES.execute(request, RecordDumpServiceConnectorTimeoutException::new);
     }
 
     private <T> T readResponseEntity(Response response, Class<T> type)
@@ -229,12 +254,68 @@ public class RecordDumpServiceConnector {
         failSafeHttpClient.getClient().close();
     }
 
-    @FunctionalInterface
-    interface LogLevelMethod {
-        void log(String format, Object... objs);
+    /**
+     * Builder of {@link RecordDumpServiceConnector} instances
+     */
+    public static class Builder {
+        private final FailSafeHttpClient failSafeHttpClient;
+        private final String baseUrl;
+        private RecordDumpServiceConnector.TimingLogLevel level = RecordDumpServiceConnector.TimingLogLevel.INFO;
+        private Bulkhead bulkhead;
+
+        private Builder(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
+            this.failSafeHttpClient = failSafeHttpClient;
+            this.baseUrl = baseUrl;
+        }
+
+        /**
+         * @param level timings log level, default INFO
+         * @return this builder
+         */
+        public Builder withTimingLogLevel(RecordDumpServiceConnector.TimingLogLevel level) {
+            this.level = InvariantUtil.checkNotNullOrThrow(level, "level");
+            return this;
+        }
+
+        /**
+         * @param bulkhead bulkhead limiting the concurrency of dump requests, a permit
+         *                 is held until the returned dump stream is closed
+         * @return this builder
+         */
+        public Builder withBulkhead(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+            return this;
+        }
+
+        public RecordDumpServiceConnector build() {
+            return new RecordDumpServiceConnector(this);
+        }
+    }
+
+    private static class BulkheadReleasingInputStream extends FilterInputStream {
+        private final Bulkhead bulkhead;
+        private boolean closed;
+
+        BulkheadReleasingInputStream(InputStream in, Bulkhead bulkhead) {
+            super(in);
+            this.bulkhead = bulkhead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    bulkhead.release();
+                }
+            }
+        }
     }
 
-    public static class AgencyParams extends HashMap<String, Object> {
+
+    public static class AgencyParams extends ConnectorParams {
         public enum Key {
             AGENCIES("agencies"),
             RECORD_STATUS("recordStatus"),
@@ -314,6 +395,13 @@ public class RecordDumpServiceConnector {
             }
         }
 
+        /**
+         * @return immutable copy of these parameters
+         */
+        public AgencyParams freeze() {
+            return freeze(AgencyParams::new);
+        }
+
         public AgencyParams withAgencies(List<Integer> agencies) {
             putOrRemoveOnNull(Key.AGENCIES, agencies);
             return this;
@@ -419,7 +507,7 @@ public class RecordDumpServiceConnector {
         }
     }
 
-    public static class RecordParams extends HashMap<String, Object> {
+    public static class RecordParams extends ConnectorParams {
         public enum Key {
             OUTPUT_FORMAT("output-format"),
             OUTPUT_ENCODING("output-encoding"),
@@ -450,6 +538,13 @@ public class RecordDumpServiceConnector {
             }
         }
 
+        /**
+         * @return immutable copy of these parameters
+         */
+        public RecordParams freeze() {
+            return freeze(RecordParams::new);
+        }
+
         public RecordParams withOutputFormat(OutputFormat outputFormat) {
             putOrRemoveOnNull(Key.OUTPUT_FORMAT, outputFormat.toString());
             return this;
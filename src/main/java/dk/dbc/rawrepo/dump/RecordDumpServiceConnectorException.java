@@ -9,4 +9,8 @@ public class RecordDumpServiceConnectorException extends Exception {
     public RecordDumpServiceConnectorException(String msg) {
         super(msg);
     }
+
+    public RecordDumpServiceConnectorException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
 }
@@ -1,6 +1,10 @@
 package dk.dbc.rawrepo.dump;
 
-import dk.dbc.httpclient.HttpClient;
+import dk.dbc.rawrepo.client.Bulkhead;
+import dk.dbc.rawrepo.client.ClientFactory;
+import dk.dbc.rawrepo.client.ClientSettings;
+import dk.dbc.rawrepo.client.ClientSettingsConfig;
+import dk.dbc.rawrepo.client.LoadBalancer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -8,8 +12,6 @@ import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.client.Client;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.jackson.JacksonFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,17 +20,38 @@ public class RecordDumpServiceConnectorFactory {
     private static final Logger LOGGER = LoggerFactory.getLogger(RecordDumpServiceConnectorFactory.class);
 
     public static RecordDumpServiceConnector create(String recordServiceBaseUrl) {
-        final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
-        LOGGER.info("Creating RecordDumpServiceConnector for: {}", recordServiceBaseUrl);
-        return new RecordDumpServiceConnector(client, recordServiceBaseUrl);
+        return create(recordServiceBaseUrl, RecordDumpServiceConnector.TimingLogLevel.INFO);
     }
 
     public static RecordDumpServiceConnector create(String recordServiceBaseUrl, RecordDumpServiceConnector.TimingLogLevel level) {
-        final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
-        LOGGER.info("Creating RecordDumpServiceConnector for: {}", recordServiceBaseUrl);
-        return new RecordDumpServiceConnector(client, recordServiceBaseUrl, level);
+        return create(recordServiceBaseUrl, level, new ClientSettings());
+    }
+
+    /**
+     * @param recordServiceBaseUrl base URL, or comma separated list of base URLs to load balance requests across
+     * @param level                timings log level
+     * @param settings             client settings
+     * @return new connector
+     */
+    public static RecordDumpServiceConnector create(String recordServiceBaseUrl, RecordDumpServiceConnector.TimingLogLevel level, ClientSettings settings) {
+        if (recordServiceBaseUrl != null && recordServiceBaseUrl.contains(",")) {
+            return create(new LoadBalancer(LoadBalancer.parseBaseUrls(recordServiceBaseUrl), settings), level, settings);
+        }
+        final Client client = ClientFactory.newClient(settings);
+        LOGGER.info("Creating RecordDumpServiceConnector for: {} with {}", recordServiceBaseUrl, settings);
+        return RecordDumpServiceConnector.builder(client, recordServiceBaseUrl)
+                .withTimingLogLevel(level)
+                .withBulkhead(Bulkhead.forGroup(settings, ClientSettings.BulkheadGroup.DUMP))
+                .build();
+    }
+
+    public static RecordDumpServiceConnector create(LoadBalancer loadBalancer, RecordDumpServiceConnector.TimingLogLevel level, ClientSettings settings) {
+        final Client client = ClientFactory.newClient(settings, ClientFactory.newExecutorService(settings), loadBalancer);
+        LOGGER.info("Creating RecordDumpServiceConnector for: {} with {}", loadBalancer, settings);
+        return RecordDumpServiceConnector.builder(client, loadBalancer.getBaseUrl())
+                .withTimingLogLevel(level)
+                .withBulkhead(Bulkhead.forGroup(settings, ClientSettings.BulkheadGroup.DUMP))
+                .build();
     }
 
     @Inject
@@ -39,11 +62,15 @@ public class RecordDumpServiceConnectorFactory {
     @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_TIMING_LOG_LEVEL", defaultValue = "INFO")
     private RecordDumpServiceConnector.TimingLogLevel level;
 
+    @Inject
+    private ClientSettingsConfig clientSettingsConfig;
+
     RecordDumpServiceConnector recordDumpServiceConnector;
 
     @PostConstruct
     public void initializeConnector() {
-        recordDumpServiceConnector = RecordDumpServiceConnectorFactory.create(recordServiceBaseUrl, level);
+        recordDumpServiceConnector = RecordDumpServiceConnectorFactory.create(recordServiceBaseUrl, level,
+                clientSettingsConfig.toClientSettings());
     }
 
     @Produces
@@ -0,0 +1,624 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.queue;
+
+import dk.dbc.invariant.InvariantUtil;
+import dk.dbc.rawrepo.client.AtomicFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Durable outbox of record enqueue requests
+ * <p>
+ * Enqueue requests are appended to a local write-ahead log and acknowledged
+ * immediately. A background sender reads the log and passes the requests on to
+ * {@link QueueServiceConnector#enqueueRecord(int, String, String, QueueServiceConnector.EnqueueParams)},
+ * sending each attempt once, without the retries of the connector, and retrying
+ * failed requests with exponential backoff, at the max retry delay for as long
+ * as the failure lasts.
+ * </p>
+ * <p>
+ * Requests rejected by the queue service with a client error status other than
+ * 404, 408 and 429 and malformed log entries are appended as is to the dead
+ * letter file, a sibling of the log with suffix .dead, and skipped. So are
+ * requests failing the max number of attempts, if one is set. Dead letters can
+ * be replayed by appending them to a log not in use.
+ * </p>
+ * <p>
+ * The log position of the delivered requests is checkpointed after every batch,
+ * so requests not known to be delivered are sent again after a restart, giving
+ * at-least-once delivery. The log is synced to disk once the max number of
+ * unsynced requests is reached and, once the outbox is started, by a
+ * background syncer at least every sync interval, independently of delivery.
+ * Requests appended since the last sync may be lost on a system crash. The log
+ * is truncated when every request in it has been delivered.
+ * </p>
+ * <pre>
+ *    final EnqueueOutbox outbox = new EnqueueOutbox(queueServiceConnector, Path.of("/data/enqueue.log"))
+ *            .withMaxUnsynced(64)
+ *            .withSyncInterval(Duration.ofMillis(100))
+ *            .start();
+ *    outbox.enqueueRecord(870970, "50129691", "fbs-ph-update", params);
+ * </pre>
+ * <p>
+ * Enqueues may be appended from any thread, appends are serialized on the
+ * outbox while the single sender thread reads and delivers entries behind them.
+ * </p>
+ */
+public class EnqueueOutbox implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EnqueueOutbox.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final QueueServiceConnector connector;
+    private final Path log;
+    private final Path checkpoint;
+    private final Path deadLetters;
+    private final FileChannel appendChannel;
+    private final FileChannel readChannel;
+
+    private int maxUnsynced = 64;
+    private long syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private int batchSize = 100;
+    private long minRetryDelayMillis = 1000;
+    private long maxRetryDelayMillis = 60000;
+    private int maxAttempts;
+    private long compactThreshold = 16 << 20;
+
+    /* Guarded by this */
+    private int unsynced;
+    private long lastSync = System.nanoTime();
+
+    private volatile long appendPosition;
+    private volatile long deliveredPosition;
+    private volatile boolean closed;
+    private volatile Thread sender;
+    private volatile Thread syncer;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Opens the outbox log, creating it if it does not exist.
+     * The requests of an existing log not yet delivered are sent once the outbox is started.
+     *
+     * @param connector queue service connector, its retry policy is not used by the outbox
+     * @param log       log file, the delivered position is checkpointed in a sibling file with suffix .delivered
+     * @throws IOException on failure to open the log
+     */
+    public EnqueueOutbox(QueueServiceConnector connector, Path log) throws IOException {
+        this.connector = InvariantUtil.checkNotNullOrThrow(connector, "connector").withoutRetries();
+        this.log = InvariantUtil.checkNotNullOrThrow(log, "log");
+        this.checkpoint = log.resolveSibling(log.getFileName() + ".delivered");
+        this.deadLetters = log.resolveSibling(log.getFileName() + ".dead");
+        this.appendChannel = FileChannel.open(log,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.readChannel = FileChannel.open(log, StandardOpenOption.READ);
+        try {
+            appendPosition = truncateIncompleteEntry();
+            deliveredPosition = readCheckpoint();
+            if (deliveredPosition > appendPosition) {
+                // The log was truncated before the checkpoint was reset
+                deliveredPosition = 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            appendChannel.close();
+            readChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param maxUnsynced max number of requests appended before the log is synced to disk, 1 to sync every request
+     * @return this outbox
+     */
+    public EnqueueOutbox withMaxUnsynced(int maxUnsynced) {
+        if (maxUnsynced < 1) {
+            throw new IllegalArgumentException("maxUnsynced must be positive, was " + maxUnsynced);
+        }
+        this.maxUnsynced = maxUnsynced;
+        return this;
+    }
+
+    /**
+     * @param syncInterval max time before appended requests are synced to disk
+     * @return this outbox
+     */
+    public EnqueueOutbox withSyncInterval(Duration syncInterval) {
+        this.syncIntervalNanos = syncInterval.toNanos();
+        return this;
+    }
+
+    /**
+     * @param batchSize max number of requests delivered between checkpoints
+     * @return this outbox
+     */
+    public EnqueueOutbox withBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive, was " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param minRetryDelay delay before the first retry of a failed request
+     * @param maxRetryDelay max delay between retries, delays double up to this
+     * @return this outbox
+     */
+    public EnqueueOutbox withRetryDelay(Duration minRetryDelay, Duration maxRetryDelay) {
+        this.minRetryDelayMillis = minRetryDelay.toMillis();
+        this.maxRetryDelayMillis = Math.max(maxRetryDelay.toMillis(), minRetryDelayMillis);
+        return this;
+    }
+
+    /**
+     * @param maxAttempts max number of attempts to deliver a request before it is dead-lettered,
+     *                    by default requests failing temporarily are retried until delivered
+     * @return this outbox
+     */
+    public EnqueueOutbox withMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive, was " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Starts the background sender and syncer
+     *
+     * @return this outbox
+     */
+    public synchronized EnqueueOutbox start() {
+        if (sender == null) {
+            sender = new Thread(this::send, "enqueue-outbox-" + log.getFileName());
+            sender.setDaemon(true);
+            sender.start();
+            syncer = new Thread(this::syncPeriodically, "enqueue-outbox-sync-" + log.getFileName());
+            syncer.setDaemon(true);
+            syncer.start();
+        }
+        return this;
+    }
+
+    /**
+     * @return number of requests appended since the outbox was opened
+     */
+    public long getAppended() {
+        return appended.sum();
+    }
+
+    /**
+     * @return number of requests delivered since the outbox was opened
+     */
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return number of requests rejected by the queue service
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return number of rejected, undeliverable and malformed requests appended to the dead letter file
+     */
+    public long getDeadLettered() {
+        return deadLettered.sum();
+    }
+
+    /**
+     * @return number of failed delivery attempts
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return true if every appended request has been delivered
+     */
+    public boolean isDrained() {
+        return deliveredPosition == appendPosition;
+    }
+
+    public void enqueueRecord(int agencyId, String bibliographicRecordId, String provider) throws IOException {
+        enqueueRecord(agencyId, bibliographicRecordId, provider, null);
+    }
+
+    /**
+     * Appends enqueue request to the log, to be delivered by the background sender
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param provider              queue provider
+     * @param params                enqueue parameters, may be null
+     * @throws IOException           on failure to append to the log
+     * @throws IllegalStateException if the outbox is closed
+     */
+    public void enqueueRecord(int agencyId, String bibliographicRecordId, String provider,
+                              QueueServiceConnector.EnqueueParams params) throws IOException {
+        InvariantUtil.checkNotNullNotEmptyOrThrow(bibliographicRecordId, "bibliographicRecordId");
+        InvariantUtil.checkNotNullNotEmptyOrThrow(provider, "provider");
+        final ByteBuffer entry = StandardCharsets.UTF_8.encode(agencyId + " "
+                + encode(bibliographicRecordId) + ' '
+                + encode(provider) + ' '
+                + (params == null ? "" : params.toQueryString()) + '\n');
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Outbox is closed");
+            }
+            while (entry.hasRemaining()) {
+                appendChannel.write(entry);
+            }
+            appendPosition = appendChannel.position();
+            appended.increment();
+            if (++unsynced >= maxUnsynced) {
+                sync();
+            }
+        }
+        final Thread current = sender;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    /**
+     * Syncs appended requests to disk
+     *
+     * @throws IOException on failure to sync
+     */
+    public synchronized void sync() throws IOException {
+        if (unsynced > 0) {
+            appendChannel.force(false);
+            unsynced = 0;
+        }
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Waits until every appended request has been delivered
+     *
+     * @param timeout max time to wait
+     * @return true if drained, false on timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitDrained(Duration timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        while (!isDrained()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the sender, syncs and closes the log. Requests not yet delivered
+     * are sent when the log is opened again.
+     *
+     * @throws IOException on failure to sync or close the log
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // The sender stops after the request in progress, if any
+        join(sender);
+        join(syncer);
+        try {
+            sync();
+        } finally {
+            appendChannel.close();
+            readChannel.close();
+        }
+    }
+
+    private void send() {
+        while (!closed) {
+            try {
+                final List<Entry> batch = readBatch();
+                if (batch.isEmpty()) {
+                    compactIfDrained();
+                    LockSupport.parkNanos(this, syncIntervalNanos);
+                    continue;
+                }
+                long position = deliveredPosition;
+                for (Entry entry : batch) {
+                    if (!deliver(entry)) {
+                        break;
+                    }
+                    position = entry.end;
+                }
+                writeCheckpoint(position);
+                deliveredPosition = position;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Enqueue outbox {} failed at position {}", log, deliveredPosition, e);
+                pause(minRetryDelayMillis);
+            }
+        }
+    }
+
+    /* Syncs appended requests every sync interval, whatever the sender is doing */
+    private void syncPeriodically() {
+        while (!closed) {
+            LockSupport.parkNanos(this, syncIntervalNanos);
+            try {
+                syncIfDue();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Enqueue outbox {} failed to sync", log, e);
+            }
+        }
+    }
+
+    private static void join(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /* Delivers the entry, retrying until delivered, dead-lettered or closed,
+       returns false if closed before delivery */
+    private boolean deliver(Entry entry) throws IOException {
+        if (entry.provider == null) {
+            LOGGER.error("Malformed enqueue outbox entry '{}', dead-lettered", entry.line);
+            deadLetter(entry);
+            return true;
+        }
+        long retryDelayMillis = minRetryDelayMillis;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                connector.enqueueRecord(entry.agencyId, entry.bibliographicRecordId, entry.provider, entry.params);
+                delivered.increment();
+                return true;
+            } catch (QueueServiceConnectorUnexpectedStatusCodeException e) {
+                if (isRejection(e.getStatusCode())) {
+                    LOGGER.error("Enqueue of {}:{} by {} rejected, dead-lettered",
+                            entry.agencyId, entry.bibliographicRecordId, entry.provider, e);
+                    rejected.increment();
+                    deadLetter(entry);
+                    return true;
+                }
+                LOGGER.warn("Enqueue of {}:{} failed, attempt {}", entry.agencyId, entry.bibliographicRecordId, attempt, e);
+            } catch (QueueServiceConnectorException | RuntimeException e) {
+                LOGGER.warn("Enqueue of {}:{} failed, attempt {}", entry.agencyId, entry.bibliographicRecordId, attempt, e);
+            }
+            failures.increment();
+            if (maxAttempts > 0 && attempt >= maxAttempts) {
+                LOGGER.error("Enqueue of {}:{} by {} failed {} attempts, dead-lettered",
+                        entry.agencyId, entry.bibliographicRecordId, entry.provider, attempt);
+                deadLetter(entry);
+                return true;
+            }
+            if (!pause(retryDelayMillis)) {
+                return false;
+            }
+            retryDelayMillis = Math.min(retryDelayMillis * 2, maxRetryDelayMillis);
+        }
+    }
+
+    /* Client errors other than not found, timeout and too many requests do not go away on retry */
+    private static boolean isRejection(int statusCode) {
+        return statusCode >= 400 && statusCode < 500 && statusCode != 404 && statusCode != 408 && statusCode != 429;
+    }
+
+    private void deadLetter(Entry entry) throws IOException {
+        Files.write(deadLetters, (entry.line + '\n').getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+        deadLettered.increment();
+    }
+
+    /* Reads up to batch size complete entries following the delivered position */
+    private List<Entry> readBatch() throws IOException {
+        final List<Entry> batch = new ArrayList<>();
+        long position = deliveredPosition;
+        final long end = appendPosition;
+        while (batch.size() < batchSize && position < end) {
+            readBuffer.clear();
+            if (end - position < readBuffer.capacity()) {
+                readBuffer.limit((int) (end - position));
+            }
+            while (readBuffer.hasRemaining() && readChannel.read(readBuffer, position + readBuffer.position()) > 0) {
+                // Fill the buffer
+            }
+            readBuffer.flip();
+            final int lines = parseLines(readBuffer, position, batch);
+            if (lines == 0) {
+                // Entry larger than the buffer
+                readBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                continue;
+            }
+            position = batch.get(batch.size() - 1).end;
+        }
+        return batch;
+    }
+
+    private int parseLines(ByteBuffer buffer, long position, List<Entry> batch) {
+        int lines = 0;
+        int start = 0;
+        for (int i = 0; i < buffer.limit() && batch.size() < batchSize; i++) {
+            if (buffer.get(i) == '\n') {
+                final String line = new String(buffer.array(), start, i - start, StandardCharsets.UTF_8);
+                Entry entry;
+                try {
+                    entry = parseEntry(line, position + i + 1);
+                } catch (RuntimeException e) {
+                    entry = new Entry(line, position + i + 1);
+                }
+                batch.add(entry);
+                start = i + 1;
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static Entry parseEntry(String line, long end) {
+        final String[] fields = line.split(" ", -1);
+        if (fields.length != 4) {
+            throw new IllegalStateException("Invalid enqueue outbox entry: " + line);
+        }
+        final QueueServiceConnector.EnqueueParams params = new QueueServiceConnector.EnqueueParams();
+        if (!fields[3].isEmpty()) {
+            for (String param : fields[3].split("&")) {
+                final int equals = param.indexOf('=');
+                final String name = decode(param.substring(0, equals));
+                final String value = decode(param.substring(equals + 1));
+                switch (name) {
+                    case "enqueue-as":
+                        params.withEnqueueAs(Integer.valueOf(value));
+                        break;
+                    case "priority":
+                        params.withPriority(Integer.valueOf(value));
+                        break;
+                    case "changed":
+                        params.withChanged(Boolean.valueOf(value));
+                        break;
+                    case "leaf":
+                        params.withLeaf(Boolean.valueOf(value));
+                        break;
+                    default:
+                        params.put(name, value);
+                        break;
+                }
+            }
+        }
+        return new Entry(line, Integer.parseInt(fields[0]), decode(fields[1]), decode(fields[2]),
+                params.isEmpty() ? null : params, end);
+    }
+
+    private synchronized void syncIfDue() throws IOException {
+        if (unsynced > 0 && System.nanoTime() - lastSync >= syncIntervalNanos) {
+            sync();
+        }
+    }
+
+    /* Truncates the log once every request in it has been delivered */
+    private synchronized void compactIfDrained() throws IOException {
+        if (appendPosition >= compactThreshold && isDrained()) {
+            appendChannel.truncate(0);
+            appendChannel.force(false);
+            unsynced = 0;
+            appendPosition = 0;
+            writeCheckpoint(0);
+            deliveredPosition = 0;
+        }
+    }
+
+    /* Returns the end of the last complete entry, an entry partially
+       written before a crash is truncated */
+    private long truncateIncompleteEntry() throws IOException {
+        long end = readChannel.size();
+        final ByteBuffer last = ByteBuffer.allocate(1);
+        while (end > 0) {
+            last.clear();
+            readChannel.read(last, end - 1);
+            if (last.get(0) == '\n') {
+                break;
+            }
+            end--;
+        }
+        if (end < readChannel.size()) {
+            LOGGER.warn("Truncating incomplete entry at position {} of enqueue outbox {}", end, log);
+            appendChannel.truncate(end);
+        }
+        return end;
+    }
+
+    private long readCheckpoint() throws IOException {
+        return AtomicFiles.read(checkpoint).map(Long::parseLong).orElse(0L);
+    }
+
+    private void writeCheckpoint(long position) throws IOException {
+        AtomicFiles.write(checkpoint, Long.toString(position));
+    }
+
+    /* Parks the sender for the given time, returns false if the outbox is closed */
+    private boolean pause(long millis) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long remaining;
+        while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+        return !closed;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "EnqueueOutbox{" +
+                "log=" + log +
+                ", appended=" + getAppended() +
+                ", delivered=" + getDelivered() +
+                ", rejected=" + getRejected() +
+                ", deadLettered=" + getDeadLettered() +
+                ", failures=" + getFailures() +
+                '}';
+    }
+
+    private static class Entry {
+        private final String line;
+        private final int agencyId;
+        private final String bibliographicRecordId;
+        private final String provider;
+        private final QueueServiceConnector.EnqueueParams params;
+        private final long end;
+
+        Entry(String line, int agencyId, String bibliographicRecordId, String provider,
+              QueueServiceConnector.EnqueueParams params, long end) {
+            this.line = line;
+            this.agencyId = agencyId;
+            this.bibliographicRecordId = bibliographicRecordId;
+            this.provider = provider;
+            this.params = params;
+            this.end = end;
+        }
+
+        /* Malformed entry */
+        Entry(String line, long end) {
+            this(line, 0, null, null, null, end);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.queue;
+
+import dk.dbc.invariant.InvariantUtil;
+import dk.dbc.rawrepo.client.Deadline;
+import dk.dbc.rawrepo.dto.EnqueueAgencyResponseDTO;
+import dk.dbc.rawrepo.dto.EnqueueResultCollectionDTO;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Priority aware scheduler of enqueue requests
+ * <p>
+ * Requests are queued by the priority of their {@link QueueServiceConnector.EnqueueParams},
+ * requests without priority have the default priority of the queue service, 1000.
+ * At most max concurrency requests are sent at a time, on the given executor
+ * service. Whenever a request completes, the next request is taken from the
+ * queues by smooth weighted round-robin, so each non-empty queue gets a share
+ * of the requests proportional to its weight, and queues of equal weight are
+ * served in priority order, lowest value first.
+ * </p>
+ * <pre>
+ *    final EnqueueScheduler scheduler = new EnqueueScheduler(queueServiceConnector, executorService, 4)
+ *            .withWeight(1, 8);   // urgent enqueues get 8 of every 9 slots while bulk enqueues are queued
+ *    scheduler.enqueueRecord(870970, "50129691", "fbs-ph-update", new EnqueueParams().withPriority(1));
+ * </pre>
+ * <p>
+ * Queued requests wait without a time limit, the deadline of the calling
+ * thread, if any, applies once a request is sent. At most max queued requests
+ * wait at a time, a request scheduled beyond that is rejected, its future
+ * completed exceptionally by a {@link RejectedExecutionException}, so a
+ * producer outpacing the queue service sees back-pressure instead of growing
+ * the queues without bound.
+ * </p>
+ * <p>
+ * Requests may be scheduled from any thread. Queues and counters are guarded
+ * by the scheduler, which never holds its lock while a request is sent.
+ * </p>
+ */
+public class EnqueueScheduler {
+    public static final int DEFAULT_PRIORITY = 1000;
+    public static final int DEFAULT_MAX_QUEUED = 10000;
+
+    private final QueueServiceConnector connector;
+    private final ExecutorService executorService;
+    private final int maxConcurrency;
+
+    /* Guarded by this */
+    private final Map<Integer, Integer> weights = new HashMap<>();
+    private final TreeMap<Integer, Lane> lanes = new TreeMap<>();
+    private int maxQueued = DEFAULT_MAX_QUEUED;
+    private int inFlight;
+    private int queued;
+    private long rejected;
+
+    /**
+     * @param connector       queue service connector
+     * @param executorService executor service sending the requests
+     * @param maxConcurrency  max number of requests sent at a time
+     */
+    public EnqueueScheduler(QueueServiceConnector connector, ExecutorService executorService, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive, was " + maxConcurrency);
+        }
+        this.connector = InvariantUtil.checkNotNullOrThrow(connector, "connector");
+        this.executorService = InvariantUtil.checkNotNullOrThrow(executorService, "executorService");
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Sets the weight of the queue of the given priority, the weight of other priorities is 1
+     * <p>
+     * Weights may be changed while requests are queued, a new weight applies
+     * from the next request taken.
+     * </p>
+     *
+     * @param priority enqueue priority
+     * @param weight   share of the requests sent relative to other queues
+     * @return this scheduler
+     */
+    public synchronized EnqueueScheduler withWeight(int priority, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be positive, was " + weight);
+        }
+        weights.put(priority, weight);
+        final Lane lane = lanes.get(priority);
+        if (lane != null) {
+            lane.weight = weight;
+        }
+        return this;
+    }
+
+    /**
+     * @param maxQueued max number of requests queued at a time, over all priorities
+     * @return this scheduler
+     */
+    public synchronized EnqueueScheduler withMaxQueued(int maxQueued) {
+        if (maxQueued < 1) {
+            throw new IllegalArgumentException("maxQueued must be positive, was " + maxQueued);
+        }
+        this.maxQueued = maxQueued;
+        return this;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return number of queued requests not yet sent
+     */
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return number of requests rejected because max queued requests were waiting
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @param priority enqueue priority
+     * @return number of queued requests of the given priority not yet sent
+     */
+    public synchronized int getQueued(int priority) {
+        final Lane lane = lanes.get(priority);
+        return lane == null ? 0 : lane.tasks.size();
+    }
+
+    public CompletableFuture<EnqueueResultCollectionDTO> enqueueRecord(int agencyId, String bibliographicRecordId, String provider) {
+        return enqueueRecord(agencyId, bibliographicRecordId, provider, null);
+    }
+
+    /**
+     * Schedules {@link QueueServiceConnector#enqueueRecord(int, String, String, QueueServiceConnector.EnqueueParams)}
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param provider              queue provider
+     * @param params                enqueue parameters, may be null
+     * @return future completed by the result of the request, or exceptionally by its failure,
+     * or by a {@link RejectedExecutionException} if max queued requests are waiting
+     */
+    public CompletableFuture<EnqueueResultCollectionDTO> enqueueRecord(int agencyId, String bibliographicRecordId,
+                                                                       String provider, QueueServiceConnector.EnqueueParams params) {
+        return schedule(params, () -> connector.enqueueRecord(agencyId, bibliographicRecordId, provider, params));
+    }
+
+    public CompletableFuture<EnqueueAgencyResponseDTO> enqueueAgency(int agencyId, String worker) {
+        return enqueueAgency(agencyId, worker, null);
+    }
+
+    /**
+     * Schedules {@link QueueServiceConnector#enqueueAgency(int, String, QueueServiceConnector.EnqueueParams)}
+     *
+     * @param agencyId agency ID
+     * @param worker   queue worker
+     * @param params   enqueue parameters, may be null
+     * @return future completed by the result of the request, or exceptionally by its failure,
+     * or by a {@link RejectedExecutionException} if max queued requests are waiting
+     */
+    public CompletableFuture<EnqueueAgencyResponseDTO> enqueueAgency(int agencyId, String worker,
+                                                                     QueueServiceConnector.EnqueueParams params) {
+        return schedule(params, () -> connector.enqueueAgency(agencyId, worker, params));
+    }
+
+    private <T> CompletableFuture<T> schedule(QueueServiceConnector.EnqueueParams params, Callable<T> request) {
+        final int priority = params == null ? DEFAULT_PRIORITY : params.getPriority().orElse(DEFAULT_PRIORITY);
+        final Task<T> task = new Task<>(Deadline.propagate(request));
+        synchronized (this) {
+            if (queued >= maxQueued) {
+                rejected++;
+                task.result.completeExceptionally(new RejectedExecutionException(
+                        "Enqueue rejected, " + queued + " requests queued"));
+                return task.result;
+            }
+            lanes.computeIfAbsent(priority, p -> new Lane(weights.getOrDefault(p, 1))).tasks.add(task);
+            queued++;
+        }
+        dispatch();
+        return task.result;
+    }
+
+    /* Sends queued requests while below max concurrency */
+    private void dispatch() {
+        while (true) {
+            final Task<?> task;
+            synchronized (this) {
+                if (inFlight >= maxConcurrency) {
+                    return;
+                }
+                task = next();
+                if (task == null) {
+                    return;
+                }
+                inFlight++;
+            }
+            try {
+                executorService.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    inFlight--;
+                }
+                task.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void run(Task<?> task) {
+        try {
+            task.run();
+        } finally {
+            synchronized (this) {
+                inFlight--;
+            }
+            dispatch();
+        }
+    }
+
+    /* Takes the next task by smooth weighted round-robin over the non-empty lanes */
+    private Task<?> next() {
+        Lane selected = null;
+        int totalWeight = 0;
+        for (Lane lane : lanes.values()) {
+            if (lane.tasks.isEmpty()) {
+                continue;
+            }
+            lane.current += lane.weight;
+            totalWeight += lane.weight;
+            if (selected == null || lane.current > selected.current) {
+                selected = lane;
+            }
+        }
+        if (selected == null) {
+            return null;
+        }
+        selected.current -= totalWeight;
+        final Task<?> task = selected.tasks.poll();
+        if (selected.tasks.isEmpty()) {
+            selected.current = 0;
+        }
+        queued--;
+        return task;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EnqueueScheduler{" +
+                "maxConcurrency=" + maxConcurrency +
+                ", inFlight=" + inFlight +
+                ", queued=" + queued +
+                ", maxQueued=" + maxQueued +
+                ", rejected=" + rejected +
+                '}';
+    }
+
+    private static class Lane {
+        private int weight;
+        private final ArrayDeque<Task<?>> tasks = new ArrayDeque<>();
+        private int current;
+
+        Lane(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static class Task<T> {
+        private final Callable<T> request;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Task(Callable<T> request) {
+            this.request = request;
+        }
+
+        void run() {
+            try {
+                result.complete(request.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache of the queue rules, providers and workers of the queue service
+ * <p>
+ * Entries younger than the max age are served by {@link QueueServiceConnector}
+ * without contacting the queue service. Once an entry is older than the max age
+ * minus the refresh-ahead it is reloaded in the background, on the executor
+ * service of the connector, while the current entry is still served, so callers
+ * only wait for the queue service on the first lookup or when an entry has
+ * expired before it could be refreshed. Without an executor service entries are
+ * reloaded by the first lookup after they expire.
+ * </p>
+ * <p>
+ * Rules, providers and workers change on deploys only, call
+ * {@link #invalidateAll()} to pick up changes before entries expire.
+ * </p>
+ * <p>
+ * Concurrent lookups of a missing or expired entry may each load it, the last
+ * load wins. At most one background refresh of an entry runs at a time.
+ * </p>
+ */
+public class QueueMetadataCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueueMetadataCache.class);
+
+    private final long maxAgeNanos;
+    private final long refreshAfterNanos;
+    private final ConcurrentHashMap<String, Entry<?>> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxAge       max age of an entry before it must be reloaded
+     * @param refreshAhead time before the max age at which an entry is reloaded in the background
+     */
+    public QueueMetadataCache(Duration maxAge, Duration refreshAhead) {
+        if (maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException("maxAge must be positive, was " + maxAge);
+        }
+        if (refreshAhead.isNegative() || refreshAhead.compareTo(maxAge) > 0) {
+            throw new IllegalArgumentException("refreshAhead must be between zero and maxAge, was " + refreshAhead);
+        }
+        this.maxAgeNanos = maxAge.toNanos();
+        this.refreshAfterNanos = maxAge.minus(refreshAhead).toNanos();
+    }
+
+    /**
+     * @return number of lookups served from cached entries
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of entries reloaded in the background
+     */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * @return number of lookups waiting for the queue service
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /* Returns the cached value of the key, loading it if absent or expired,
+       and reloading it in the background when due for refresh */
+    @SuppressWarnings("unchecked")
+    <T> T get(String key, Loader<T> loader, Executor executor) throws QueueServiceConnectorException {
+        final Entry<T> entry = (Entry<T>) entries.get(key);
+        if (entry != null) {
+            final long age = System.nanoTime() - entry.loadedAt;
+            if (age < maxAgeNanos) {
+                hits.increment();
+                if (age >= refreshAfterNanos && executor != null && entry.refreshing.compareAndSet(false, true)) {
+                    refresh(key, entry, loader, executor);
+                }
+                return entry.value;
+            }
+        }
+        misses.increment();
+        final T value = loader.load();
+        entries.put(key, new Entry<>(value));
+        return value;
+    }
+
+    private <T> void refresh(String key, Entry<T> entry, Loader<T> loader, Executor executor) {
+        try {
+            executor.execute(() -> {
+                try {
+                    entries.replace(key, entry, new Entry<>(loader.load()));
+                    refreshes.increment();
+                } catch (QueueServiceConnectorException | RuntimeException e) {
+                    LOGGER.warn("Refreshing cached queue {} failed", key, e);
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueueMetadataCache{" +
+                "hits=" + getHits() +
+                ", refreshes=" + getRefreshes() +
+                ", misses=" + getMisses() +
+                '}';
+    }
+
+    @FunctionalInterface
+    interface Loader<T> {
+        T load() throws QueueServiceConnectorException;
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final long loadedAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(T value) {
+            this.value = value;
+            this.loadedAt = System.nanoTime();
+        }
+    }
+}
@@ -3,16 +3,20 @@ package dk.dbc.rawrepo.queue;
 import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.httpclient.HttpGet;
 import dk.dbc.httpclient.HttpPost;
-import dk.dbc.httpclient.PathBuilder;
+import dk.dbc.httpclient.HttpRequest;
 import dk.dbc.invariant.InvariantUtil;
+import dk.dbc.rawrepo.client.Bulkhead;
+import dk.dbc.rawrepo.client.ConnectorParams;
+import dk.dbc.rawrepo.client.ConnectorRetries;
+import dk.dbc.rawrepo.client.PathTemplate;
+import dk.dbc.rawrepo.client.TimingLogger;
 import dk.dbc.rawrepo.dto.EnqueueAgencyResponseDTO;
 import dk.dbc.rawrepo.dto.EnqueueResultCollectionDTO;
 import dk.dbc.rawrepo.dto.QueueProviderCollectionDTO;
 import dk.dbc.rawrepo.dto.QueueRuleCollectionDTO;
+import dk.dbc.rawrepo.dto.QueueRuleDTO;
 import dk.dbc.rawrepo.dto.QueueStatDTO;
 import dk.dbc.rawrepo.dto.QueueWorkerCollectionDTO;
-import dk.dbc.util.Stopwatch;
-import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.core.Response;
 import net.jodah.failsafe.RetryPolicy;
@@ -20,10 +24,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
 
 public class QueueServiceConnector {
     public enum TimingLogLevel {
@@ -32,34 +43,32 @@ public class QueueServiceConnector {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(QueueServiceConnector.class);
 
-    private static final String PATH_ALL_QUEUE_RULES = "/api/v1/queue/rules";
-    private static final String PATH_ALL_QUEUE_PROVIDERS = "/api/v1/queue/providers";
-    private static final String PATH_ALL_QUEUE_WORKERS = "/api/v1/queue/workers";
+    private static final PathTemplate PATH_ALL_QUEUE_RULES = new PathTemplate("/api/v1/queue/rules");
+    private static final PathTemplate PATH_ALL_QUEUE_PROVIDERS = new PathTemplate("/api/v1/queue/providers");
+    private static final PathTemplate PATH_ALL_QUEUE_WORKERS = new PathTemplate("/api/v1/queue/workers");
 
-    private static final String PATH_ALL_QUEUE_WORKER_STATS = "/api/v1/queue/stats/workers";
-    private static final String PATH_ALL_QUEUE_AGENCY_STATS = "/api/v1/queue/stats/agency";
+    private static final PathTemplate PATH_ALL_QUEUE_WORKER_STATS = new PathTemplate("/api/v1/queue/stats/workers");
+    private static final PathTemplate PATH_ALL_QUEUE_AGENCY_STATS = new PathTemplate("/api/v1/queue/stats/agency");
 
     private static final String PATH_VARIABLE_AGENCY_ID = "agencyid";
     private static final String PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID = "bibliographicrecordid";
     private static final String PATH_VARIABLE_WORKER = "worker";
     private static final String PATH_VARIABLE_PROVIDER = "provider";
 
-    private static final String PATH_ENQUEUE_AGENCY = String.format("/api/v1/queue/{%s}/{%s}",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_WORKER);
-    private static final String PATH_ENQUEUE_RECORD = String.format("/api/v1/queue/{%s}/{%s}/{%s}",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID, PATH_VARIABLE_PROVIDER);
+    private static final PathTemplate PATH_ENQUEUE_AGENCY = new PathTemplate(String.format("/api/v1/queue/{%s}/{%s}",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_WORKER));
+    private static final PathTemplate PATH_ENQUEUE_RECORD = new PathTemplate(String.format("/api/v1/queue/{%s}/{%s}/{%s}",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID, PATH_VARIABLE_PROVIDER));
 
-    private static final RetryPolicy<Response> RETRY_POLICY = new RetryPolicy<Response>()
-            .handle(ProcessingException.class)
-            .handleResultIf(response -> response.getStatus() == 404
-                    || response.getStatus() == 500
-                    || response.getStatus() == 502)
-            .withDelay(Duration.ofSeconds(10))
-            .withMaxRetries(6);
+    private static final ConnectorRetries RETRIES = new ConnectorRetries(Duration.ofSeconds(10), 6, 404, 500, 502);
+    private static final RetryPolicy<Response> NO_RETRY_POLICY = new RetryPolicy<Response>().withMaxRetries(0);
 
     private final FailSafeHttpClient failSafeHttpClient;
     private final String baseUrl;
-    private final QueueServiceConnector.LogLevelMethod logger;
+    private final TimingLogger logger;
+    private final Bulkhead bulkhead;
+    private final ExecutorService executorService;
+    private final QueueMetadataCache queueMetadataCache;
 
     /**
      * Returns new instance with default retry policy
@@ -68,7 +77,7 @@ public class QueueServiceConnector {
      * @param baseUrl    base URL for record service endpoint
      */
     public QueueServiceConnector(Client httpClient, String baseUrl) {
-        this(FailSafeHttpClient.create(httpClient, RETRY_POLICY), baseUrl, QueueServiceConnector.TimingLogLevel.INFO);
+        this(builder(httpClient, baseUrl));
     }
 
     /**
@@ -79,7 +88,7 @@ public class QueueServiceConnector {
      * @param level      timings log level
      */
     public QueueServiceConnector(Client httpClient, String baseUrl, QueueServiceConnector.TimingLogLevel level) {
-        this(FailSafeHttpClient.create(httpClient, RETRY_POLICY), baseUrl, level);
+        this(builder(httpClient, baseUrl).withTimingLogLevel(level));
     }
 
     /**
@@ -89,7 +98,7 @@ public class QueueServiceConnector {
      * @param baseUrl            base URL for record service endpoint
      */
     public QueueServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
-        this(failSafeHttpClient, baseUrl, QueueServiceConnector.TimingLogLevel.INFO);
+        this(builder(failSafeHttpClient, baseUrl));
     }
 
     /**
@@ -100,83 +109,179 @@ public class QueueServiceConnector {
      * @param level              timings log level
      */
     public QueueServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, QueueServiceConnector.TimingLogLevel level) {
+        this(builder(failSafeHttpClient, baseUrl).withTimingLogLevel(level));
+    }
+
+    private QueueServiceConnector(Builder builder) {
         this.failSafeHttpClient = InvariantUtil.checkNotNullOrThrow(
-                failSafeHttpClient, "failSafeHttpClient");
+                builder.failSafeHttpClient, "failSafeHttpClient");
         this.baseUrl = InvariantUtil.checkNotNullNotEmptyOrThrow(
-                baseUrl, "baseUrl");
-        switch (level) {
-            case TRACE:
-                logger = LOGGER::trace;
-                break;
-            case DEBUG:
-                logger = LOGGER::debug;
-                break;
-            case INFO:
-                logger = LOGGER::info;
-                break;
-            case WARN:
-                logger = LOGGER::warn;
-                break;
-            case ERROR:
-                logger = LOGGER::error;
-                break;
-            default:
-                logger = LOGGER::info;
-                break;
-        }
+                builder.baseUrl, "baseUrl");
+        logger = new TimingLogger(LOGGER, builder.level.name());
+        bulkhead = builder.bulkhead;
+        executorService = builder.executorService;
+        queueMetadataCache = builder.queueMetadataCache;
+    }
+
+    private QueueServiceConnector(QueueServiceConnector connector, FailSafeHttpClient failSafeHttpClient) {
+        this.failSafeHttpClient = failSafeHttpClient;
+        this.baseUrl = connector.baseUrl;
+        logger = connector.logger;
+        bulkhead = connector.bulkhead;
+        executorService = connector.executorService;
+        queueMetadataCache = connector.queueMetadataCache;
+    }
+
+    /**
+     * Returns builder of an instance with default retry policy
+     *
+     * @param httpClient web resources client
+     * @param baseUrl    base URL for record service endpoint
+     * @return new builder
+     */
+    public static Builder builder(Client httpClient, String baseUrl) {
+        return new Builder(FailSafeHttpClient.create(httpClient, RETRIES.getRetryPolicy()), baseUrl);
+    }
+
+    /**
+     * Returns builder of an instance with custom retry policy
+     *
+     * @param failSafeHttpClient web resources client with custom retry policy
+     * @param baseUrl            base URL for record service endpoint
+     * @return new builder
+     */
+    public static Builder builder(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
+        return new Builder(failSafeHttpClient, baseUrl);
     }
 
     public void close() {
         failSafeHttpClient.getClient().close();
     }
 
-    public QueueRuleCollectionDTO getQueueRules() throws QueueServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
-        try {
-            return sendRequest(PATH_ALL_QUEUE_RULES, QueueRuleCollectionDTO.class);
-        } finally {
-            logger.log("getQueueRules() took {} milliseconds",
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+    /* Returns connector sharing the client and settings of this connector, but
+       sending each request once, for callers retrying on their own terms */
+    QueueServiceConnector withoutRetries() {
+        return new QueueServiceConnector(this,
+                FailSafeHttpClient.create(failSafeHttpClient.getClient(), NO_RETRY_POLICY));
+    }
+
+    /**
+     * Builder of {@link QueueServiceConnector} instances, without a queue metadata
+     * cache all lookups go to the queue service
+     */
+    public static class Builder {
+        private final FailSafeHttpClient failSafeHttpClient;
+        private final String baseUrl;
+        private QueueServiceConnector.TimingLogLevel level = QueueServiceConnector.TimingLogLevel.INFO;
+        private Bulkhead bulkhead;
+        private ExecutorService executorService;
+        private QueueMetadataCache queueMetadataCache;
+
+        private Builder(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
+            this.failSafeHttpClient = failSafeHttpClient;
+            this.baseUrl = baseUrl;
+        }
+
+        /**
+         * @param level timings log level, default INFO
+         * @return this builder
+         */
+        public Builder withTimingLogLevel(QueueServiceConnector.TimingLogLevel level) {
+            this.level = InvariantUtil.checkNotNullOrThrow(level, "level");
+            return this;
+        }
+
+        /**
+         * @param bulkhead bulkhead limiting the concurrency of queue service requests
+         * @return this builder
+         */
+        public Builder withBulkhead(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+            return this;
+        }
+
+        /**
+         * @param executorService executor service refreshing cached queue metadata ahead of expiry
+         * @return this builder
+         */
+        public Builder withExecutorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * @param queueMetadataCache cache for queue rules, providers and workers, see
+         *                           {@link QueueMetadataCache}, cached collections are shared
+         *                           between callers and must not be modified
+         * @return this builder
+         */
+        public Builder withQueueMetadataCache(QueueMetadataCache queueMetadataCache) {
+            this.queueMetadataCache = queueMetadataCache;
+            return this;
+        }
+
+        public QueueServiceConnector build() {
+            return new QueueServiceConnector(this);
         }
     }
 
+    public QueueRuleCollectionDTO getQueueRules() throws QueueServiceConnectorException {
+        return queueRules().rules;
+    }
+
+    /**
+     * Returns the queue rules of a provider, served from the queue metadata
+     * cache when one is set, see {@link Builder#withQueueMetadataCache(QueueMetadataCache)}
+     *
+     * @param provider queue provider
+     * @return rules of the provider, empty if the provider is unknown
+     * @throws QueueServiceConnectorException on failure to read the queue rules
+     */
+    public List<QueueRuleDTO> getQueueRules(String provider) throws QueueServiceConnectorException {
+        return queueRules().byProvider.getOrDefault(provider, Collections.emptyList());
+    }
+
     public QueueProviderCollectionDTO getQueueProviders() throws QueueServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
-        try {
-            return sendRequest(PATH_ALL_QUEUE_PROVIDERS, QueueProviderCollectionDTO.class);
-        } finally {
-            logger.log("getQueueProviders() took {} milliseconds",
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
-        }
+        return queueProviders().collection;
+    }
+
+    /**
+     * @param provider queue provider
+     * @return true if the provider is known by the queue service
+     * @throws QueueServiceConnectorException on failure to read the queue providers
+     */
+    public boolean isQueueProvider(String provider) throws QueueServiceConnectorException {
+        return queueProviders().names.contains(provider);
     }
 
     public QueueWorkerCollectionDTO getQueueWorkers() throws QueueServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
-        try {
-            return sendRequest(PATH_ALL_QUEUE_WORKERS, QueueWorkerCollectionDTO.class);
-        } finally {
-            logger.log("getQueueWorkers() took {} milliseconds",
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
-        }
+        return queueWorkers().collection;
+    }
+
+    /**
+     * @param worker queue worker
+     * @return true if the worker is known by the queue service
+     * @throws QueueServiceConnectorException on failure to read the queue workers
+     */
+    public boolean isQueueWorker(String worker) throws QueueServiceConnectorException {
+        return queueWorkers().names.contains(worker);
     }
 
     public QueueStatDTO getQueueWorkerStats() throws QueueServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_ALL_QUEUE_WORKER_STATS, QueueStatDTO.class);
         } finally {
-            logger.log("getQueueWorkerStats() took {} milliseconds",
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+            logger.log("getQueueWorkerStats() took {} milliseconds", start);
         }
     }
 
     public QueueStatDTO getQueueAgencyStats() throws QueueServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_ALL_QUEUE_AGENCY_STATS, QueueStatDTO.class);
         } finally {
-            logger.log("getQueueAgencyStats() took {} milliseconds",
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+            logger.log("getQueueAgencyStats() took {} milliseconds", start);
         }
     }
 
@@ -187,12 +292,11 @@ public class QueueServiceConnector {
 
     public EnqueueAgencyResponseDTO enqueueAgency(int agencyId, String worker, EnqueueParams params)
             throws QueueServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return postEnqueueAgencyRequest(PATH_ENQUEUE_AGENCY, agencyId, worker, params, EnqueueAgencyResponseDTO.class);
         } finally {
-            logger.log("enqueueAgency() took {} milliseconds",
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+            logger.log("enqueueAgency() took {} milliseconds", start);
         }
     }
 
@@ -203,70 +307,203 @@ public class QueueServiceConnector {
 
     public EnqueueResultCollectionDTO enqueueRecord(int agencyId, String bibliographicRecordId, String provider, EnqueueParams params)
             throws QueueServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return postEnqueueRecordRequest(PATH_ENQUEUE_RECORD, agencyId, bibliographicRecordId, provider, params, EnqueueResultCollectionDTO.class);
         } finally {
-            logger.log("enqueueRecord() took {} milliseconds",
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+            logger.log("enqueueRecord() took {} milliseconds", start);
         }
     }
 
-    private <S, T> T postEnqueueAgencyRequest(String basePath,
+    /**
+     * Computes the expected number of queue entries by worker created by
+     * {@link #enqueueAgency(int, String, EnqueueParams)} of the given number of records
+     * <p>
+     * The record count can be taken from
+     * {@link dk.dbc.rawrepo.agency.RecordAgencyServiceConnector#getBibliographicRecordIdsForAgencyId(String)}
+     * or {@link dk.dbc.rawrepo.dump.RecordDumpServiceConnector#dumpAgenciesDryRun(dk.dbc.rawrepo.dump.RecordDumpServiceConnector.AgencyParams)}.
+     * </p>
+     *
+     * @param worker      queue worker
+     * @param recordCount number of records of the agency
+     * @return number of queue entries by worker, empty if the worker is unknown
+     * @throws QueueServiceConnectorException on failure to read the queue workers
+     */
+    public Map<String, Long> previewEnqueueAgency(String worker, long recordCount) throws QueueServiceConnectorException {
+        if (!isQueueWorker(worker)) {
+            return Collections.emptyMap();
+        }
+        return Collections.singletonMap(worker, recordCount);
+    }
+
+    /**
+     * Computes the expected number of queue entries by worker created by calling
+     * {@link #enqueueRecord(int, String, String, EnqueueParams)} for the given number of records
+     * <p>
+     * Each record is enqueued for the worker of every rule of the provider
+     * matching the changed and leaf parameters, both true by default, just as
+     * the queue service does. The rules are served from the queue metadata
+     * cache when one is set, so a preview costs no requests once cached.
+     * </p>
+     *
+     * @param provider    queue provider
+     * @param recordCount number of records to enqueue
+     * @param params      enqueue parameters, may be null
+     * @return number of queue entries by worker, sorted by worker, empty if the provider is unknown
+     * @throws QueueServiceConnectorException on failure to read the queue rules
+     */
+    public Map<String, Long> previewEnqueueRecords(String provider, long recordCount, EnqueueParams params)
+            throws QueueServiceConnectorException {
+        final boolean changed = params == null || params.getChanged().orElse(true);
+        final boolean leaf = params == null || params.getLeaf().orElse(true);
+        final Map<String, Long> entries = new TreeMap<>();
+        for (QueueRuleDTO rule : getQueueRules(provider)) {
+            if (ruleMatches(rule.getChanged(), changed) && ruleMatches(rule.getLeaf(), leaf)) {
+                entries.merge(rule.getWorker(), recordCount, Long::sum);
+            }
+        }
+        return entries;
+    }
+
+    /* Matches a rule flag, Y, N or A for any, against a record flag */
+    private static boolean ruleMatches(char flag, boolean value) {
+        switch (flag) {
+            case 'A':
+                return true;
+            case 'Y':
+                return value;
+            case 'N':
+                return !value;
+            default:
+                return false;
+        }
+    }
+
+    private QueueRules queueRules() throws QueueServiceConnectorException {
+        if (queueMetadataCache == null) {
+            return loadQueueRules();
+        }
+        return queueMetadataCache.get("rules", this::loadQueueRules, executorService);
+    }
+
+    private QueueRules loadQueueRules() throws QueueServiceConnectorException {
+        final long start = logger.start();
+        try {
+            return new QueueRules(sendRequest(PATH_ALL_QUEUE_RULES, QueueRuleCollectionDTO.class));
+        } finally {
+            logger.log("getQueueRules() took {} milliseconds", start);
+        }
+    }
+
+    private QueueNames<QueueProviderCollectionDTO> queueProviders() throws QueueServiceConnectorException {
+        if (queueMetadataCache == null) {
+            return loadQueueProviders();
+        }
+        return queueMetadataCache.get("providers", this::loadQueueProviders, executorService);
+    }
+
+    private QueueNames<QueueProviderCollectionDTO> loadQueueProviders() throws QueueServiceConnectorException {
+        final long start = logger.start();
+        try {
+            final QueueProviderCollectionDTO providers = sendRequest(PATH_ALL_QUEUE_PROVIDERS, QueueProviderCollectionDTO.class);
+            return new QueueNames<>(providers, providers.getProviders());
+        } finally {
+            logger.log("getQueueProviders() took {} milliseconds", start);
+        }
+    }
+
+    private QueueNames<QueueWorkerCollectionDTO> queueWorkers() throws QueueServiceConnectorException {
+        if (queueMetadataCache == null) {
+            return loadQueueWorkers();
+        }
+        return queueMetadataCache.get("workers", this::loadQueueWorkers, executorService);
+    }
+
+    private QueueNames<QueueWorkerCollectionDTO> loadQueueWorkers() throws QueueServiceConnectorException {
+        final long start = logger.start();
+        try {
+            final QueueWorkerCollectionDTO workers = sendRequest(PATH_ALL_QUEUE_WORKERS, QueueWorkerCollectionDTO.class);
+            return new QueueNames<>(workers, workers.getWorkers());
+        } finally {
+            logger.log("getQueueWorkers() took {} milliseconds", start);
+        }
+    }
+
+    private <S, T> T postEnqueueAgencyRequest(PathTemplate path,
                                               int agencyId,
                                               String worker,
                                               EnqueueParams params,
                                               Class<T> type) throws QueueServiceConnectorException {
-        final PathBuilder path = new PathBuilder(basePath)
-                .bind(PATH_VARIABLE_AGENCY_ID, agencyId)
-                .bind(PATH_VARIABLE_WORKER, worker);
         final HttpPost httpPost = new HttpPost(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
-                .withPathElements(path.build())
+                .withPathElements(path.bind(Integer.toString(agencyId), worker))
                 .withHeader("Accept", "application/json");
         if (params != null) {
-            for (Map.Entry<String, Object> param : params.entrySet()) {
-                httpPost.withQueryParameter(param.getKey(), param.getValue());
-            }
+            params.addQueryParameters(httpPost);
+        }
+        acquireBulkhead();
+        try {
+            final Response response = execute(httpPost);
+            assertResponseStatus(response, Response.Status.OK);
+            return readResponseEntity(response, type);
+        } finally {
+            releaseBulkhead();
         }
-        final Response response = httpPost.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, type);
     }
 
-    private <S, T> T postEnqueueRecordRequest(String basePath,
+    private <S, T> T postEnqueueRecordRequest(PathTemplate path,
                                               int agencyId,
                                               String bibliographicRecordId,
                                               String provider,
                                               EnqueueParams params,
                                               Class<T> type) throws QueueServiceConnectorException {
-        final PathBuilder path = new PathBuilder(basePath)
-                .bind(PATH_VARIABLE_AGENCY_ID, agencyId)
-                .bind(PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID, bibliographicRecordId)
-                .bind(PATH_VARIABLE_PROVIDER, provider);
         final HttpPost httpPost = new HttpPost(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
-                .withPathElements(path.build())
+                .withPathElements(path.bind(Integer.toString(agencyId), bibliographicRecordId, provider))
                 .withHeader("Accept", "application/json");
         if (params != null) {
-            for (Map.Entry<String, Object> param : params.entrySet()) {
-                httpPost.withQueryParameter(param.getKey(), param.getValue());
-            }
+            params.addQueryParameters(httpPost);
+        }
+        acquireBulkhead();
+        try {
+            final Response response = execute(httpPost);
+            assertResponseStatus(response, Response.Status.OK);
+            return readResponseEntity(response, type);
+        } finally {
+            releaseBulkhead();
         }
-        final Response response = httpPost.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, type);
     }
 
-    private <T> T sendRequest(String basePath, Class<T> type)
+    private <T> T sendRequest(PathTemplate path, Class<T> type)
             throws QueueServiceConnectorException {
-        final PathBuilder path = new PathBuilder(basePath);
         final HttpGet httpGet = new HttpGet(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
-                .withPathElements(path.build());
-        final Response response = httpGet.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, type);
+                .withPathElements(path.elements());
+        acquireBulkhead();
+        try {
+            final Response response = execute(httpGet);
+            assertResponseStatus(response, Response.Status.OK);
+            return readResponseEntity(response, type);
+        } finally {
+            releaseBulkhead();
+        }
+    }
+
+    private void acquireBulkhead() throws QueueServiceConnectorException {
+        if (bulkhead != null && !bulkhead.acquire()) {
+            throw new QueueServiceConnectorException(
+                    String.format("Request rejected by %s bulkhead: %s", bulkhead.getName(), bulkhead));
+        }
+    }
+
+    private void releaseBulkhead() {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    private Response execute(HttpRequest<?> request) throws QueueServiceConnectorTimeoutException {
+        return RETRIES.execute(request, QueueServiceConnectorTimeoutException::new);
     }
 
     private <T> T readResponseEntity(Response response, Class<T> type)
@@ -282,17 +519,17 @@ public class QueueServiceConnector {
 
     private void assertResponseStatus(Response response, Response.Status expectedStatus)
             throws QueueServiceConnectorUnexpectedStatusCodeException {
-        final Response.Status actualStatus =
-                Response.Status.fromStatusCode(response.getStatus());
-        if (actualStatus != expectedStatus) {
+        final int actualStatus = response.getStatus();
+        if (actualStatus != expectedStatus.getStatusCode()) {
+            // Statuses like 422 have no Response.Status constant
             throw new QueueServiceConnectorUnexpectedStatusCodeException(
                     String.format("Record service returned with unexpected status code: %s",
-                            actualStatus),
-                    actualStatus.getStatusCode());
+                            Objects.toString(Response.Status.fromStatusCode(actualStatus), Integer.toString(actualStatus))),
+                    actualStatus);
         }
     }
 
-    public static class EnqueueParams extends HashMap<String, Object> {
+    public static class EnqueueParams extends ConnectorParams {
         public enum Key {
             ENQUEUE_AS("enqueue-as"),
             PRIORITY("priority"),
@@ -310,6 +547,13 @@ public class QueueServiceConnector {
             }
         }
 
+        /**
+         * @return immutable copy of these parameters
+         */
+        public EnqueueParams freeze() {
+            return freeze(EnqueueParams::new);
+        }
+
         public EnqueueParams withEnqueueAs(Integer enqueueAs) {
             putOrRemoveOnNull(Key.ENQUEUE_AS, enqueueAs);
             return this;
@@ -359,8 +603,32 @@ public class QueueServiceConnector {
         }
     }
 
-    @FunctionalInterface
-    interface LogLevelMethod {
-        void log(String format, Object... objs);
+    /* Queue rules indexed by provider */
+    private static class QueueRules {
+        private final QueueRuleCollectionDTO rules;
+        private final Map<String, List<QueueRuleDTO>> byProvider;
+
+        QueueRules(QueueRuleCollectionDTO rules) {
+            this.rules = rules;
+            final Map<String, List<QueueRuleDTO>> byProvider = new HashMap<>();
+            if (rules.getQueueRules() != null) {
+                for (QueueRuleDTO rule : rules.getQueueRules()) {
+                    byProvider.computeIfAbsent(rule.getProvider(), provider -> new ArrayList<>()).add(rule);
+                }
+            }
+            byProvider.replaceAll((provider, providerRules) -> Collections.unmodifiableList(providerRules));
+            this.byProvider = byProvider;
+        }
+    }
+
+    /* Collection of queue providers or workers indexed by name */
+    private static class QueueNames<T> {
+        private final T collection;
+        private final Set<String> names;
+
+        QueueNames(T collection, List<String> names) {
+            this.collection = collection;
+            this.names = names == null ? Collections.emptySet() : new HashSet<>(names);
+        }
     }
 }
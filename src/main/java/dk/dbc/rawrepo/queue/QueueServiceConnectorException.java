@@ -9,4 +9,8 @@ public class QueueServiceConnectorException extends Exception {
     public QueueServiceConnectorException(String msg) {
         super(msg);
     }
+
+    public QueueServiceConnectorException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
 }
@@ -1,6 +1,10 @@
 package dk.dbc.rawrepo.queue;
 
-import dk.dbc.httpclient.HttpClient;
+import dk.dbc.rawrepo.client.Bulkhead;
+import dk.dbc.rawrepo.client.ClientFactory;
+import dk.dbc.rawrepo.client.ClientSettings;
+import dk.dbc.rawrepo.client.ClientSettingsConfig;
+import dk.dbc.rawrepo.client.LoadBalancer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -8,8 +12,6 @@ import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.client.Client;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.jackson.JacksonFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,17 +20,38 @@ public class QueueServiceConnectorFactory {
     private static final Logger LOGGER = LoggerFactory.getLogger(QueueServiceConnectorFactory.class);
 
     public static QueueServiceConnector create(String recordServiceBaseUrl) {
-        final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
-        LOGGER.info("Creating QueueServiceConnector for: {}", recordServiceBaseUrl);
-        return new QueueServiceConnector(client, recordServiceBaseUrl);
+        return create(recordServiceBaseUrl, QueueServiceConnector.TimingLogLevel.INFO);
     }
 
     public static QueueServiceConnector create(String recordServiceBaseUrl, QueueServiceConnector.TimingLogLevel level) {
-        final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
-        LOGGER.info("Creating QueueServiceConnector for: {}", recordServiceBaseUrl);
-        return new QueueServiceConnector(client, recordServiceBaseUrl, level);
+        return create(recordServiceBaseUrl, level, new ClientSettings());
+    }
+
+    /**
+     * @param recordServiceBaseUrl base URL, or comma separated list of base URLs to load balance requests across
+     * @param level                timings log level
+     * @param settings             client settings
+     * @return new connector
+     */
+    public static QueueServiceConnector create(String recordServiceBaseUrl, QueueServiceConnector.TimingLogLevel level, ClientSettings settings) {
+        if (recordServiceBaseUrl != null && recordServiceBaseUrl.contains(",")) {
+            return create(new LoadBalancer(LoadBalancer.parseBaseUrls(recordServiceBaseUrl), settings), level, settings);
+        }
+        final Client client = ClientFactory.newClient(settings);
+        LOGGER.info("Creating QueueServiceConnector for: {} with {}", recordServiceBaseUrl, settings);
+        return QueueServiceConnector.builder(client, recordServiceBaseUrl)
+                .withTimingLogLevel(level)
+                .withBulkhead(Bulkhead.forGroup(settings, ClientSettings.BulkheadGroup.QUEUE))
+                .build();
+    }
+
+    public static QueueServiceConnector create(LoadBalancer loadBalancer, QueueServiceConnector.TimingLogLevel level, ClientSettings settings) {
+        final Client client = ClientFactory.newClient(settings, ClientFactory.newExecutorService(settings), loadBalancer);
+        LOGGER.info("Creating QueueServiceConnector for: {} with {}", loadBalancer, settings);
+        return QueueServiceConnector.builder(client, loadBalancer.getBaseUrl())
+                .withTimingLogLevel(level)
+                .withBulkhead(Bulkhead.forGroup(settings, ClientSettings.BulkheadGroup.QUEUE))
+                .build();
     }
 
     @Inject
@@ -39,11 +62,15 @@ public class QueueServiceConnectorFactory {
     @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_TIMING_LOG_LEVEL", defaultValue = "INFO")
     private QueueServiceConnector.TimingLogLevel level;
 
+    @Inject
+    private ClientSettingsConfig clientSettingsConfig;
+
     QueueServiceConnector queueServiceConnector;
 
     @PostConstruct
     public void initializeConnector() {
-        queueServiceConnector = QueueServiceConnectorFactory.create(recordServiceBaseUrl, level);
+        queueServiceConnector = QueueServiceConnectorFactory.create(recordServiceBaseUrl, level,
+                clientSettingsConfig.toClientSettings());
     }
 
     @Produces
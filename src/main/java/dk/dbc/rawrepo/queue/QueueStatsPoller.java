@@ -0,0 +1,294 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.queue;
+
+import dk.dbc.invariant.InvariantUtil;
+import dk.dbc.rawrepo.dto.QueueStatDTO;
+import dk.dbc.rawrepo.dto.QueueStatEntryDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Poller sampling {@link QueueServiceConnector#getQueueWorkerStats()} and
+ * {@link QueueServiceConnector#getQueueAgencyStats()}
+ * <p>
+ * Each poll takes a snapshot of the number of queued entries by worker and by
+ * agency, and keeps the latest snapshots in a ring buffer of the given capacity.
+ * From the snapshots in the buffer the poller estimates the rate at which a
+ * queue grows or drains, as the least squares slope of its size over time, and
+ * the time left before a draining queue is empty.
+ * </p>
+ * <pre>
+ *    final QueueStatsPoller poller = new QueueStatsPoller(queueServiceConnector, 30);
+ *    executor.scheduleWithFixedDelay(poller, 0, 10, TimeUnit.SECONDS);
+ *    ...
+ *    poller.getTimeToDrain(QueueStatsPoller.Dimension.WORKER, "socl-sync")
+ *            .filter(timeToDrain -&gt; timeToDrain.compareTo(Duration.ofMinutes(15)) &gt; 0)
+ *            .ifPresent(timeToDrain -&gt; scaleUp("socl-sync"));
+ * </pre>
+ * <p>
+ * The queue stats hold the size of each queue only, so entries enqueued and
+ * entries dequeued between two snapshots cancel out, rates are net rates.
+ * Queues missing from a snapshot count as empty.
+ * </p>
+ * <p>
+ * Polls must not run concurrently, snapshots and estimates may be read by
+ * any thread.
+ * </p>
+ */
+public class QueueStatsPoller implements Runnable {
+    public enum Dimension {
+        WORKER, AGENCY
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueueStatsPoller.class);
+
+    private final QueueServiceConnector connector;
+    private final int capacity;
+
+    private Clock clock = Clock.systemUTC();
+    private Function<QueueStatDTO, Map<String, Long>> counts = QueueStatsPoller::countsOf;
+
+    /* Guarded by itself */
+    private final ArrayDeque<Snapshot> snapshots;
+
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param connector queue service connector
+     * @param capacity  max number of snapshots kept
+     */
+    public QueueStatsPoller(QueueServiceConnector connector, int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2, was " + capacity);
+        }
+        this.connector = InvariantUtil.checkNotNullOrThrow(connector, "connector");
+        this.capacity = capacity;
+        this.snapshots = new ArrayDeque<>(capacity);
+    }
+
+    public QueueStatsPoller withClock(Clock clock) {
+        this.clock = InvariantUtil.checkNotNullOrThrow(clock, "clock");
+        return this;
+    }
+
+    /**
+     * @param counts function mapping queue stats to the number of queued entries by worker or agency,
+     *               default takes the count of each entry of the stats by its text
+     * @return this poller
+     */
+    public QueueStatsPoller withCounts(Function<QueueStatDTO, Map<String, Long>> counts) {
+        this.counts = InvariantUtil.checkNotNullOrThrow(counts, "counts");
+        return this;
+    }
+
+    /**
+     * @return number of snapshots taken
+     */
+    public long getSamples() {
+        return samples.sum();
+    }
+
+    /**
+     * @return number of polls failed
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Polls the queue stats, failures are logged and counted
+     */
+    @Override
+    public void run() {
+        try {
+            sample();
+        } catch (QueueServiceConnectorException | RuntimeException e) {
+            failures.increment();
+            LOGGER.warn("Polling queue stats failed", e);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the queue stats and adds it to the ring buffer,
+     * evicting the eldest snapshot when full
+     *
+     * @return snapshot taken
+     * @throws QueueServiceConnectorException on failure to read the queue stats
+     */
+    public Snapshot sample() throws QueueServiceConnectorException {
+        final Map<String, Long> workers = counts.apply(connector.getQueueWorkerStats());
+        final Map<String, Long> agencies = counts.apply(connector.getQueueAgencyStats());
+        final Snapshot snapshot = new Snapshot(clock.instant(), workers, agencies);
+        synchronized (snapshots) {
+            if (snapshots.size() == capacity) {
+                snapshots.removeFirst();
+            }
+            snapshots.addLast(snapshot);
+        }
+        samples.increment();
+        return snapshot;
+    }
+
+    /**
+     * @return snapshots in the ring buffer, eldest first
+     */
+    public List<Snapshot> getSnapshots() {
+        synchronized (snapshots) {
+            return new ArrayList<>(snapshots);
+        }
+    }
+
+    public Optional<Snapshot> getLatest() {
+        synchronized (snapshots) {
+            return Optional.ofNullable(snapshots.peekLast());
+        }
+    }
+
+    /**
+     * Estimates the net rate of change of the size of a queue
+     *
+     * @param dimension worker or agency
+     * @param key       worker name or agency ID
+     * @return entries per second, positive when the queue grows and negative
+     * when it drains, empty when the snapshots span no time
+     */
+    public OptionalDouble getRate(Dimension dimension, String key) {
+        final List<Snapshot> window = getSnapshots();
+        if (window.size() < 2) {
+            return OptionalDouble.empty();
+        }
+        final Instant origin = window.get(0).takenAt;
+        double sumT = 0, sumC = 0;
+        for (Snapshot snapshot : window) {
+            sumT += seconds(origin, snapshot.takenAt);
+            sumC += snapshot.getCount(dimension, key);
+        }
+        final double meanT = sumT / window.size();
+        final double meanC = sumC / window.size();
+        double covariance = 0, variance = 0;
+        for (Snapshot snapshot : window) {
+            final double t = seconds(origin, snapshot.takenAt) - meanT;
+            covariance += t * (snapshot.getCount(dimension, key) - meanC);
+            variance += t * t;
+        }
+        if (variance == 0) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(covariance / variance);
+    }
+
+    /**
+     * Estimates the time left before a queue is empty at its current rate
+     *
+     * @param dimension worker or agency
+     * @param key       worker name or agency ID
+     * @return time to drain, zero when the queue is empty, empty when the
+     * queue is not draining or no rate can be estimated
+     */
+    public Optional<Duration> getTimeToDrain(Dimension dimension, String key) {
+        final Optional<Snapshot> latest = getLatest();
+        if (latest.isEmpty()) {
+            return Optional.empty();
+        }
+        final long count = latest.get().getCount(dimension, key);
+        if (count == 0) {
+            return Optional.of(Duration.ZERO);
+        }
+        final OptionalDouble rate = getRate(dimension, key);
+        if (rate.isEmpty() || rate.getAsDouble() >= 0) {
+            return Optional.empty();
+        }
+        return Optional.of(Duration.ofMillis((long) (count / -rate.getAsDouble() * 1000)));
+    }
+
+    @Override
+    public String toString() {
+        return "QueueStatsPoller{" +
+                "capacity=" + capacity +
+                ", samples=" + getSamples() +
+                ", failures=" + getFailures() +
+                '}';
+    }
+
+    private static double seconds(Instant from, Instant to) {
+        return Duration.between(from, to).toMillis() / 1000.0;
+    }
+
+    /* Sums the count of each entry of the stats by its text, the worker name or agency ID */
+    static Map<String, Long> countsOf(QueueStatDTO stats) {
+        final Map<String, Long> counts = new HashMap<>();
+        if (stats != null && stats.getQueueStats() != null) {
+            for (QueueStatEntryDTO entry : stats.getQueueStats()) {
+                if (entry.getText() != null) {
+                    counts.merge(entry.getText(), entry.getCount(), Long::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Number of queued entries by worker and by agency at a point in time
+     */
+    public static class Snapshot {
+        private final Instant takenAt;
+        private final Map<String, Long> workers;
+        private final Map<String, Long> agencies;
+
+        Snapshot(Instant takenAt, Map<String, Long> workers, Map<String, Long> agencies) {
+            this.takenAt = takenAt;
+            this.workers = Collections.unmodifiableMap(new HashMap<>(workers));
+            this.agencies = Collections.unmodifiableMap(new HashMap<>(agencies));
+        }
+
+        public Instant getTakenAt() {
+            return takenAt;
+        }
+
+        public Map<String, Long> getWorkers() {
+            return workers;
+        }
+
+        public Map<String, Long> getAgencies() {
+            return agencies;
+        }
+
+        /**
+         * @param dimension worker or agency
+         * @param key       worker name or agency ID
+         * @return number of queued entries, 0 when the queue is not in the snapshot
+         */
+        public long getCount(Dimension dimension, String key) {
+            final Map<String, Long> counts = dimension == Dimension.WORKER ? workers : agencies;
+            return counts.getOrDefault(key, 0L);
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "takenAt=" + takenAt +
+                    ", workers=" + workers +
+                    ", agencies=" + agencies +
+                    '}';
+        }
+    }
+}
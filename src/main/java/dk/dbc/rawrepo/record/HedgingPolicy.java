@@ -0,0 +1,148 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.record;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Policy for hedged record service requests
+ * <p>
+ * When a hedged read has not completed within the hedge delay, {@link RecordServiceConnector}
+ * sends a second identical request and returns whichever response arrives first.
+ * The hedge delay is the configured percentile of recently observed latencies,
+ * kept within the min/max delay bounds, so only the slowest requests are hedged.
+ * </p>
+ * <p>
+ * The hedge rate is capped by a token bucket: every request earns max hedge rate
+ * tokens and every hedge spends one, so at most that fraction of requests is
+ * duplicated, even when the record service is slow across the board.
+ * </p>
+ * <p>
+ * The policy is shared by all requests of a connector, latency samples and the
+ * hedge budget are updated under its lock, the hedge delay is read without.
+ * </p>
+ */
+public class HedgingPolicy {
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int RECOMPUTE_INTERVAL = 64;
+    private static final double MAX_HEDGE_TOKENS = 10;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final double maxHedgeRate;
+
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private int sampleCount;
+    private int nextSample;
+    private double hedgeTokens;
+    private volatile long delayNanos;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * @param percentile   latency percentile (0 to 100 exclusive) used as hedge delay, e.g. 95
+     * @param minDelay     lower bound of the hedge delay
+     * @param maxDelay     upper bound of the hedge delay, also used until enough latencies are observed
+     * @param maxHedgeRate max fraction of requests being hedged, e.g. 0.05
+     */
+    public HedgingPolicy(double percentile, Duration minDelay, Duration maxDelay, double maxHedgeRate) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100, was " + percentile);
+        }
+        if (minDelay.compareTo(maxDelay) > 0) {
+            throw new IllegalArgumentException("minDelay must not exceed maxDelay");
+        }
+        if (maxHedgeRate < 0 || maxHedgeRate > 1) {
+            throw new IllegalArgumentException("maxHedgeRate must be between 0 and 1, was " + maxHedgeRate);
+        }
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxHedgeRate = maxHedgeRate;
+        this.delayNanos = maxDelayNanos;
+    }
+
+    /**
+     * @return number of hedged reads
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of hedge requests sent
+     */
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return number of hedge requests answering before the original request
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * @return current hedge delay
+     */
+    public Duration getDelay() {
+        return Duration.ofNanos(delayNanos);
+    }
+
+    long getDelayNanos() {
+        return delayNanos;
+    }
+
+    synchronized void request() {
+        requests.increment();
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + maxHedgeRate);
+    }
+
+    /* Returns true if the hedge rate cap allows another hedge request */
+    synchronized boolean tryHedge() {
+        if (hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens--;
+        hedges.increment();
+        return true;
+    }
+
+    void hedgeWon() {
+        hedgeWins.increment();
+    }
+
+    synchronized void recordLatency(long nanos) {
+        samples[nextSample] = nanos;
+        nextSample = (nextSample + 1) % SAMPLE_SIZE;
+        if (sampleCount < SAMPLE_SIZE) {
+            sampleCount++;
+        }
+        // Sorting the window on every request would cost more than it saves
+        if (sampleCount >= RECOMPUTE_INTERVAL && nextSample % RECOMPUTE_INTERVAL == 0) {
+            final long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            final long observed = sorted[(int) Math.ceil(percentile / 100 * sampleCount) - 1];
+            delayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, observed));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingPolicy{" +
+                "percentile=" + percentile +
+                ", minDelay=" + Duration.ofNanos(minDelayNanos) +
+                ", maxDelay=" + Duration.ofNanos(maxDelayNanos) +
+                ", maxHedgeRate=" + maxHedgeRate +
+                '}';
+    }
+}
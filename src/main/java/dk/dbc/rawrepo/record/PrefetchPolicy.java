@@ -0,0 +1,208 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.record;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Policy for prefetching follow-up lookups of related records
+ * <p>
+ * When getRecordDataCollection, getRecordParents or getRecordChildren returns,
+ * {@link RecordServiceConnector} issues the configured lookups for each of the
+ * returned records in the background, on the executor service of the connector,
+ * and parks the pending results here. A following lookup of the same kind, for
+ * the same record and with the same request parameters takes the parked result,
+ * waiting for it if still in progress, instead of sending a request of its own.
+ * The wait is bounded by the max wait and the deadline of the calling thread,
+ * a prefetch still in progress then is cancelled and the lookup sent as usual.
+ * </p>
+ * <p>
+ * Parked results are used at most once and expire after the time to live.
+ * When more than the max number of results are parked, the eldest are dropped.
+ * Failed prefetches are ignored, the lookup is then sent as usual.
+ * </p>
+ * <p>
+ * Prefetches may be parked and taken from any thread, a parked prefetch is
+ * handed to one taker only.
+ * </p>
+ */
+public class PrefetchPolicy {
+    private static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(1);
+
+    public enum Lookup {
+        META, PARENTS, CHILDREN
+    }
+
+    private final Set<Lookup> lookups;
+    private final RecordServiceConnector.Params params;
+    private final long timeToLiveNanos;
+    private final long maxWaitNanos;
+    private final Map<String, Parked> parked;
+
+    private final LongAdder prefetches = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder wasted = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * Returns policy waiting at most one second for a prefetch in progress
+     *
+     * @param lookups    lookups to prefetch
+     * @param params     request query parameters of the prefetched lookups, may be null
+     * @param timeToLive time to live of a parked result
+     * @param maxParked  max number of parked results
+     */
+    public PrefetchPolicy(Set<Lookup> lookups, RecordServiceConnector.Params params, Duration timeToLive, int maxParked) {
+        this(lookups, params, timeToLive, maxParked, DEFAULT_MAX_WAIT);
+    }
+
+    /**
+     * @param lookups    lookups to prefetch
+     * @param params     request query parameters of the prefetched lookups, may be null
+     * @param timeToLive time to live of a parked result
+     * @param maxParked  max number of parked results
+     * @param maxWait    max time a lookup waits for a prefetch in progress
+     */
+    public PrefetchPolicy(Set<Lookup> lookups, RecordServiceConnector.Params params, Duration timeToLive, int maxParked,
+                          Duration maxWait) {
+        if (maxParked < 1) {
+            throw new IllegalArgumentException("maxParked must be positive, was " + maxParked);
+        }
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("maxWait must not be negative, was " + maxWait);
+        }
+        this.maxWaitNanos = maxWait.toNanos();
+        this.lookups = lookups.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(lookups));
+        this.params = params == null ? null : params.freeze();
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.parked = new LinkedHashMap<String, Parked>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Parked> eldest) {
+                if (size() > maxParked) {
+                    drop(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Set<Lookup> getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return request query parameters of the prefetched lookups, may be null
+     */
+    public RecordServiceConnector.Params getParams() {
+        return params;
+    }
+
+    /**
+     * @return number of prefetched lookups
+     */
+    public long getPrefetches() {
+        return prefetches.sum();
+    }
+
+    /**
+     * @return number of lookups served by a prefetched result
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of prefetched results expired or dropped without being used
+     */
+    public long getWasted() {
+        return wasted.sum();
+    }
+
+    /**
+     * @return number of taken prefetches cancelled for not completing within the max wait
+     */
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    /**
+     * @return max time in nanoseconds a lookup waits for a prefetch in progress
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    public synchronized int size() {
+        return parked.size();
+    }
+
+    /* Parks the result of the prefetch started by the given supplier, unless
+       a result for the key is already parked */
+    synchronized void park(String key, Supplier<Future<?>> prefetch) {
+        if (!parked.containsKey(key)) {
+            parked.put(key, new Parked(prefetch.get()));
+            prefetches.increment();
+        }
+    }
+
+    /* Takes the parked result of the key, returns null if none or expired */
+    Future<?> take(String key) {
+        final Parked taken;
+        synchronized (this) {
+            taken = parked.remove(key);
+        }
+        if (taken == null) {
+            return null;
+        }
+        if (System.nanoTime() - taken.parkedAt > timeToLiveNanos) {
+            drop(taken);
+            return null;
+        }
+        hits.increment();
+        return taken.result;
+    }
+
+    /* Cancels a taken prefetch not completed within the max wait */
+    void timedOut(Future<?> taken) {
+        taken.cancel(true);
+        timedOut.increment();
+    }
+
+    private void drop(Parked dropped) {
+        dropped.result.cancel(true);
+        wasted.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "PrefetchPolicy{" +
+                "lookups=" + lookups +
+                ", prefetches=" + getPrefetches() +
+                ", hits=" + getHits() +
+                ", wasted=" + getWasted() +
+                ", timedOut=" + getTimedOut() +
+                '}';
+    }
+
+    private static class Parked {
+        private final Future<?> result;
+        private final long parkedAt;
+
+        Parked(Future<?> result) {
+            this.result = result;
+            this.parkedAt = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.record;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded least-recently-used cache of record service responses
+ * <p>
+ * Entries younger than the max age are served without contacting the record
+ * service. Older entries are revalidated by {@link RecordServiceConnector}
+ * using a conditional GET (If-None-Match/If-Modified-Since) when the service
+ * supplied an ETag or Last-Modified header, so an unchanged record costs a
+ * small round trip instead of a full payload. Older entries without either
+ * header are downloaded again.
+ * </p>
+ * <p>
+ * The cache is shared by all requests of a connector, entries are immutable
+ * and replaced as a whole.
+ * </p>
+ */
+public class RecordCache {
+    private final long maxAgeNanos;
+    private final Map<String, CachedResponse> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries max number of cached responses
+     * @param maxAge     max age of an entry before it must be revalidated
+     */
+    public RecordCache(int maxEntries, Duration maxAge) {
+        this.maxAgeNanos = maxAge.toNanos();
+        this.entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return number of requests served from fresh entries
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of stale entries found to be unchanged by revalidation
+     */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /**
+     * @return number of requests resulting in a full download
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    synchronized CachedResponse get(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(String key, CachedResponse entry) {
+        entries.put(key, entry);
+    }
+
+    boolean isFresh(CachedResponse entry) {
+        return System.nanoTime() - entry.storedAt < maxAgeNanos;
+    }
+
+    void hit() {
+        hits.increment();
+    }
+
+    void revalidated() {
+        revalidations.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    static class CachedResponse {
+        private final byte[] content;
+        private final String eTag;
+        private final String lastModified;
+        private final long storedAt;
+
+        CachedResponse(byte[] content, String eTag, String lastModified) {
+            this.content = content;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.storedAt = System.nanoTime();
+        }
+
+        byte[] getContent() {
+            return content;
+        }
+
+        String getETag() {
+            return eTag;
+        }
+
+        String getLastModified() {
+            return lastModified;
+        }
+
+        /* Same content, new validators if the 304 response carried any */
+        CachedResponse refreshed(String eTag, String lastModified) {
+            return new CachedResponse(content,
+                    eTag != null ? eTag : this.eTag,
+                    lastModified != null ? lastModified : this.lastModified);
+        }
+    }
+}
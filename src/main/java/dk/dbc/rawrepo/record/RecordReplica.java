@@ -0,0 +1,530 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo.record;
+
+import dk.dbc.commons.jsonb.JSONBContext;
+import dk.dbc.commons.jsonb.JSONBException;
+import dk.dbc.invariant.InvariantUtil;
+import dk.dbc.rawrepo.dto.RecordDTO;
+import dk.dbc.rawrepo.dump.ChangeFeed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Local replica of record data persisted in a memory-mapped file
+ * <p>
+ * When set on a {@link RecordServiceConnector}, getRecordData calls with the
+ * request parameters of the replica are served from the replica if the record
+ * was stored within the max staleness, and records fetched from the record
+ * service are stored in the replica, so repeated scans of the same records
+ * turn into local I/O, also across restarts.
+ * </p>
+ * <p>
+ * The file is an append-only log of checksummed entries keyed by agency ID
+ * and bibliographic record ID, mapped in fixed size segments. The index of the
+ * latest entry of each record is a heap map, rebuilt by scanning the log when
+ * the file is opened. A file with an entry failing its checksum is cleared.
+ * </p>
+ * <p>
+ * Storing or removing a record appends a new entry, leaving the previous one
+ * as garbage. {@link #compact()} rewrites the file with the latest entries of
+ * records stored within the max staleness only. A file with more garbage than
+ * live entries is compacted when opened.
+ * </p>
+ * <p>
+ * Records changed at the record service are invalidated by passing them to
+ * the listener of {@link #changeListener()}, e.g. from a {@link ChangeFeed}.
+ * </p>
+ * <p>
+ * Lookups read the mapped segments without locking, writes, removals and
+ * compaction are done one at a time.
+ * </p>
+ */
+public class RecordReplica implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordReplica.class);
+
+    private static final int MAGIC = 0x52524551;
+    private static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    /* Entry: key length, checksum, stored at millis, data length or REMOVED, key, data */
+    private static final int ENTRY_HEADER_SIZE = 20;
+    private static final int CHECKSUM_OFFSET = 4;
+    /* The checksum covers the entry from the stored at millis */
+    private static final int CHECKED_OFFSET = 8;
+    private static final int REMOVED = -1;
+
+    private static final JSONBContext jsonbContext = new JSONBContext();
+
+    private final Path path;
+    private final int segmentSize;
+    private final long maxStalenessMillis;
+    private final RecordServiceConnector.Params params;
+    private final byte[] paramsBytes;
+    private volatile Log log;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    /**
+     * Opens replica file with 64 MiB segments, creating it if it does not exist
+     *
+     * @param path         replica file
+     * @param params       request parameters of the replicated record data, may be null
+     * @param maxStaleness max time since a record was stored before it is fetched again
+     * @throws IOException if the file can not be opened or replicates other request parameters
+     */
+    public RecordReplica(Path path, RecordServiceConnector.Params params, Duration maxStaleness) throws IOException {
+        this(path, params, maxStaleness, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens replica file, creating it if it does not exist
+     *
+     * @param path         replica file
+     * @param params       request parameters of the replicated record data, may be null
+     * @param maxStaleness max time since a record was stored before it is fetched again
+     * @param segmentSize  size of the mapped segments of a new file, records larger
+     *                     than a segment are not replicated
+     * @throws IOException if the file can not be opened or replicates other request parameters
+     */
+    public RecordReplica(Path path, RecordServiceConnector.Params params, Duration maxStaleness, int segmentSize)
+            throws IOException {
+        this.path = InvariantUtil.checkNotNullOrThrow(path, "path");
+        this.params = params == null || params.isEmpty() ? null : params.freeze();
+        this.maxStalenessMillis = maxStaleness.toMillis();
+        this.paramsBytes = (this.params == null ? "" : this.params.toQueryString())
+                .getBytes(StandardCharsets.UTF_8);
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                if (segmentSize < 1024) {
+                    throw new IllegalArgumentException("segmentSize must be at least 1024, was " + segmentSize);
+                }
+                this.segmentSize = segmentSize;
+                log = new Log(channel);
+                log.writeHeader();
+            } else {
+                this.segmentSize = readHeader(channel);
+                log = new Log(channel);
+                if (!log.scan()) {
+                    LOGGER.warn("Record replica file {} has a corrupt entry, replica cleared", path);
+                    channel.close();
+                    Files.delete(path);
+                    channel = FileChannel.open(path,
+                            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    log = new Log(channel);
+                    log.writeHeader();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (log.getGarbageBytes() > log.liveBytes && log.writePosition > this.segmentSize) {
+            try {
+                compact();
+            } catch (IOException e) {
+                LOGGER.warn("Compacting record replica file {} failed", path, e);
+            }
+        }
+    }
+
+    /**
+     * @return number of lookups served from the replica
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups finding a record stored longer ago than the max staleness
+     */
+    public long getStale() {
+        return stale.sum();
+    }
+
+    /**
+     * @return number of lookups of records not in the replica
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of times the file was compacted
+     */
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    /**
+     * @return number of bytes of the file taken by removed and superseded entries
+     */
+    public synchronized long getGarbageBytes() {
+        return log.getGarbageBytes();
+    }
+
+    /**
+     * @return number of records in the replica
+     */
+    public int size() {
+        return log.index.size();
+    }
+
+    /**
+     * @param params request parameters
+     * @return true if record data requested with the given parameters is replicated
+     */
+    public boolean replicates(RecordServiceConnector.Params params) {
+        return Objects.equals(params == null || params.isEmpty() ? null : params, this.params);
+    }
+
+    /**
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @return record data as JSON, or null if the record is not replicated or is stale
+     */
+    public byte[] get(String agencyId, String bibliographicRecordId) {
+        // Index and segments must be read from the same log, compaction replaces both
+        final Log log = this.log;
+        final Long position = log.index.get(key(agencyId, bibliographicRecordId));
+        if (position == null) {
+            misses.increment();
+            return null;
+        }
+        final ByteBuffer entry = log.entryAt(position);
+        final int keyLength = entry.getInt();
+        entry.getInt(); // checksum, verified when the log is scanned
+        final long storedAt = entry.getLong();
+        if (System.currentTimeMillis() - storedAt > maxStalenessMillis) {
+            stale.increment();
+            return null;
+        }
+        final byte[] data = new byte[entry.getInt()];
+        entry.position(entry.position() + keyLength);
+        entry.get(data);
+        hits.increment();
+        return data;
+    }
+
+    /**
+     * Stores record data under the given record ID, which may differ from
+     * the record ID of the data, e.g. for merged records
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param record                record data
+     * @return false if the record data is too large to be replicated
+     * @throws IOException on failure to extend the file
+     */
+    public boolean put(String agencyId, String bibliographicRecordId, RecordDTO record) throws IOException {
+        final byte[] data;
+        try {
+            data = jsonbContext.marshall(record).getBytes(StandardCharsets.UTF_8);
+        } catch (JSONBException e) {
+            throw new IOException("Failed to marshall record data of " + key(agencyId, bibliographicRecordId), e);
+        }
+        return append(key(agencyId, bibliographicRecordId), data);
+    }
+
+    /**
+     * Removes record from the replica
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @throws IOException on failure to extend the file
+     */
+    public void remove(String agencyId, String bibliographicRecordId) throws IOException {
+        final String key = key(agencyId, bibliographicRecordId);
+        if (log.index.containsKey(key)) {
+            append(key, null);
+        }
+    }
+
+    /**
+     * @return change listener removing changed records from the replica
+     */
+    public ChangeFeed.Listener changeListener() {
+        return record -> {
+            try {
+                remove(Integer.toString(record.getAgencyId()), record.getBibliographicRecordId());
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to remove changed record from replica " + path, e);
+            }
+        };
+    }
+
+    /**
+     * Rewrites the file with the latest entries of records stored within the
+     * max staleness, dropping removed, superseded and stale entries
+     * <p>
+     * The compacted file is written next to the replica file and moved in
+     * place of it when complete. Lookups are served from the current file
+     * meanwhile, stores and removals wait for the compaction.
+     * </p>
+     *
+     * @throws IOException on failure to write the compacted file, the replica is then left as is
+     */
+    public synchronized void compact() throws IOException {
+        final Path compactPath = path.resolveSibling(path.getFileName() + ".compact");
+        final FileChannel channel = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final Log compacted = new Log(channel);
+        try {
+            compacted.writeHeader();
+            final long staleBefore = System.currentTimeMillis() - maxStalenessMillis;
+            for (Map.Entry<String, Long> indexed : log.index.entrySet()) {
+                final ByteBuffer entry = log.entryAt(indexed.getValue());
+                final int keyLength = entry.getInt();
+                entry.getInt(); // checksum, verified when the log is scanned
+                final long storedAt = entry.getLong();
+                if (storedAt >= staleBefore) {
+                    final byte[] data = new byte[entry.getInt()];
+                    entry.position(entry.position() + keyLength);
+                    entry.get(data);
+                    compacted.append(indexed.getKey(), storedAt, data);
+                }
+            }
+            compacted.force();
+            Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(compactPath);
+            throw e;
+        }
+        final Log replaced = log;
+        log = compacted;
+        // Mapped segments of the replaced log stay readable by lookups in progress
+        replaced.channel.close();
+        compactions.increment();
+    }
+
+    /**
+     * Writes stored and removed records to disk
+     *
+     * @throws IOException on failure to write the file
+     */
+    public synchronized void force() throws IOException {
+        log.force();
+    }
+
+    /**
+     * Writes the replica to disk and closes the file
+     *
+     * @throws IOException on failure to close the file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            log.force();
+        } finally {
+            log.channel.close();
+        }
+    }
+
+    private static String key(String agencyId, String bibliographicRecordId) {
+        return agencyId + ':' + bibliographicRecordId;
+    }
+
+    private synchronized boolean append(String key, byte[] data) throws IOException {
+        return log.append(key, System.currentTimeMillis(), data);
+    }
+
+    private int readHeader(FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(12);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < 12 || header.getInt() != MAGIC) {
+            throw new IOException("Not a record replica file: " + path);
+        }
+        final int size = header.getInt();
+        final byte[] fileParams = new byte[header.getInt()];
+        channel.read(ByteBuffer.wrap(fileParams), 12);
+        if (!Arrays.equals(fileParams, paramsBytes)) {
+            throw new IOException(String.format("Record replica file %s replicates params '%s', not '%s'",
+                    path, new String(fileParams, StandardCharsets.UTF_8), new String(paramsBytes, StandardCharsets.UTF_8)));
+        }
+        return size;
+    }
+
+    private static int checksum(ByteBuffer segment, int offset, int size) {
+        final ByteBuffer checked = segment.duplicate();
+        checked.limit(offset + size).position(offset + CHECKED_OFFSET);
+        final CRC32 crc = new CRC32();
+        crc.update(checked);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "RecordReplica{" +
+                "path=" + path +
+                ", size=" + size() +
+                ", hits=" + getHits() +
+                ", stale=" + getStale() +
+                ", misses=" + getMisses() +
+                ", compactions=" + getCompactions() +
+                '}';
+    }
+
+    /* Log file with its mapped segments and the index of its entries,
+       replaced as a whole by compaction */
+    private final class Log {
+        private final FileChannel channel;
+        private final ConcurrentMap<String, Long> index = new ConcurrentHashMap<>();
+        private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+        private long headerSize;
+        private long writePosition;
+        /* Bytes taken by the entries in the index */
+        private long liveBytes;
+
+        Log(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long getGarbageBytes() {
+            return writePosition - headerSize - liveBytes;
+        }
+
+        ByteBuffer entryAt(long position) {
+            final ByteBuffer entry = segments[(int) (position / segmentSize)].duplicate();
+            entry.position((int) (position % segmentSize));
+            return entry;
+        }
+
+        void writeHeader() throws IOException {
+            final ByteBuffer header = map(0).duplicate();
+            header.putInt(MAGIC).putInt(segmentSize).putInt(paramsBytes.length).put(paramsBytes);
+            headerSize = header.position();
+            writePosition = headerSize;
+        }
+
+        boolean append(String key, long storedAt, byte[] data) throws IOException {
+            final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            final int size = ENTRY_HEADER_SIZE + keyBytes.length + (data == null ? 0 : data.length);
+            if (size > segmentSize) {
+                return false;
+            }
+            int segment = (int) (writePosition / segmentSize);
+            if (writePosition % segmentSize + size > segmentSize) {
+                segment++;
+                writePosition = (long) segment * segmentSize;
+            }
+            if (segment >= segments.length) {
+                map(segment);
+            }
+            final ByteBuffer entry = entryAt(writePosition);
+            final int offset = entry.position();
+            entry.position(offset + CHECKED_OFFSET);
+            entry.putLong(storedAt)
+                    .putInt(data == null ? REMOVED : data.length)
+                    .put(keyBytes);
+            if (data != null) {
+                entry.put(data);
+            }
+            entry.putInt(offset + CHECKSUM_OFFSET, checksum(entry, offset, size));
+            // The key length is written last, marking the entry as complete
+            entry.putInt(offset, keyBytes.length);
+            indexed(key, data == null ? null : writePosition, data == null ? 0 : size);
+            writePosition += size;
+            return true;
+        }
+
+        /* Rebuilds the index from the log, returns false on an entry failing its checksum.
+           An incomplete entry at the end of the log from an interrupted write is cleared */
+        boolean scan() throws IOException {
+            final int segmentCount = (int) ((channel.size() + segmentSize - 1) / segmentSize);
+            for (int i = 0; i < segmentCount; i++) {
+                map(i);
+            }
+            headerSize = 12 + paramsBytes.length;
+            for (int segment = 0; segment < segments.length; segment++) {
+                final ByteBuffer buffer = segments[segment].duplicate();
+                int offset = segment == 0 ? (int) headerSize : 0;
+                while (offset + ENTRY_HEADER_SIZE <= segmentSize) {
+                    final int keyLength = buffer.getInt(offset);
+                    if (keyLength == 0) {
+                        break;
+                    }
+                    final int dataLength = buffer.getInt(offset + 16);
+                    final long size = ENTRY_HEADER_SIZE + (long) keyLength + Math.max(dataLength, 0);
+                    if (keyLength < 0 || dataLength < REMOVED || offset + size > segmentSize
+                            || buffer.getInt(offset + CHECKSUM_OFFSET) != checksum(buffer, offset, (int) size)) {
+                        return false;
+                    }
+                    final byte[] keyBytes = new byte[keyLength];
+                    buffer.position(offset + ENTRY_HEADER_SIZE);
+                    buffer.get(keyBytes);
+                    final long position = (long) segment * segmentSize + offset;
+                    indexed(new String(keyBytes, StandardCharsets.UTF_8),
+                            dataLength == REMOVED ? null : position, dataLength == REMOVED ? 0 : size);
+                    offset += (int) size;
+                }
+                clearTail(buffer, offset);
+                writePosition = (long) segment * segmentSize + offset;
+            }
+            return true;
+        }
+
+        void force() throws IOException {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            channel.force(true);
+        }
+
+        private void indexed(String key, Long position, long size) {
+            final Long replaced = position == null ? index.remove(key) : index.put(key, position);
+            if (replaced != null) {
+                final ByteBuffer entry = entryAt(replaced);
+                final int offset = entry.position();
+                liveBytes -= ENTRY_HEADER_SIZE + entry.getInt(offset) + entry.getInt(offset + 16);
+            }
+            liveBytes += size;
+        }
+
+        /* Zeroes leftovers of an interrupted write after the last entry of the segment */
+        private void clearTail(ByteBuffer buffer, int offset) {
+            for (int i = offset; i < segmentSize; i++) {
+                if (buffer.get(i) != 0) {
+                    buffer.position(i);
+                    while (buffer.hasRemaining()) {
+                        buffer.put((byte) 0);
+                    }
+                    return;
+                }
+            }
+        }
+
+        private MappedByteBuffer map(int segment) throws IOException {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, (long) segment * segmentSize, segmentSize);
+            final MappedByteBuffer[] extended = Arrays.copyOf(segments, segment + 1);
+            extended[segment] = mapped;
+            segments = extended;
+            return mapped;
+        }
+    }
+}
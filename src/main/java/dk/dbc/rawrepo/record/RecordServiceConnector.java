@@ -5,36 +5,85 @@ import dk.dbc.commons.jsonb.JSONBException;
 import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.httpclient.HttpGet;
 import dk.dbc.httpclient.HttpPost;
-import dk.dbc.httpclient.PathBuilder;
+import dk.dbc.httpclient.HttpRequest;
 import dk.dbc.invariant.InvariantUtil;
+import dk.dbc.rawrepo.client.BufferPool;
+import dk.dbc.rawrepo.client.Bulkhead;
+import dk.dbc.rawrepo.client.ClientSettings;
+import dk.dbc.rawrepo.client.ConnectorParams;
+import dk.dbc.rawrepo.client.ConnectorRetries;
+import dk.dbc.rawrepo.client.Deadline;
+import dk.dbc.rawrepo.client.PathTemplate;
+import dk.dbc.rawrepo.client.RecordDTOFeature;
+import dk.dbc.rawrepo.client.RecordDTOReader;
+import dk.dbc.rawrepo.client.RecordView;
+import dk.dbc.rawrepo.client.RecordViewCollection;
+import dk.dbc.rawrepo.client.TimingLogger;
 import dk.dbc.rawrepo.dto.AgencyCollectionDTO;
 import dk.dbc.rawrepo.dto.RecordCollectionDTO;
 import dk.dbc.rawrepo.dto.RecordCollectionDTOv2;
 import dk.dbc.rawrepo.dto.RecordDTO;
 import dk.dbc.rawrepo.dto.RecordEntryDTO;
 import dk.dbc.rawrepo.dto.RecordHistoryCollectionDTO;
+import dk.dbc.rawrepo.dto.RecordHistoryDTO;
 import dk.dbc.rawrepo.dto.RecordIdCollectionDTO;
 import dk.dbc.rawrepo.dto.RecordIdDTO;
-import dk.dbc.util.Stopwatch;
-import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import net.jodah.failsafe.RetryPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * RecordServiceConnector - rawrepo record service client
  * <p>
  * To use this class, you construct an instance, specifying a web resources client as well as
- * a base URL for the record service endpoint you will be communicating with.
+ * a base URL for the record service endpoint you will be communicating with. Caching,
+ * replication, hedging, prefetching and concurrency limits are set up through
+ * {@link #builder(Client, String)}.
  * </p>
  * <p>
  * This class is thread safe, as long as the given web resources client remains thread safe.
@@ -54,51 +103,65 @@ public class RecordServiceConnector {
     private static final String PATH_VARIABLE_AGENCY_ID = "agencyId";
     private static final String PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID = "bibliographicRecordId";
     private static final String PATH_VARIABLE_MODIFIED_DATE = "modifiedDate";
-    private static final String PATH_RECORD_CONTENT = String.format("/api/v1/record/{%s}/{%s}/content",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_CONTENT_COLLECTION = String.format("/api/v1/records/{%s}/{%s}/content",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_CONTENT_COLLECTION_DATAIO = String.format("/api/v1/records/{%s}/{%s}/dataio",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_META = String.format("/api/v1/record/{%s}/{%s}/meta",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_DATA = String.format("/api/v1/record/{%s}/{%s}",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_DATA_COLLECTION = String.format("/api/v1/records/{%s}/{%s}",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_FETCH_RECORD_COLLECTION = "/api/v1/records/fetch/";
-    private static final String PATH_RECORD_EXISTS = String.format("/api/v1/record/{%s}/{%s}/exists",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_FETCH = String.format("/api/v1/record/{%s}/{%s}/fetch",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_PARENTS = String.format("/api/v1/record/{%s}/{%s}/parents",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_CHILDREN = String.format("/api/v1/record/{%s}/{%s}/children",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_SIBLINGS_FROM = String.format("/api/v1/record/{%s}/{%s}/siblings-from",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_SIBLINGS_TO = String.format("/api/v1/record/{%s}/{%s}/siblings-to",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_ALL_AGENCIES_FOR = String.format("api/v1/record/{%s}/all-agencies-for",
-            PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_RECORD_HISTORY = String.format("/api/v1/record/{%s}/{%s}/history",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-    private static final String PATH_HISTORIC_RECORD = String.format("/api/v1/record/{%s}/{%s}/{%s}",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID, PATH_VARIABLE_MODIFIED_DATE);
-    private static final String PATH_RECORD_ENTRY_RAW = String.format("/api/v1/record-entries/{%s}/{%s}/raw",
-            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID);
-
-
-    private static final RetryPolicy<Response> RETRY_POLICY = new RetryPolicy<Response>()
-            .handle(ProcessingException.class)
-            .handleResultIf(response -> response.getStatus() == 404
-                    || response.getStatus() == 502)
-            .withDelay(Duration.ofSeconds(10))
-            .withMaxRetries(6);
+    private static final PathTemplate PATH_RECORD_CONTENT = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}/content",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_CONTENT_COLLECTION = new PathTemplate(String.format("/api/v1/records/{%s}/{%s}/content",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_CONTENT_COLLECTION_DATAIO = new PathTemplate(String.format("/api/v1/records/{%s}/{%s}/dataio",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_META = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}/meta",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_DATA = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_DATA_COLLECTION = new PathTemplate(String.format("/api/v1/records/{%s}/{%s}",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_FETCH_RECORD_COLLECTION = new PathTemplate("/api/v1/records/fetch/");
+    private static final PathTemplate PATH_RECORD_EXISTS = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}/exists",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_FETCH = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}/fetch",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_PARENTS = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}/parents",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_CHILDREN = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}/children",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_SIBLINGS_FROM = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}/siblings-from",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_SIBLINGS_TO = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}/siblings-to",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_ALL_AGENCIES_FOR = new PathTemplate(String.format("api/v1/record/{%s}/all-agencies-for",
+            PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_RECORD_HISTORY = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}/history",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+    private static final PathTemplate PATH_HISTORIC_RECORD = new PathTemplate(String.format("/api/v1/record/{%s}/{%s}/{%s}",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID, PATH_VARIABLE_MODIFIED_DATE));
+    private static final PathTemplate PATH_RECORD_ENTRY_RAW = new PathTemplate(String.format("/api/v1/record-entries/{%s}/{%s}/raw",
+            PATH_VARIABLE_AGENCY_ID, PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID));
+
+    /* Requests limited by the collection bulkhead, all other requests are limited by the lookup bulkhead */
+    private static final Set<PathTemplate> COLLECTION_PATHS = Set.of(PATH_RECORD_CONTENT_COLLECTION,
+            PATH_RECORD_CONTENT_COLLECTION_DATAIO, PATH_RECORD_DATA_COLLECTION, PATH_FETCH_RECORD_COLLECTION);
+
+    private static final int TRANSFER_BUFFER_SIZE = 8192;
+
+    private static final ConnectorRetries RETRIES = new ConnectorRetries(Duration.ofSeconds(10), 6, 404, 502);
+    // A hedge races a slow attempt, retrying it would only add load
+    private static final RetryPolicy<Response> HEDGE_RETRY_POLICY = new RetryPolicy<Response>()
+            .withMaxRetries(0);
 
     private final FailSafeHttpClient failSafeHttpClient;
+    private final FailSafeHttpClient hedgeHttpClient;
     private final String baseUrl;
-    private final LogLevelMethod logger;
+    private final TimingLogger logger;
+    private final ExecutorService executorService;
+    private final RecordCache recordCache;
+    private final RecordReplica recordReplica;
+    private final HedgingPolicy hedgingPolicy;
+    private final PrefetchPolicy prefetchPolicy;
+    private final Bulkhead lookupBulkhead;
+    private final Bulkhead collectionBulkhead;
+    private final BufferPool bufferPool;
+    private final int fanOutParallelism;
+    private final boolean streamingReaders;
 
     /**
      * Returns new instance with default retry policy
@@ -107,7 +170,7 @@ public class RecordServiceConnector {
      * @param baseUrl    base URL for record service endpoint
      */
     public RecordServiceConnector(Client httpClient, String baseUrl) {
-        this(FailSafeHttpClient.create(httpClient, RETRY_POLICY), baseUrl, TimingLogLevel.INFO);
+        this(builder(httpClient, baseUrl));
     }
 
     /**
@@ -118,7 +181,7 @@ public class RecordServiceConnector {
      * @param level      timings log level
      */
     public RecordServiceConnector(Client httpClient, String baseUrl, TimingLogLevel level) {
-        this(FailSafeHttpClient.create(httpClient, RETRY_POLICY), baseUrl, level);
+        this(builder(httpClient, baseUrl).withTimingLogLevel(level));
     }
 
     /**
@@ -128,7 +191,7 @@ public class RecordServiceConnector {
      * @param baseUrl            base URL for record service endpoint
      */
     public RecordServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
-        this(failSafeHttpClient, baseUrl, TimingLogLevel.INFO);
+        this(builder(failSafeHttpClient, baseUrl));
     }
 
     /**
@@ -139,30 +202,51 @@ public class RecordServiceConnector {
      * @param level              timings log level
      */
     public RecordServiceConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, TimingLogLevel level) {
+        this(builder(failSafeHttpClient, baseUrl).withTimingLogLevel(level));
+    }
+
+    private RecordServiceConnector(Builder builder) {
         this.failSafeHttpClient = InvariantUtil.checkNotNullOrThrow(
-                failSafeHttpClient, "failSafeHttpClient");
+                builder.failSafeHttpClient, "failSafeHttpClient");
         this.baseUrl = InvariantUtil.checkNotNullNotEmptyOrThrow(
-                baseUrl, "baseUrl");
-        switch (level) {
-            case TRACE:
-                logger = LOGGER::trace;
-                break;
-            case DEBUG:
-                logger = LOGGER::debug;
-                break;
-            case INFO:
-                logger = LOGGER::info;
-                break;
-            case WARN:
-                logger = LOGGER::warn;
-                break;
-            case ERROR:
-                logger = LOGGER::error;
-                break;
-            default:
-                logger = LOGGER::info;
-                break;
-        }
+                builder.baseUrl, "baseUrl");
+        logger = new TimingLogger(LOGGER, builder.level.name());
+        executorService = builder.executorService;
+        recordCache = builder.recordCache;
+        recordReplica = builder.recordReplica;
+        hedgingPolicy = builder.hedgingPolicy;
+        hedgeHttpClient = hedgingPolicy == null ? null
+                : FailSafeHttpClient.create(failSafeHttpClient.getClient(), HEDGE_RETRY_POLICY);
+        prefetchPolicy = builder.prefetchPolicy;
+        lookupBulkhead = builder.lookupBulkhead;
+        collectionBulkhead = builder.collectionBulkhead;
+        bufferPool = builder.bufferPool;
+        fanOutParallelism = builder.fanOutParallelism;
+        streamingReaders = failSafeHttpClient.getClient().getConfiguration().isRegistered(RecordDTOFeature.class);
+    }
+
+    /**
+     * Returns builder of an instance with default retry policy and optional
+     * caching, replication, hedging, prefetching and concurrency limits
+     *
+     * @param httpClient web resources client
+     * @param baseUrl    base URL for record service endpoint
+     * @return new builder
+     */
+    public static Builder builder(Client httpClient, String baseUrl) {
+        return new Builder(FailSafeHttpClient.create(httpClient, RETRIES.getRetryPolicy()), baseUrl);
+    }
+
+    /**
+     * Returns builder of an instance with custom retry policy and optional
+     * caching, replication, hedging, prefetching and concurrency limits
+     *
+     * @param failSafeHttpClient web resources client with custom retry policy
+     * @param baseUrl            base URL for record service endpoint
+     * @return new builder
+     */
+    public static Builder builder(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
+        return new Builder(failSafeHttpClient, baseUrl);
     }
 
     public void close() {
@@ -216,13 +300,12 @@ public class RecordServiceConnector {
      */
     public boolean recordExists(String agencyId, String bibliographicRecordId, Params params)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_RECORD_EXISTS, agencyId, bibliographicRecordId, params, RecordExistsResponseEntity.class).value;
         } finally {
             logger.log("recordExists({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -273,13 +356,12 @@ public class RecordServiceConnector {
      */
     private byte[] getRecordContent(String agencyId, String bibliographicRecordId, Params params)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
-            return sendRequest(PATH_RECORD_CONTENT, agencyId, bibliographicRecordId, params, byte[].class);
+            return hedged(httpClient -> sendCachedRequest(httpClient, PATH_RECORD_CONTENT, agencyId, bibliographicRecordId, params, byte[].class));
         } finally {
             logger.log("getRecordContent({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -322,13 +404,217 @@ public class RecordServiceConnector {
 
     private byte[] getRecordContentCollection(String agencyId, String bibliographicRecordId, Params params)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
-            return sendRequest(PATH_RECORD_CONTENT_COLLECTION, agencyId, bibliographicRecordId, params, byte[].class);
+            return sendCachedRequest(failSafeHttpClient, PATH_RECORD_CONTENT_COLLECTION, agencyId, bibliographicRecordId, params, byte[].class);
         } finally {
             logger.log("getRecordContentCollection({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
+        }
+    }
+
+    /**
+     * Streams record content without materializing it in memory
+     * <p>
+     * The stream must be closed to release the connection. Streamed content
+     * is neither cached nor hedged.
+     * </p>
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @return record content as MarcXchange XML stream
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public InputStream getRecordContentStream(String agencyId, String bibliographicRecordId, Params params)
+            throws RecordServiceConnectorException {
+        final long start = logger.start();
+        try {
+            return sendStreamRequest(PATH_RECORD_CONTENT, agencyId, bibliographicRecordId, params);
+        } finally {
+            logger.log("getRecordContentStream({}, {}) took {} milliseconds",
+                    agencyId, bibliographicRecordId, start);
+        }
+    }
+
+    /**
+     * Streams content of collection without materializing it in memory
+     * <p>
+     * The stream must be closed to release the connection. Streamed content
+     * is neither cached nor hedged.
+     * </p>
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @return Collection of related record content as MarcXchange XML collection stream
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public InputStream getRecordContentCollectionStream(String agencyId, String bibliographicRecordId, Params params)
+            throws RecordServiceConnectorException {
+        final long start = logger.start();
+        try {
+            return sendStreamRequest(PATH_RECORD_CONTENT_COLLECTION, agencyId, bibliographicRecordId, params);
+        } finally {
+            logger.log("getRecordContentCollectionStream({}, {}) took {} milliseconds",
+                    agencyId, bibliographicRecordId, start);
+        }
+    }
+
+    /**
+     * Writes record content to the given channel as it is received
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @param target                channel receiving the MarcXchange XML, is not closed
+     * @return number of bytes written
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response or to write it
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public long getRecordContent(String agencyId, String bibliographicRecordId, Params params,
+                                 WritableByteChannel target) throws RecordServiceConnectorException {
+        try (InputStream content = getRecordContentStream(agencyId, bibliographicRecordId, params)) {
+            return transfer(content, target);
+        } catch (IOException e) {
+            throw new RecordServiceConnectorException("Failed to transfer record content", e);
+        }
+    }
+
+    /**
+     * Writes content of collection to the given channel as it is received
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @param target                channel receiving the MarcXchange XML collection, is not closed
+     * @return number of bytes written
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response or to write it
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public long getRecordContentCollection(String agencyId, String bibliographicRecordId, Params params,
+                                           WritableByteChannel target) throws RecordServiceConnectorException {
+        try (InputStream content = getRecordContentCollectionStream(agencyId, bibliographicRecordId, params)) {
+            return transfer(content, target);
+        } catch (IOException e) {
+            throw new RecordServiceConnectorException("Failed to transfer record content collection", e);
+        }
+    }
+
+    /**
+     * Reads record content into the given buffer
+     * <p>
+     * Content not fitting the remaining space of the given buffer is read into
+     * a new buffer of the same kind with room for it, so callers reusing
+     * buffers should keep the returned buffer.
+     * </p>
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @param buffer                buffer to fill from its position
+     * @return buffer holding the MarcXchange XML between position 0 and its limit
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public ByteBuffer getRecordContent(String agencyId, String bibliographicRecordId, Params params,
+                                       ByteBuffer buffer) throws RecordServiceConnectorException {
+        try (InputStream content = getRecordContentStream(agencyId, bibliographicRecordId, params)) {
+            return fill(content, buffer);
+        } catch (IOException e) {
+            throw new RecordServiceConnectorException("Failed to read record content", e);
+        }
+    }
+
+    /**
+     * Reads content of collection into the given buffer
+     * <p>
+     * Content not fitting the remaining space of the given buffer is read into
+     * a new buffer of the same kind with room for it, so callers reusing
+     * buffers should keep the returned buffer.
+     * </p>
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @param buffer                buffer to fill from its position
+     * @return buffer holding the MarcXchange XML collection between position 0 and its limit
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public ByteBuffer getRecordContentCollection(String agencyId, String bibliographicRecordId, Params params,
+                                                 ByteBuffer buffer) throws RecordServiceConnectorException {
+        try (InputStream content = getRecordContentCollectionStream(agencyId, bibliographicRecordId, params)) {
+            return fill(content, buffer);
+        } catch (IOException e) {
+            throw new RecordServiceConnectorException("Failed to read record content collection", e);
+        }
+    }
+
+    /**
+     * Reads record content into a buffer leased from the buffer pool of the connector
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @return lease of buffer holding the MarcXchange XML between position 0 and its limit
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     * @throws IllegalStateException                               if no buffer pool is set
+     */
+    public BufferPool.Lease leaseRecordContent(String agencyId, String bibliographicRecordId, Params params)
+            throws RecordServiceConnectorException {
+        final long start = logger.start();
+        try {
+            return sendLeasedRequest(PATH_RECORD_CONTENT, agencyId, bibliographicRecordId, params);
+        } finally {
+            logger.log("leaseRecordContent({}, {}) took {} milliseconds",
+                    agencyId, bibliographicRecordId, start);
+        }
+    }
+
+    /**
+     * Reads content of collection into a buffer leased from the buffer pool of the connector
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @return lease of buffer holding the MarcXchange XML collection between position 0 and its limit
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     * @throws IllegalStateException                               if no buffer pool is set
+     */
+    public BufferPool.Lease leaseRecordContentCollection(String agencyId, String bibliographicRecordId, Params params)
+            throws RecordServiceConnectorException {
+        final long start = logger.start();
+        try {
+            return sendLeasedRequest(PATH_RECORD_CONTENT_COLLECTION, agencyId, bibliographicRecordId, params);
+        } finally {
+            logger.log("leaseRecordContentCollection({}, {}) took {} milliseconds",
+                    agencyId, bibliographicRecordId, start);
+        }
+    }
+
+    /**
+     * Reads raw record entry into a buffer leased from the buffer pool of the connector
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @return lease of buffer holding the record entry between position 0 and its limit
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     * @throws IllegalStateException                               if no buffer pool is set
+     */
+    public BufferPool.Lease leaseRawRecordEntry(String agencyId, String bibliographicRecordId)
+            throws RecordServiceConnectorException {
+        final long start = logger.start();
+        try {
+            return sendLeasedRequest(PATH_RECORD_ENTRY_RAW, agencyId, bibliographicRecordId, null);
+        } finally {
+            logger.log("leaseRawRecordEntry({}, {}) took {} milliseconds",
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -337,7 +623,7 @@ public class RecordServiceConnector {
     }
 
     public RecordCollectionDTOv2 fetchRecordList(List<RecordIdDTO> recordIds, Params params) throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             final RecordIdCollectionDTO recordIdCollectionDTO = new RecordIdCollectionDTO();
             recordIdCollectionDTO.setRecordIds(recordIds);
@@ -346,8 +632,7 @@ public class RecordServiceConnector {
         } catch (JSONBException e) {
             throw new RecordServiceConnectorException("Failed to marshall recordIds", e);
         } finally {
-            logger.log("fetchRecordList took {} milliseconds",
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+            logger.log("fetchRecordList took {} milliseconds", start);
         }
     }
 
@@ -392,13 +677,12 @@ public class RecordServiceConnector {
      */
     public RecordEntryDTO getRawRecordEntryDTO(String agencyId, String bibliographicRecordId)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_RECORD_ENTRY_RAW, agencyId, bibliographicRecordId, null, RecordEntryDTO.class);
         } finally {
             logger.log("getRawRecordEntryDTO({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -443,13 +727,12 @@ public class RecordServiceConnector {
      */
     public byte[] getRawRecordEntry(String agencyId, String bibliographicRecordId)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_RECORD_ENTRY_RAW, agencyId, bibliographicRecordId, null, byte[].class);
         } finally {
             logger.log("getRawRecordEntry({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -523,13 +806,53 @@ public class RecordServiceConnector {
      */
     public RecordDTO getRecordData(String agencyId, String bibliographicRecordId, Params params)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
-            return sendRequest(PATH_RECORD_DATA, agencyId, bibliographicRecordId, params, RecordDTO.class);
+            if (recordReplica == null || !recordReplica.replicates(params)) {
+                return hedged(httpClient -> sendCachedRequest(httpClient, PATH_RECORD_DATA, agencyId, bibliographicRecordId, params, RecordDTO.class));
+            }
+            final byte[] replicated = recordReplica.get(agencyId, bibliographicRecordId);
+            if (replicated != null) {
+                return fromContent(replicated, RecordDTO.class);
+            }
+            final RecordDTO record = hedged(httpClient -> sendCachedRequest(httpClient, PATH_RECORD_DATA, agencyId, bibliographicRecordId, params, RecordDTO.class));
+            try {
+                recordReplica.put(agencyId, bibliographicRecordId, record);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to store record {}:{} in {}", agencyId, bibliographicRecordId, recordReplica, e);
+            }
+            return record;
         } finally {
             logger.log("getRecordData({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
+        }
+    }
+
+    /**
+     * Looks up record data for each of the given record IDs, concurrently if the
+     * connector has an executor service, with at most the fan-out parallelism of
+     * the connector running at a time
+     *
+     * @param recordIds record IDs
+     * @param params    request query parameters
+     * @return map of recordId:RecordDTO-object in the order of the given record IDs
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public Map<RecordIdDTO, RecordDTO> getRecordDataBulk(List<RecordIdDTO> recordIds, Params params)
+            throws RecordServiceConnectorException {
+        final long start = logger.start();
+        try {
+            final List<RecordDTO> records = boundedFanOut(recordIds, fanOutParallelism,
+                    recordId -> getRecordData(recordId, params));
+            final Map<RecordIdDTO, RecordDTO> result = new LinkedHashMap<>();
+            for (int i = 0; i < recordIds.size(); i++) {
+                result.put(recordIds.get(i), records.get(i));
+            }
+            return result;
+        } finally {
+            logger.log("getRecordDataBulk({} records) took {} milliseconds",
+                    recordIds.size(), start);
         }
     }
 
@@ -603,13 +926,112 @@ public class RecordServiceConnector {
      */
     public HashMap<String, RecordDTO> getRecordDataCollection(String agencyId, String bibliographicRecordId, Params params)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
-            return sendRequest(PATH_RECORD_DATA_COLLECTION, agencyId, bibliographicRecordId, params, RecordCollectionDTO.class).toMap();
+            final HashMap<String, RecordDTO> records = hedged(httpClient -> sendCachedRequest(httpClient, PATH_RECORD_DATA_COLLECTION, agencyId, bibliographicRecordId, params, RecordCollectionDTO.class)).toMap();
+            if (prefetchPolicy != null) {
+                prefetch(records.values().stream()
+                        .map(RecordDTO::getRecordId)
+                        .collect(Collectors.toList()));
+            }
+            return records;
         } finally {
             logger.log("getRecordDataCollection({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
+        }
+    }
+
+    /**
+     * @param recordId record id
+     * @param params   request query parameters
+     * @return record as view decoding its content on first access
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public RecordView getRecordView(RecordIdDTO recordId, Params params)
+            throws RecordServiceConnectorException {
+        return getRecordView(Integer.toString(recordId.getAgencyId()), recordId.getBibliographicRecordId(), params);
+    }
+
+    /**
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @return record as view decoding its content on first access
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public RecordView getRecordView(int agencyId, String bibliographicRecordId, Params params)
+            throws RecordServiceConnectorException {
+        return getRecordView(Integer.toString(agencyId), bibliographicRecordId, params);
+    }
+
+    /**
+     * Like {@link #getRecordData(String, String, Params)}, but the content of the
+     * returned record is only decoded if accessed
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @return record as view decoding its content on first access
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public RecordView getRecordView(String agencyId, String bibliographicRecordId, Params params)
+            throws RecordServiceConnectorException {
+        final long start = logger.start();
+        try {
+            return hedged(httpClient -> sendCachedRequest(httpClient, PATH_RECORD_DATA, agencyId, bibliographicRecordId, params, RecordView.class));
+        } finally {
+            logger.log("getRecordView({}, {}) took {} milliseconds",
+                    agencyId, bibliographicRecordId, start);
+        }
+    }
+
+    /**
+     * @param recordId record id
+     * @param params   request query parameters
+     * @return records of the collection as views decoding their content on first access
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public List<RecordView> getRecordViewCollection(RecordIdDTO recordId, Params params)
+            throws RecordServiceConnectorException {
+        return getRecordViewCollection(Integer.toString(recordId.getAgencyId()), recordId.getBibliographicRecordId(), params);
+    }
+
+    /**
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @return records of the collection as views decoding their content on first access
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public List<RecordView> getRecordViewCollection(int agencyId, String bibliographicRecordId, Params params)
+            throws RecordServiceConnectorException {
+        return getRecordViewCollection(Integer.toString(agencyId), bibliographicRecordId, params);
+    }
+
+    /**
+     * Like {@link #getRecordDataCollection(String, String, Params)}, but the content of
+     * the returned records is only decoded if accessed
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param params                request query parameters
+     * @return records of the collection as views decoding their content on first access
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public List<RecordView> getRecordViewCollection(String agencyId, String bibliographicRecordId, Params params)
+            throws RecordServiceConnectorException {
+        final long start = logger.start();
+        try {
+            return hedged(httpClient -> sendCachedRequest(httpClient, PATH_RECORD_DATA_COLLECTION, agencyId, bibliographicRecordId, params, RecordViewCollection.class)).getRecords();
+        } finally {
+            logger.log("getRecordViewCollection({}, {}) took {} milliseconds",
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -659,13 +1081,12 @@ public class RecordServiceConnector {
      */
     public HashMap<String, RecordDTO> getRecordDataCollectionDataIO(String agencyId, String bibliographicRecordId, Params params)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_RECORD_CONTENT_COLLECTION_DATAIO, agencyId, bibliographicRecordId, params, RecordCollectionDTO.class).toMap();
         } finally {
             logger.log("getRecordDataCollection({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -716,13 +1137,16 @@ public class RecordServiceConnector {
      */
     public RecordDTO getRecordMeta(String agencyId, String bibliographicRecordId, Params params)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
+            final RecordDTO prefetched = takePrefetched(PrefetchPolicy.Lookup.META, agencyId, bibliographicRecordId, params, RecordDTO.class);
+            if (prefetched != null) {
+                return prefetched;
+            }
             return sendRequest(PATH_RECORD_META, agencyId, bibliographicRecordId, params, RecordDTO.class);
         } finally {
             logger.log("getRecordMeta({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -733,13 +1157,13 @@ public class RecordServiceConnector {
 
     public RecordDTO recordFetch(RecordIdDTO recordId, Params params)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_RECORD_FETCH, Integer.toString(recordId.getAgencyId()),
                     recordId.getBibliographicRecordId(), params, RecordDTO.class);
         } finally {
             logger.log("recordFetch({}) took {} milliseconds",
-                    recordId, stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    recordId, start);
         }
     }
 
@@ -790,14 +1214,20 @@ public class RecordServiceConnector {
      */
     public RecordIdDTO[] getRecordParents(String agencyId, String bibliographicRecordId, Params params)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
-            return sendRequest(PATH_RECORD_PARENTS, agencyId, bibliographicRecordId, params, RecordIdCollectionDTO.class)
-                    .toArray();
+            RecordIdDTO[] parents = takePrefetched(PrefetchPolicy.Lookup.PARENTS, agencyId, bibliographicRecordId, params, RecordIdDTO[].class);
+            if (parents == null) {
+                parents = sendRequest(PATH_RECORD_PARENTS, agencyId, bibliographicRecordId, params, RecordIdCollectionDTO.class)
+                        .toArray();
+            }
+            if (prefetchPolicy != null) {
+                prefetch(Arrays.asList(parents));
+            }
+            return parents;
         } finally {
             logger.log("getRecordParents({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -848,13 +1278,19 @@ public class RecordServiceConnector {
      */
     public RecordIdDTO[] getRecordChildren(String agencyId, String bibliographicRecordId, Params params)
             throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
-            return sendRequest(PATH_RECORD_CHILDREN, agencyId, bibliographicRecordId, params, RecordIdCollectionDTO.class).toArray();
+            RecordIdDTO[] children = takePrefetched(PrefetchPolicy.Lookup.CHILDREN, agencyId, bibliographicRecordId, params, RecordIdDTO[].class);
+            if (children == null) {
+                children = sendRequest(PATH_RECORD_CHILDREN, agencyId, bibliographicRecordId, params, RecordIdCollectionDTO.class).toArray();
+            }
+            if (prefetchPolicy != null) {
+                prefetch(Arrays.asList(children));
+            }
+            return children;
         } finally {
             logger.log("getRecordChildren({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -879,13 +1315,12 @@ public class RecordServiceConnector {
      * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
      */
     public RecordIdDTO[] getRecordSiblingsFrom(String agencyId, String bibliographicRecordId, Params params) throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_RECORD_SIBLINGS_FROM, agencyId, bibliographicRecordId, params, RecordIdCollectionDTO.class).toArray();
         } finally {
             logger.log("getRecordSiblingsFrom({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
@@ -903,122 +1338,631 @@ public class RecordServiceConnector {
      * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
      */
     public RecordIdDTO[] getRecordSiblingsTo(String agencyId, String bibliographicRecordId, Params params) throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_RECORD_SIBLINGS_TO, agencyId, bibliographicRecordId, params, RecordIdCollectionDTO.class).toArray();
         } finally {
             logger.log("getRecordSiblingsTo({}, {}) took {} milliseconds",
-                    agencyId, bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    agencyId, bibliographicRecordId, start);
         }
     }
 
     public Integer[] getAllAgenciesForBibliographicRecordId(String bibliographicRecordId) throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_ALL_AGENCIES_FOR, bibliographicRecordId, AgencyCollectionDTO.class).toArray();
         } finally {
             logger.log("getAllAgenciesForBibliographicRecordId({}) took {} milliseconds",
-                    bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    bibliographicRecordId, start);
         }
     }
 
     public RecordHistoryCollectionDTO getRecordHistory(String agencyId, String bibliographicRecordId) throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_RECORD_HISTORY, agencyId, bibliographicRecordId, null, RecordHistoryCollectionDTO.class);
         } finally {
             logger.log("getRecordHistory({}) took {} milliseconds",
-                    bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    bibliographicRecordId, start);
         }
     }
 
     public RecordDTO getHistoricRecord(String agencyId, String bibliographicRecordId, String modifiedDate) throws RecordServiceConnectorException {
-        final Stopwatch stopwatch = new Stopwatch();
+        final long start = logger.start();
         try {
             return sendRequest(PATH_HISTORIC_RECORD, agencyId, bibliographicRecordId, modifiedDate, null, RecordDTO.class);
         } finally {
             logger.log("getHistoricRecord({}) took {} milliseconds",
-                    bibliographicRecordId,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    bibliographicRecordId, start);
         }
     }
 
-    private <T> T sendRequest(String basePath, String agencyId, String bibliographicRecordId, String modifiedDate, Params params, Class<T> type)
+    /**
+     * Looks up the record history and fetches every historic version of the record,
+     * concurrently if the connector has an executor service
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param maxParallelism        max number of concurrent requests
+     * @return historic versions of the record in the order of the record history
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public List<RecordDTO> getHistoricRecords(String agencyId, String bibliographicRecordId, int maxParallelism)
+            throws RecordServiceConnectorException {
+        return getHistoricRecords(agencyId, bibliographicRecordId, null, null, maxParallelism);
+    }
+
+    /**
+     * Looks up the record history and fetches the historic versions of the record
+     * modified within the given interval, concurrently if the connector has an
+     * executor service
+     *
+     * @param agencyId              agency ID
+     * @param bibliographicRecordId bibliographic record ID
+     * @param modifiedFrom          inclusive start of the interval, may be null
+     * @param modifiedTo            exclusive end of the interval, may be null
+     * @param maxParallelism        max number of concurrent requests
+     * @return historic versions of the record in the order of the record history
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public List<RecordDTO> getHistoricRecords(String agencyId, String bibliographicRecordId,
+                                              Instant modifiedFrom, Instant modifiedTo, int maxParallelism)
+            throws RecordServiceConnectorException {
+        InvariantUtil.checkNotNullNotEmptyOrThrow(agencyId, "agencyId");
+        InvariantUtil.checkNotNullNotEmptyOrThrow(bibliographicRecordId, "bibliographicRecordId");
+        final RecordIdDTO recordId;
+        try {
+            recordId = new RecordIdDTO(bibliographicRecordId, Integer.parseInt(agencyId));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("agencyId must be numeric, was " + agencyId, e);
+        }
+        return getHistoricRecordsBulk(Collections.singletonList(recordId), modifiedFrom, modifiedTo, maxParallelism)
+                .get(recordId);
+    }
+
+    /**
+     * Looks up the record history of each of the given record IDs and fetches
+     * the historic versions modified within the given interval, concurrently if
+     * the connector has an executor service. History lookups and version fetches
+     * of all records share the max parallelism.
+     *
+     * @param recordIds      record IDs
+     * @param modifiedFrom   inclusive start of the interval, may be null
+     * @param modifiedTo     exclusive end of the interval, may be null
+     * @param maxParallelism max number of concurrent requests
+     * @return map of recordId:historic versions in the order of the given record IDs,
+     * versions in the order of the record history
+     * @throws RecordServiceConnectorException                     on failure to read result entity from response
+     * @throws RecordServiceConnectorUnexpectedStatusCodeException on unexpected response status code
+     */
+    public Map<RecordIdDTO, List<RecordDTO>> getHistoricRecordsBulk(List<RecordIdDTO> recordIds,
+                                                                    Instant modifiedFrom, Instant modifiedTo,
+                                                                    int maxParallelism)
+            throws RecordServiceConnectorException {
+        final long start = logger.start();
+        try {
+            final List<RecordHistoryCollectionDTO> histories = boundedFanOut(recordIds, maxParallelism,
+                    recordId -> getRecordHistory(Integer.toString(recordId.getAgencyId()), recordId.getBibliographicRecordId()));
+
+            final List<RecordIdDTO> versionOf = new ArrayList<>();
+            final List<String> versions = new ArrayList<>();
+            for (int i = 0; i < recordIds.size(); i++) {
+                final List<RecordHistoryDTO> history = histories.get(i).getRecordHistoryList();
+                if (history == null) {
+                    continue;
+                }
+                for (RecordHistoryDTO version : history) {
+                    if (isModifiedWithin(version.getModified(), modifiedFrom, modifiedTo)) {
+                        versionOf.add(recordIds.get(i));
+                        versions.add(version.getModified());
+                    }
+                }
+            }
+            final List<Integer> indexes = IntStream.range(0, versions.size()).boxed().collect(Collectors.toList());
+            final List<RecordDTO> historicRecords = boundedFanOut(indexes, maxParallelism,
+                    index -> getHistoricRecord(Integer.toString(versionOf.get(index).getAgencyId()),
+                            versionOf.get(index).getBibliographicRecordId(), versions.get(index)));
+
+            final Map<RecordIdDTO, List<RecordDTO>> result = new LinkedHashMap<>();
+            for (RecordIdDTO recordId : recordIds) {
+                result.put(recordId, new ArrayList<>());
+            }
+            for (int i = 0; i < historicRecords.size(); i++) {
+                result.get(versionOf.get(i)).add(historicRecords.get(i));
+            }
+            return result;
+        } finally {
+            logger.log("getHistoricRecordsBulk({} records) took {} milliseconds",
+                    recordIds.size(), start);
+        }
+    }
+
+    private static boolean isModifiedWithin(String modified, Instant from, Instant to)
+            throws RecordServiceConnectorException {
+        if (from == null && to == null) {
+            return true;
+        }
+        if (modified == null) {
+            return false;
+        }
+        final Instant instant = parseModified(modified);
+        return (from == null || !instant.isBefore(from)) && (to == null || instant.isBefore(to));
+    }
+
+    /* Parses ISO timestamp of the record history, timestamps without offset are in UTC */
+    private static Instant parseModified(String modified) throws RecordServiceConnectorException {
+        try {
+            final TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(modified,
+                    OffsetDateTime::from, LocalDateTime::from);
+            if (parsed instanceof OffsetDateTime) {
+                return ((OffsetDateTime) parsed).toInstant();
+            }
+            return ((LocalDateTime) parsed).toInstant(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            throw new RecordServiceConnectorException(
+                    String.format("Record history has invalid modified timestamp '%s'", modified), e);
+        }
+    }
+
+    /* Starts the lookups of the prefetch policy for the given records in the background */
+    private void prefetch(Collection<RecordIdDTO> recordIds) {
+        if (executorService == null) {
+            return;
+        }
+        final Params params = prefetchPolicy.getParams();
+        try {
+            for (RecordIdDTO recordId : recordIds) {
+                if (recordId == null) {
+                    continue;
+                }
+                final String agencyId = Integer.toString(recordId.getAgencyId());
+                final String bibliographicRecordId = recordId.getBibliographicRecordId();
+                for (PrefetchPolicy.Lookup lookup : prefetchPolicy.getLookups()) {
+                    prefetchPolicy.park(prefetchKey(lookup, agencyId, bibliographicRecordId, params),
+                            () -> executorService.submit(() -> {
+                                switch (lookup) {
+                                    case META:
+                                        return sendRequest(PATH_RECORD_META, agencyId, bibliographicRecordId, params, RecordDTO.class);
+                                    case PARENTS:
+                                        return sendRequest(PATH_RECORD_PARENTS, agencyId, bibliographicRecordId, params, RecordIdCollectionDTO.class).toArray();
+                                    case CHILDREN:
+                                    default:
+                                        return sendRequest(PATH_RECORD_CHILDREN, agencyId, bibliographicRecordId, params, RecordIdCollectionDTO.class).toArray();
+                                }
+                            }));
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Prefetch rejected by executor service", e);
+        }
+    }
+
+    /* Returns the prefetched result of the lookup, or null if none, the prefetch failed
+       or did not complete within the max wait of the policy and the deadline */
+    private <T> T takePrefetched(PrefetchPolicy.Lookup lookup, String agencyId, String bibliographicRecordId, Params params, Class<T> type)
+            throws RecordServiceConnectorException {
+        if (prefetchPolicy == null) {
+            return null;
+        }
+        final Future<?> prefetched = prefetchPolicy.take(prefetchKey(lookup, agencyId, bibliographicRecordId, params));
+        if (prefetched == null) {
+            return null;
+        }
+        try {
+            return type.cast(prefetched.get(
+                    Deadline.boundNanos(prefetchPolicy.getMaxWaitNanos()), TimeUnit.NANOSECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecordServiceConnectorException("Interrupted while waiting for prefetched lookup", e);
+        } catch (TimeoutException e) {
+            prefetchPolicy.timedOut(prefetched);
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    private static String prefetchKey(PrefetchPolicy.Lookup lookup, String agencyId, String bibliographicRecordId, Params params) {
+        return lookup.name() + '/' + agencyId + '/' + bibliographicRecordId
+                + (params == null || params.isEmpty() ? "" : '?' + params.toQueryString());
+    }
+
+    /* Runs the lookup of each of the given keys on the executor service, with at most
+       maxParallelism lookups running at a time, returning the results in the order of
+       the given keys */
+    private <K, T> List<T> boundedFanOut(List<K> keys, int maxParallelism, KeyedLookup<K, T> lookup)
+            throws RecordServiceConnectorException {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("maxParallelism must be positive, was " + maxParallelism);
+        }
+        final List<T> results = new ArrayList<>(Collections.nCopies(keys.size(), null));
+        if (executorService == null || maxParallelism == 1 || keys.size() < 2) {
+            for (int i = 0; i < keys.size(); i++) {
+                results.set(i, lookup.apply(keys.get(i)));
+            }
+            return results;
+        }
+        final CompletionService<T> completionService = new ExecutorCompletionService<>(executorService);
+        final Map<Future<T>, Integer> pending = new HashMap<>();
+        int next = 0;
+        try {
+            while (next < keys.size() || !pending.isEmpty()) {
+                while (next < keys.size() && pending.size() < maxParallelism) {
+                    final K key = keys.get(next);
+                    pending.put(completionService.submit(Deadline.propagate(() -> lookup.apply(key))), next++);
+                }
+                final Future<T> completed = completionService.take();
+                results.set(pending.remove(completed), completed.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecordServiceConnectorException("Interrupted while waiting for record lookups", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            for (Future<T> future : pending.keySet()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /* Runs the request, and a single attempt hedge request if the first one has
+       not completed within the hedge delay, returning the first successful response.
+       The original runs in this thread when no executor thread has picked it up by
+       then, as a fan-out may hold all of them */
+    private <T> T hedged(HedgedRequest<T> request) throws RecordServiceConnectorException {
+        if (hedgingPolicy == null || executorService == null) {
+            return request.call(failSafeHttpClient);
+        }
+        hedgingPolicy.request();
+        final BlockingQueue<Future<T>> completions = new LinkedBlockingQueue<>();
+        final long start = System.nanoTime();
+        final CompletingTask<T> original = new CompletingTask<>(
+                Deadline.propagate(() -> request.call(failSafeHttpClient)), completions);
+        CompletingTask<T> hedge = null;
+        try {
+            if (!tryExecute(original)) {
+                original.run();
+            }
+            Future<T> completed = completions.poll(hedgingPolicy.getDelayNanos(), TimeUnit.NANOSECONDS);
+            if (completed == null) {
+                // No-op when an executor thread has started the original
+                original.run();
+                completed = completions.poll();
+            }
+            if (completed == null && hedgingPolicy.tryHedge()) {
+                hedge = new CompletingTask<>(
+                        Deadline.propagate(() -> request.call(hedgeHttpClient)), completions);
+                if (!tryExecute(hedge)) {
+                    hedge = null;
+                }
+            }
+            int pending = hedge == null ? 1 : 2;
+            while (true) {
+                if (completed == null) {
+                    completed = completions.take();
+                }
+                pending--;
+                try {
+                    final T result = completed.get();
+                    hedgingPolicy.recordLatency(System.nanoTime() - start);
+                    if (completed == hedge) {
+                        hedgingPolicy.hedgeWon();
+                    }
+                    return result;
+                } catch (ExecutionException e) {
+                    if (pending == 0) {
+                        throw unwrap(e);
+                    }
+                }
+                completed = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecordServiceConnectorException("Interrupted while waiting for hedged request", e);
+        } finally {
+            original.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private boolean tryExecute(Runnable task) {
+        try {
+            executorService.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private static RecordServiceConnectorException unwrap(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RecordServiceConnectorException) {
+            return (RecordServiceConnectorException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new RecordServiceConnectorException("Record lookup failed", cause);
+    }
+
+    private <T> T sendRequest(PathTemplate path, String agencyId, String bibliographicRecordId, String modifiedDate, Params params, Class<T> type)
             throws RecordServiceConnectorException {
         InvariantUtil.checkNotNullNotEmptyOrThrow(agencyId, "agencyId");
         InvariantUtil.checkNotNullNotEmptyOrThrow(bibliographicRecordId, "bibliographicRecordId");
         InvariantUtil.checkNotNullNotEmptyOrThrow(modifiedDate, "modifiedDate");
-        final PathBuilder path = new PathBuilder(basePath)
-                .bind(PATH_VARIABLE_AGENCY_ID, agencyId)
-                .bind(PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID, bibliographicRecordId)
-                .bind(PATH_VARIABLE_MODIFIED_DATE, modifiedDate);
         final HttpGet httpGet = new HttpGet(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
-                .withPathElements(path.build());
+                .withPathElements(path.bind(agencyId, bibliographicRecordId, modifiedDate));
+        if (params != null) {
+            params.addQueryParameters(httpGet);
+        }
+        final Bulkhead bulkhead = acquireBulkhead(path);
+        try {
+            final Response response = execute(httpGet);
+            assertResponseStatus(response, Response.Status.OK);
+            return readResponseEntity(response, type);
+        } finally {
+            releaseBulkhead(bulkhead);
+        }
+    }
+
+    private <T> T sendRequest(PathTemplate path, String agencyId, String bibliographicRecordId, Params params, Class<T> type)
+            throws RecordServiceConnectorException {
+        return sendRequest(failSafeHttpClient, path, agencyId, bibliographicRecordId, params, type);
+    }
+
+    private <T> T sendRequest(FailSafeHttpClient httpClient, PathTemplate path, String agencyId, String bibliographicRecordId,
+                              Params params, Class<T> type)
+            throws RecordServiceConnectorException {
+        InvariantUtil.checkNotNullNotEmptyOrThrow(agencyId, "agencyId");
+        InvariantUtil.checkNotNullNotEmptyOrThrow(bibliographicRecordId, "bibliographicRecordId");
+        final HttpGet httpGet = new HttpGet(httpClient)
+                .withBaseUrl(baseUrl)
+                .withPathElements(path.bind(agencyId, bibliographicRecordId));
+        if (params != null) {
+            params.addQueryParameters(httpGet);
+        }
+        final Bulkhead bulkhead = acquireBulkhead(path);
+        try {
+            final Response response = execute(httpGet);
+            assertResponseStatus(response, Response.Status.OK);
+            return readResponseEntity(response, type);
+        } finally {
+            releaseBulkhead(bulkhead);
+        }
+    }
+
+    /* Like sendRequest, but served from and stored in the record cache if one is set */
+    private <T> T sendCachedRequest(FailSafeHttpClient httpClient, PathTemplate path, String agencyId, String bibliographicRecordId,
+                                    Params params, Class<T> type)
+            throws RecordServiceConnectorException {
+        if (recordCache == null) {
+            return sendRequest(httpClient, path, agencyId, bibliographicRecordId, params, type);
+        }
+        InvariantUtil.checkNotNullNotEmptyOrThrow(agencyId, "agencyId");
+        InvariantUtil.checkNotNullNotEmptyOrThrow(bibliographicRecordId, "bibliographicRecordId");
+        final String[] pathElements = path.bind(agencyId, bibliographicRecordId);
+        final String cacheKey = String.join("/", pathElements)
+                + (params == null ? "" : '?' + params.toQueryString());
+
+        final RecordCache.CachedResponse cached = recordCache.get(cacheKey);
+        if (cached != null) {
+            if (recordCache.isFresh(cached)) {
+                recordCache.hit();
+                return fromContent(cached.getContent(), type);
+            }
+        }
+
+        final HttpGet httpGet = new HttpGet(httpClient)
+                .withBaseUrl(baseUrl)
+                .withPathElements(pathElements);
         if (params != null) {
-            for (Map.Entry<String, Object> param : params.entrySet()) {
-                httpGet.withQueryParameter(param.getKey(), param.getValue());
+            params.addQueryParameters(httpGet);
+        }
+        if (cached != null) {
+            if (cached.getETag() != null) {
+                httpGet.withHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag());
+            }
+            if (cached.getLastModified() != null) {
+                httpGet.withHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
             }
         }
-        final Response response = httpGet.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, type);
+        final Bulkhead bulkhead = acquireBulkhead(path);
+        try {
+            final Response response = execute(httpGet);
+            if (cached != null && response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+                recordCache.put(cacheKey, cached.refreshed(
+                        response.getHeaderString(HttpHeaders.ETAG),
+                        response.getHeaderString(HttpHeaders.LAST_MODIFIED)));
+                response.close();
+                recordCache.revalidated();
+                return fromContent(cached.getContent(), type);
+            }
+            assertResponseStatus(response, Response.Status.OK);
+            final byte[] content = readResponseEntity(response, byte[].class);
+            final T entity = fromContent(content, type);
+            recordCache.put(cacheKey, new RecordCache.CachedResponse(content,
+                    response.getHeaderString(HttpHeaders.ETAG),
+                    response.getHeaderString(HttpHeaders.LAST_MODIFIED)));
+            recordCache.miss();
+            return entity;
+        } finally {
+            releaseBulkhead(bulkhead);
+        }
     }
 
-    private <T> T sendRequest(String basePath, String agencyId, String bibliographicRecordId, Params params, Class<T> type)
+    /* Like sendRequest, but returns the response entity stream holding the
+       connection and bulkhead permit until closed */
+    private InputStream sendStreamRequest(PathTemplate path, String agencyId, String bibliographicRecordId, Params params)
             throws RecordServiceConnectorException {
         InvariantUtil.checkNotNullNotEmptyOrThrow(agencyId, "agencyId");
         InvariantUtil.checkNotNullNotEmptyOrThrow(bibliographicRecordId, "bibliographicRecordId");
-        final PathBuilder path = new PathBuilder(basePath)
-                .bind(PATH_VARIABLE_AGENCY_ID, agencyId)
-                .bind(PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID, bibliographicRecordId);
         final HttpGet httpGet = new HttpGet(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
-                .withPathElements(path.build());
+                .withPathElements(path.bind(agencyId, bibliographicRecordId));
         if (params != null) {
-            for (Map.Entry<String, Object> param : params.entrySet()) {
-                httpGet.withQueryParameter(param.getKey(), param.getValue());
+            params.addQueryParameters(httpGet);
+        }
+        final Bulkhead bulkhead = acquireBulkhead(path);
+        Response response = null;
+        try {
+            response = execute(httpGet);
+            assertResponseStatus(response, Response.Status.OK);
+            final InputStream stream = new ResponseInputStream(
+                    readResponseEntity(response, InputStream.class), response, bulkhead);
+            response = null;
+            return stream;
+        } finally {
+            if (response != null) {
+                response.close();
+                releaseBulkhead(bulkhead);
             }
         }
-        final Response response = httpGet.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, type);
     }
 
-    private <T> T sendRequest(String basePath, String bibliographicRecordId, Class<T> type)
+    private BufferPool.Lease sendLeasedRequest(PathTemplate path, String agencyId, String bibliographicRecordId, Params params)
+            throws RecordServiceConnectorException {
+        if (bufferPool == null) {
+            throw new IllegalStateException("No buffer pool set");
+        }
+        try (InputStream content = sendStreamRequest(path, agencyId, bibliographicRecordId, params)) {
+            final ReadableByteChannel source = Channels.newChannel(content);
+            final BufferPool.Lease lease = bufferPool.lease(TRANSFER_BUFFER_SIZE);
+            try {
+                ByteBuffer buffer = lease.getBuffer();
+                while (true) {
+                    if (!buffer.hasRemaining()) {
+                        buffer = lease.grow(buffer.capacity() * 2);
+                    }
+                    if (source.read(buffer) < 0) {
+                        buffer.flip();
+                        return lease;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                lease.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new RecordServiceConnectorException("Failed to read response entity", e);
+        }
+    }
+
+    private static long transfer(InputStream content, WritableByteChannel target) throws IOException {
+        final ReadableByteChannel source = Channels.newChannel(content);
+        final ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        long transferred = 0;
+        while (source.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                transferred += target.write(buffer);
+            }
+            buffer.clear();
+        }
+        return transferred;
+    }
+
+    private static ByteBuffer fill(InputStream content, ByteBuffer buffer) throws IOException {
+        final ReadableByteChannel source = Channels.newChannel(content);
+        ByteBuffer filled = buffer;
+        while (true) {
+            if (!filled.hasRemaining()) {
+                final int capacity = Math.max(TRANSFER_BUFFER_SIZE, filled.capacity() * 2);
+                final ByteBuffer grown = filled.isDirect()
+                        ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+                filled.flip();
+                grown.put(filled);
+                filled = grown;
+            }
+            if (source.read(filled) < 0) {
+                return filled.flip();
+            }
+        }
+    }
+
+    private Bulkhead acquireBulkhead(PathTemplate path) throws RecordServiceConnectorException {
+        final Bulkhead bulkhead = COLLECTION_PATHS.contains(path) ? collectionBulkhead : lookupBulkhead;
+        if (bulkhead != null && !bulkhead.acquire()) {
+            throw new RecordServiceConnectorException(
+                    String.format("Request rejected by %s bulkhead: %s", bulkhead.getName(), bulkhead));
+        }
+        return bulkhead;
+    }
+
+    private static void releaseBulkhead(Bulkhead bulkhead) {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    private <T> T fromContent(byte[] content, Class<T> type) throws RecordServiceConnectorException {
+        if (type == byte[].class) {
+            // Callers must not be able to modify the cached content
+            return type.cast(content.clone());
+        }
+        try {
+            if (RecordDTOReader.isSupported(type)) {
+                return RecordDTOReader.read(content, type);
+            }
+            return jsonbContext.unmarshall(new String(content, StandardCharsets.UTF_8), type);
+        } catch (IOException | JSONBException e) {
+            throw new RecordServiceConnectorException(
+                    String.format("Failed to unmarshall %s entity", type.getName()), e);
+        }
+    }
+
+    private <T> T sendRequest(PathTemplate path, String bibliographicRecordId, Class<T> type)
             throws RecordServiceConnectorException {
         InvariantUtil.checkNotNullNotEmptyOrThrow(bibliographicRecordId, "bibliographicRecordId");
-        final PathBuilder path = new PathBuilder(basePath)
-                .bind(PATH_VARIABLE_BIBLIOGRAPHIC_RECORD_ID, bibliographicRecordId);
         final HttpGet httpGet = new HttpGet(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
-                .withPathElements(path.build());
-        final Response response = httpGet.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, type);
+                .withPathElements(path.bind(bibliographicRecordId));
+        final Bulkhead bulkhead = acquireBulkhead(path);
+        try {
+            final Response response = execute(httpGet);
+            assertResponseStatus(response, Response.Status.OK);
+            return readResponseEntity(response, type);
+        } finally {
+            releaseBulkhead(bulkhead);
+        }
     }
 
-    private <S, T> T postRequest(String basePath, String body, Params params, Class<T> returnType) throws RecordServiceConnectorException {
+    private <S, T> T postRequest(PathTemplate path, String body, Params params, Class<T> returnType) throws RecordServiceConnectorException {
         final HttpPost httpPost = new HttpPost(failSafeHttpClient)
                 .withBaseUrl(baseUrl)
-                .withPathElements(basePath)
+                .withPathElements(path.elements())
                 .withData(body, "application/json")
                 .withHeader("Accept", "application/json");
         if (params != null) {
-            for (Map.Entry<String, Object> param : params.entrySet()) {
-                httpPost.withQueryParameter(param.getKey(), param.getValue());
-            }
+            params.addQueryParameters(httpPost);
         }
-        final Response response = httpPost.execute();
-        assertResponseStatus(response, Response.Status.OK);
-        return readResponseEntity(response, returnType);
+        final Bulkhead bulkhead = acquireBulkhead(path);
+        try {
+            final Response response = execute(httpPost);
+            assertResponseStatus(response, Response.Status.OK);
+            return readResponseEntity(response, returnType);
+        } finally {
+            releaseBulkhead(bulkhead);
+        }
+    }
+
+    private Response execute(HttpRequest<?> request) throws RecordServiceConnectorTimeoutException {
+        return RETRIES.execute(request, RecordServiceConnectorTimeoutException::new);
     }
 
     private <T> T readResponseEntity(Response response, Class<T> type)
             throws RecordServiceConnectorException {
+        if (!streamingReaders && (type == RecordView.class || type == RecordViewCollection.class)) {
+            // Views have no data binding, without the streaming readers of the
+            // client they are read from the buffered entity
+            return fromContent(readResponseEntity(response, byte[].class), type);
+        }
         final T entity = response.readEntity(type);
         if (entity == null) {
             throw new RecordServiceConnectorException(
@@ -1047,7 +1991,7 @@ public class RecordServiceConnector {
     /**
      * Record service parameters
      */
-    public static class Params extends HashMap<String, Object> {
+    public static class Params extends ConnectorParams {
         public enum Key {
             /**
              * allow-deleted: used to specify whether a record should
@@ -1111,6 +2055,13 @@ public class RecordServiceConnector {
             }
         }
 
+        /**
+         * @return immutable copy of these parameters
+         */
+        public Params freeze() {
+            return freeze(Params::new);
+        }
+
         public Params withAllowDeleted(Boolean allowDeleted) {
             putOrRemoveOnNull(Key.ALLOW_DELETED, allowDeleted);
             return this;
@@ -1217,8 +2168,186 @@ public class RecordServiceConnector {
         }
     }
 
+
+    /* Entity stream closing its response and releasing its bulkhead permit when closed */
+    private static class ResponseInputStream extends FilterInputStream {
+        private final Response response;
+        private final Bulkhead bulkhead;
+        private boolean closed;
+
+        ResponseInputStream(InputStream in, Response response, Bulkhead bulkhead) {
+            super(in);
+            this.response = response;
+            this.bulkhead = bulkhead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    response.close();
+                    releaseBulkhead(bulkhead);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builder of {@link RecordServiceConnector} instances, all features are
+     * disabled unless set
+     */
+    public static class Builder {
+        private final FailSafeHttpClient failSafeHttpClient;
+        private final String baseUrl;
+        private TimingLogLevel level = TimingLogLevel.INFO;
+        private ExecutorService executorService;
+        private RecordCache recordCache;
+        private RecordReplica recordReplica;
+        private HedgingPolicy hedgingPolicy;
+        private PrefetchPolicy prefetchPolicy;
+        private Bulkhead lookupBulkhead;
+        private Bulkhead collectionBulkhead;
+        private BufferPool bufferPool;
+        private int fanOutParallelism = ClientSettings.DEFAULT_FAN_OUT_PARALLELISM;
+
+        private Builder(FailSafeHttpClient failSafeHttpClient, String baseUrl) {
+            this.failSafeHttpClient = failSafeHttpClient;
+            this.baseUrl = baseUrl;
+        }
+
+        /**
+         * @param level timings log level, default INFO
+         * @return this builder
+         */
+        public Builder withTimingLogLevel(TimingLogLevel level) {
+            this.level = InvariantUtil.checkNotNullOrThrow(level, "level");
+            return this;
+        }
+
+        /**
+         * @param executorService executor service running connector fan-out, prefetches
+         *                        and hedge requests, without one fan-out is done sequentially
+         *                        in the calling thread and nothing is prefetched or hedged
+         * @return this builder
+         */
+        public Builder withExecutorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * @param recordCache cache for record content and record data lookups, see {@link RecordCache}
+         * @return this builder
+         */
+        public Builder withRecordCache(RecordCache recordCache) {
+            this.recordCache = recordCache;
+            return this;
+        }
+
+        /**
+         * @param recordReplica local replica consulted by getRecordData before the
+         *                      record service, see {@link RecordReplica}
+         * @return this builder
+         */
+        public Builder withRecordReplica(RecordReplica recordReplica) {
+            this.recordReplica = recordReplica;
+            return this;
+        }
+
+        /**
+         * @param hedgingPolicy policy for hedging getRecordContent, getRecordData and
+         *                      getRecordDataCollection requests, see {@link HedgingPolicy}
+         * @return this builder
+         */
+        public Builder withHedgingPolicy(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        /**
+         * @param prefetchPolicy policy for prefetching follow-up lookups of the records
+         *                       returned by getRecordDataCollection, getRecordParents and
+         *                       getRecordChildren, see {@link PrefetchPolicy}
+         * @return this builder
+         */
+        public Builder withPrefetchPolicy(PrefetchPolicy prefetchPolicy) {
+            this.prefetchPolicy = prefetchPolicy;
+            return this;
+        }
+
+        /**
+         * @param bufferPool pool of the buffers leased by leaseRecordContent,
+         *                   leaseRecordContentCollection and leaseRawRecordEntry
+         * @return this builder
+         */
+        public Builder withBufferPool(BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * @param lookupBulkhead bulkhead limiting the concurrency of single record requests
+         * @return this builder
+         */
+        public Builder withLookupBulkhead(Bulkhead lookupBulkhead) {
+            this.lookupBulkhead = lookupBulkhead;
+            return this;
+        }
+
+        /**
+         * @param collectionBulkhead bulkhead limiting the concurrency of record collection
+         *                           requests, i.e. getRecordContentCollection, getRecordDataCollection,
+         *                           getRecordDataCollectionDataIO and fetchRecordList
+         * @return this builder
+         */
+        public Builder withCollectionBulkhead(Bulkhead collectionBulkhead) {
+            this.collectionBulkhead = collectionBulkhead;
+            return this;
+        }
+
+        /**
+         * @param fanOutParallelism max number of concurrent requests of a single bulk
+         *                          lookup, e.g. by getRecordDataBulk, default 16
+         * @return this builder
+         */
+        public Builder withFanOutParallelism(int fanOutParallelism) {
+            if (fanOutParallelism < 1) {
+                throw new IllegalArgumentException("fanOutParallelism must be positive, was " + fanOutParallelism);
+            }
+            this.fanOutParallelism = fanOutParallelism;
+            return this;
+        }
+
+        public RecordServiceConnector build() {
+            return new RecordServiceConnector(this);
+        }
+    }
+
+    @FunctionalInterface
+    interface KeyedLookup<K, T> {
+        T apply(K key) throws RecordServiceConnectorException;
+    }
+
     @FunctionalInterface
-    interface LogLevelMethod {
-        void log(String format, Object... objs);
+    interface HedgedRequest<T> {
+        T call(FailSafeHttpClient httpClient) throws RecordServiceConnectorException;
+    }
+
+    /* Future queueing itself on completion, whichever thread runs it */
+    private static class CompletingTask<T> extends FutureTask<T> {
+        private final BlockingQueue<Future<T>> completions;
+
+        CompletingTask(Callable<T> callable, BlockingQueue<Future<T>> completions) {
+            super(callable);
+            this.completions = completions;
+        }
+
+        @Override
+        protected void done() {
+            completions.add(this);
+        }
     }
 }
@@ -1,6 +1,10 @@
 package dk.dbc.rawrepo.record;
 
-import dk.dbc.httpclient.HttpClient;
+import dk.dbc.rawrepo.client.Bulkhead;
+import dk.dbc.rawrepo.client.ClientFactory;
+import dk.dbc.rawrepo.client.ClientSettings;
+import dk.dbc.rawrepo.client.ClientSettingsConfig;
+import dk.dbc.rawrepo.client.LoadBalancer;
 import dk.dbc.rawrepo.record.RecordServiceConnector.TimingLogLevel;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -9,11 +13,11 @@ import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.client.Client;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.jackson.JacksonFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * RecordServerConnector factory
  * <p>
@@ -36,27 +40,61 @@ import org.slf4j.LoggerFactory;
  * <p>
  * CDI case depends on the rawrepo record service baseurl being defined as
  * the value of either a system property or environment variable
- * named RAWREPO_RECORD_SERVICE_URL. RAWREPO_RECORD_SERVICE_TIMING_LOG_LEVEL
+ * named RAWREPO_RECORD_SERVICE_URL, which may be a comma separated list of
+ * base URLs to load balance requests across. RAWREPO_RECORD_SERVICE_TIMING_LOG_LEVEL
  * should be one of TRACE, DEBUG, INFO(default), WARN or ERROR, for setting
  * log level
  * </p>
+ * <p>
+ * Executors, transport, connection pooling and timeouts of the underlying client
+ * are configured through the properties listed in {@link ClientSettingsConfig}
+ * </p>
  */
 @ApplicationScoped
 public class RecordServiceConnectorFactory {
     private static final Logger LOGGER = LoggerFactory.getLogger(RecordServiceConnectorFactory.class);
 
     public static RecordServiceConnector create(String recordServiceBaseUrl) {
-        final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
-        LOGGER.info("Creating RecordServiceConnector for: {}", recordServiceBaseUrl);
-        return new RecordServiceConnector(client, recordServiceBaseUrl);
+        return create(recordServiceBaseUrl, TimingLogLevel.INFO);
     }
 
     public static RecordServiceConnector create(String recordServiceBaseUrl, TimingLogLevel level) {
-        final Client client = HttpClient.newClient(new ClientConfig()
-                .register(new JacksonFeature()));
-        LOGGER.info("Creating RecordServiceConnector for: {}", recordServiceBaseUrl);
-        return new RecordServiceConnector(client, recordServiceBaseUrl, level);
+        return create(recordServiceBaseUrl, level, new ClientSettings());
+    }
+
+    /**
+     * @param recordServiceBaseUrl base URL, or comma separated list of base URLs to load balance requests across
+     * @param level                timings log level
+     * @param settings             client settings
+     * @return new connector
+     */
+    public static RecordServiceConnector create(String recordServiceBaseUrl, TimingLogLevel level, ClientSettings settings) {
+        if (recordServiceBaseUrl != null && recordServiceBaseUrl.contains(",")) {
+            return create(new LoadBalancer(LoadBalancer.parseBaseUrls(recordServiceBaseUrl), settings), level, settings);
+        }
+        final ExecutorService executorService = ClientFactory.newExecutorService(settings);
+        final Client client = ClientFactory.newClient(settings, executorService);
+        LOGGER.info("Creating RecordServiceConnector for: {} with {}", recordServiceBaseUrl, settings);
+        return RecordServiceConnector.builder(client, recordServiceBaseUrl)
+                .withTimingLogLevel(level)
+                .withExecutorService(executorService)
+                .withFanOutParallelism(settings.getFanOutParallelism())
+                .withLookupBulkhead(Bulkhead.forGroup(settings, ClientSettings.BulkheadGroup.LOOKUP))
+                .withCollectionBulkhead(Bulkhead.forGroup(settings, ClientSettings.BulkheadGroup.COLLECTION))
+                .build();
+    }
+
+    public static RecordServiceConnector create(LoadBalancer loadBalancer, TimingLogLevel level, ClientSettings settings) {
+        final ExecutorService executorService = ClientFactory.newExecutorService(settings);
+        final Client client = ClientFactory.newClient(settings, executorService, loadBalancer);
+        LOGGER.info("Creating RecordServiceConnector for: {} with {}", loadBalancer, settings);
+        return RecordServiceConnector.builder(client, loadBalancer.getBaseUrl())
+                .withTimingLogLevel(level)
+                .withExecutorService(executorService)
+                .withFanOutParallelism(settings.getFanOutParallelism())
+                .withLookupBulkhead(Bulkhead.forGroup(settings, ClientSettings.BulkheadGroup.LOOKUP))
+                .withCollectionBulkhead(Bulkhead.forGroup(settings, ClientSettings.BulkheadGroup.COLLECTION))
+                .build();
     }
 
     @Inject
@@ -67,11 +105,15 @@ public class RecordServiceConnectorFactory {
     @ConfigProperty(name = "RAWREPO_RECORD_SERVICE_TIMING_LOG_LEVEL", defaultValue = "INFO")
     private TimingLogLevel level;
 
+    @Inject
+    private ClientSettingsConfig clientSettingsConfig;
+
     RecordServiceConnector recordServiceConnector;
 
     @PostConstruct
     public void initializeConnector() {
-        recordServiceConnector = RecordServiceConnectorFactory.create(recordServiceBaseUrl, level);
+        recordServiceConnector = RecordServiceConnectorFactory.create(recordServiceBaseUrl, level,
+                clientSettingsConfig.toClientSettings());
     }
 
     @Produces
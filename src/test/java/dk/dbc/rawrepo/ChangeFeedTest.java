@@ -0,0 +1,143 @@
+package dk.dbc.rawrepo;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import dk.dbc.httpclient.HttpClient;
+import dk.dbc.rawrepo.dump.ChangeFeed;
+import dk.dbc.rawrepo.dump.RecordDumpServiceConnector;
+import jakarta.ws.rs.client.Client;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ChangeFeedTest {
+    private static final Instant START = Instant.parse("2019-07-31T01:00:00Z");
+
+    private static WireMockServer wireMockServer;
+    private static RecordDumpServiceConnector connector;
+
+    private final static Client CLIENT = HttpClient.newClient(new ClientConfig()
+            .register(new JacksonFeature()));
+
+    @BeforeAll
+    static void startWireMockServer() throws Exception {
+        wireMockServer = new WireMockServer(options().dynamicPort()
+                .dynamicHttpsPort());
+        wireMockServer.start();
+        configureFor("localhost", wireMockServer.port());
+        connector = new RecordDumpServiceConnector(CLIENT, "http://localhost:" + wireMockServer.port(),
+                RecordDumpServiceConnector.TimingLogLevel.INFO);
+
+        final String dump = new String(Files.readAllBytes(Path.of("src/test/resources/dump-record-expected.txt")),
+                StandardCharsets.UTF_8);
+        stubFor(post(urlEqualTo("/api/v1/dump"))
+                .withRequestBody(containing("modifiedFrom"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody(dump)));
+    }
+
+    @AfterAll
+    static void stopWireMockServer() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void pollDeduplicatesOverlap() throws Exception {
+        final MutableClock clock = new MutableClock(START.plus(Duration.ofMinutes(5)));
+        final InMemoryHighWaterMarkStore store = new InMemoryHighWaterMarkStore();
+        final List<ChangeFeed.ChangedRecord> changed = new ArrayList<>();
+        final ChangeFeed feed = new ChangeFeed(connector,
+                new RecordDumpServiceConnector.AgencyParams().withAgencies(Collections.singletonList(735000)),
+                store, changed::add)
+                .withWindow(Duration.ofMinutes(2))
+                .withOverlap(Duration.ofSeconds(30))
+                .withLag(Duration.ZERO)
+                .withInitialHighWaterMark(START)
+                .withClock(clock);
+
+        assertThat("first window", feed.poll(), is(3));
+        assertThat("high-water mark after first window", store.highWaterMark, is(START.plus(Duration.ofMinutes(2))));
+        assertThat("record ids", changed.stream()
+                        .map(record -> record.getAgencyId() + ":" + record.getBibliographicRecordId())
+                        .collect(Collectors.toList()).get(0),
+                is("735000:22058037"));
+        assertThat("record version", changed.get(0).getVersion(), is("20190731033824"));
+        assertThat("record content", changed.get(0).getContent().startsWith("001 00 *a22058037*b735000"), is(true));
+        verify(postRequestedFor(urlEqualTo("/api/v1/dump"))
+                .withRequestBody(containing("2019-07-31T02:59:30"))
+                .withRequestBody(containing("2019-07-31T03:02:00")));
+
+        assertThat("second window skips records already delivered", feed.poll(), is(0));
+        assertThat("records delivered", changed.size(), is(3));
+
+        assertThat("third window up to now", feed.poll(), is(0));
+        assertThat("high-water mark caught up", feed.getHighWaterMark(), is(clock.instant()));
+        assertThat("nothing to poll", feed.poll(), is(-1));
+
+        clock.tick(Duration.ofMinutes(1));
+        final ChangeFeed restarted = new ChangeFeed(connector,
+                new RecordDumpServiceConnector.AgencyParams().withAgencies(Collections.singletonList(735000)),
+                store, changed::add)
+                .withLag(Duration.ZERO)
+                .withClock(clock);
+        assertThat("restart redelivers overlap", restarted.poll(), is(3));
+        assertThat("high-water mark after restart", store.highWaterMark, is(clock.instant()));
+    }
+
+    @Test
+    void listenerFailureLeavesHighWaterMark() {
+        final MutableClock clock = new MutableClock(START.plus(Duration.ofMinutes(5)));
+        final InMemoryHighWaterMarkStore store = new InMemoryHighWaterMarkStore();
+        store.highWaterMark = START;
+        final ChangeFeed feed = new ChangeFeed(connector,
+                new RecordDumpServiceConnector.AgencyParams().withAgencies(Collections.singletonList(735000)),
+                store, record -> {
+                    throw new IllegalStateException("index unavailable");
+                })
+                .withLag(Duration.ZERO)
+                .withClock(clock);
+
+        feed.run();
+        assertThat("high-water mark", store.highWaterMark, is(START));
+    }
+
+    private static class InMemoryHighWaterMarkStore implements ChangeFeed.HighWaterMarkStore {
+        private Instant highWaterMark;
+
+        @Override
+        public Optional<Instant> load() {
+            return Optional.ofNullable(highWaterMark);
+        }
+
+        @Override
+        public void store(Instant highWaterMark) {
+            this.highWaterMark = highWaterMark;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo;
+
+import dk.dbc.rawrepo.dto.EnqueueResultCollectionDTO;
+import dk.dbc.rawrepo.queue.EnqueueScheduler;
+import dk.dbc.rawrepo.queue.QueueServiceConnector;
+import dk.dbc.rawrepo.queue.QueueServiceConnectorUnexpectedStatusCodeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EnqueueSchedulerTest {
+    @Test
+    void dispatchesByWeightedPriority() throws Exception {
+        final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final QueueServiceConnector connector = mock(QueueServiceConnector.class);
+        when(connector.enqueueRecord(anyInt(), anyString(), anyString(), any())).thenAnswer(invocation -> {
+            final String bibliographicRecordId = invocation.getArgument(1);
+            if ("block".equals(bibliographicRecordId)) {
+                blocked.await(10, TimeUnit.SECONDS);
+            } else {
+                sent.add(bibliographicRecordId);
+            }
+            return new EnqueueResultCollectionDTO();
+        });
+        final ExecutorService executorService = Executors.newCachedThreadPool();
+        try {
+            final EnqueueScheduler scheduler = new EnqueueScheduler(connector, executorService, 1)
+                    .withWeight(1, 3);
+            final QueueServiceConnector.EnqueueParams urgent = new QueueServiceConnector.EnqueueParams()
+                    .withPriority(1);
+            final List<CompletableFuture<EnqueueResultCollectionDTO>> results = new ArrayList<>();
+            results.add(scheduler.enqueueRecord(870970, "block", "bulk"));
+            for (String bulk : Arrays.asList("b1", "b2", "b3", "b4")) {
+                results.add(scheduler.enqueueRecord(870970, bulk, "bulk"));
+            }
+            for (String urgentId : Arrays.asList("u1", "u2", "u3")) {
+                results.add(scheduler.enqueueRecord(870970, urgentId, "urgent", urgent));
+            }
+            assertThat("in flight", scheduler.getInFlight(), is(1));
+            assertThat("queued bulk", scheduler.getQueued(EnqueueScheduler.DEFAULT_PRIORITY), is(4));
+            assertThat("queued urgent", scheduler.getQueued(1), is(3));
+
+            blocked.countDown();
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+            assertThat("dispatch order", sent, is(Arrays.asList("u1", "u2", "b1", "u3", "b2", "b3", "b4")));
+            assertThat("queued", scheduler.getQueued(), is(0));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsBeyondMaxQueued() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final QueueServiceConnector connector = mock(QueueServiceConnector.class);
+        when(connector.enqueueRecord(anyInt(), anyString(), anyString(), any())).thenAnswer(invocation -> {
+            blocked.await(10, TimeUnit.SECONDS);
+            return new EnqueueResultCollectionDTO();
+        });
+        final ExecutorService executorService = Executors.newCachedThreadPool();
+        try {
+            final EnqueueScheduler scheduler = new EnqueueScheduler(connector, executorService, 1)
+                    .withMaxQueued(2);
+            final List<CompletableFuture<EnqueueResultCollectionDTO>> results = new ArrayList<>();
+            for (String bibliographicRecordId : Arrays.asList("in-flight", "q1", "q2")) {
+                results.add(scheduler.enqueueRecord(870970, bibliographicRecordId, "bulk"));
+            }
+            final CompletableFuture<EnqueueResultCollectionDTO> rejected = scheduler.enqueueRecord(870970, "q3", "bulk");
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(10, TimeUnit.SECONDS));
+            assertThat("cause", e.getCause(), instanceOf(RejectedExecutionException.class));
+            assertThat("rejected", scheduler.getRejected(), is(1L));
+            assertThat("queued", scheduler.getQueued(), is(2));
+
+            blocked.countDown();
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+            assertThat("accepted once drained", scheduler.enqueueRecord(870970, "q4", "bulk")
+                    .get(10, TimeUnit.SECONDS), is(new EnqueueResultCollectionDTO()));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedRequestCompletesExceptionally() throws Exception {
+        final QueueServiceConnector connector = mock(QueueServiceConnector.class);
+        when(connector.enqueueRecord(anyInt(), anyString(), anyString(), any()))
+                .thenThrow(new QueueServiceConnectorUnexpectedStatusCodeException("bad request", 400));
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            final EnqueueScheduler scheduler = new EnqueueScheduler(connector, executorService, 2);
+            final CompletableFuture<EnqueueResultCollectionDTO> result = scheduler.enqueueRecord(870970, "50129691", "fbs-ph-update");
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            assertThat(e.getCause(), instanceOf(QueueServiceConnectorUnexpectedStatusCodeException.class));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
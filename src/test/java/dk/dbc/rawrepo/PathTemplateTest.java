@@ -0,0 +1,99 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo;
+
+import dk.dbc.httpclient.PathBuilder;
+import dk.dbc.rawrepo.client.PathTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PathTemplateTest {
+    private static final String TEMPLATE = "/api/v1/record/{agencyId}/{bibliographicRecordId}/content";
+    private static final int ITERATIONS = 10_000;
+
+    @Test
+    void bindGivesPathElementsOfPathBuilder() {
+        final PathTemplate pathTemplate = new PathTemplate(TEMPLATE);
+
+        assertThat(pathTemplate.bind("870970", "52880645"), is(pathBuilderElements("870970", "52880645")));
+        assertThat(new PathTemplate("api/v1/record/{bibliographicRecordId}/all-agencies-for").bind("52880645"),
+                is(new String[]{"api", "v1", "record", "52880645", "all-agencies-for"}));
+        assertThat(new PathTemplate("/api/v1/records/fetch/").elements(),
+                is(new String[]{"api", "v1", "records", "fetch"}));
+    }
+
+    @Test
+    void bindChecksNumberOfValues() {
+        final PathTemplate pathTemplate = new PathTemplate(TEMPLATE);
+
+        assertThrows(IllegalStateException.class, () -> pathTemplate.bind("870970"));
+        assertThrows(IllegalStateException.class, pathTemplate::elements);
+    }
+
+    @Test
+    void variableMustBeEntirePathSegment() {
+        assertThrows(IllegalArgumentException.class, () -> new PathTemplate("/api/v1/record/{agencyId}.json"));
+    }
+
+    @Test
+    void bindAllocatesLessThanPathBuilder() {
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final PathTemplate pathTemplate = new PathTemplate(TEMPLATE);
+
+        // warm up
+        bindPathTemplate(pathTemplate);
+        bindPathBuilder();
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        bindPathTemplate(pathTemplate);
+        final long pathTemplateBytes = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        before = threadMXBean.getThreadAllocatedBytes(threadId);
+        bindPathBuilder();
+        final long pathBuilderBytes = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertThat("bytes allocated by " + ITERATIONS + " path templates compared to path builders",
+                pathTemplateBytes, lessThan(pathBuilderBytes));
+    }
+
+    private static String[] pathBuilderElements(String agencyId, String bibliographicRecordId) {
+        final String[] elements = new PathBuilder(TEMPLATE)
+                .bind("agencyId", agencyId)
+                .bind("bibliographicRecordId", bibliographicRecordId)
+                .build();
+        return Arrays.stream(elements)
+                .filter(element -> !element.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static int bindPathTemplate(PathTemplate pathTemplate) {
+        int length = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            length += pathTemplate.bind("870970", "52880645").length;
+        }
+        return length;
+    }
+
+    private static int bindPathBuilder() {
+        int length = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            length += new PathBuilder(TEMPLATE)
+                    .bind("agencyId", "870970")
+                    .bind("bibliographicRecordId", "52880645")
+                    .build().length;
+        }
+        return length;
+    }
+}
@@ -1,6 +1,7 @@
 package dk.dbc.rawrepo;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 import dk.dbc.httpclient.HttpClient;
 import dk.dbc.rawrepo.dto.EnqueueAgencyResponseDTO;
 import dk.dbc.rawrepo.dto.EnqueueResultCollectionDTO;
@@ -9,20 +10,38 @@ import dk.dbc.rawrepo.dto.QueueProviderCollectionDTO;
 import dk.dbc.rawrepo.dto.QueueRuleCollectionDTO;
 import dk.dbc.rawrepo.dto.QueueRuleDTO;
 import dk.dbc.rawrepo.dto.QueueWorkerCollectionDTO;
+import dk.dbc.rawrepo.queue.EnqueueOutbox;
+import dk.dbc.rawrepo.queue.QueueMetadataCache;
 import dk.dbc.rawrepo.queue.QueueServiceConnector;
 import dk.dbc.rawrepo.queue.QueueServiceConnectorException;
+import dk.dbc.rawrepo.queue.QueueStatsPoller;
 import jakarta.ws.rs.client.Client;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -122,6 +141,56 @@ class QueueServiceConnectorTest {
         assertThat("worker list", actual.getWorkers(), is(expected));
     }
 
+    @Test
+    void getQueueMetadataFromCache() throws QueueServiceConnectorException {
+        final QueueMetadataCache cache = new QueueMetadataCache(Duration.ofMinutes(10), Duration.ofMinutes(1));
+        final QueueServiceConnector cachingConnector = QueueServiceConnector.builder(CLIENT, wireMockHost)
+                .withQueueMetadataCache(cache)
+                .build();
+
+        assertThat("queue rule count", cachingConnector.getQueueRules().getQueueRules().size(), is(33));
+        final List<QueueRuleDTO> rules = cachingConnector.getQueueRules("agency-delete");
+        assertThat("provider rule count", rules.size(), is(2));
+        assertThat("provider rule worker", rules.get(1).getWorker(), is("socl-sync"));
+        assertThat("unknown provider rules", cachingConnector.getQueueRules("no-such-provider").isEmpty(), is(true));
+        assertThat("known provider", cachingConnector.isQueueProvider("fbs-ph-update"), is(true));
+        assertThat("unknown provider", cachingConnector.isQueueProvider("no-such-provider"), is(false));
+        assertThat("known worker", cachingConnector.isQueueWorker("broend-sync"), is(true));
+        assertThat("unknown worker", cachingConnector.isQueueWorker("no-such-worker"), is(false));
+
+        assertThat("misses", cache.getMisses(), is(3L));
+        assertThat("hits", cache.getHits(), is(4L));
+    }
+
+    @Test
+    void previewEnqueue() throws QueueServiceConnectorException {
+        final Map<String, Long> expected = new TreeMap<>();
+        expected.put("broend-sync", 1200L);
+        expected.put("danbib-ph-libv3", 1200L);
+        expected.put("socl-sync", 1200L);
+        assertThat("record fan-out", connector.previewEnqueueRecords("fbs-ph-update", 1200, null), is(expected));
+
+        final QueueServiceConnector.EnqueueParams params = new QueueServiceConnector.EnqueueParams()
+                .withLeaf(false);
+        assertThat("head record fan-out", connector.previewEnqueueRecords("fbs-ph-update", 1200, params),
+                is(Collections.singletonMap("socl-sync", 1200L)));
+        assertThat("unknown provider", connector.previewEnqueueRecords("no-such-provider", 1200, null).isEmpty(), is(true));
+
+        assertThat("agency fan-out", connector.previewEnqueueAgency("socl-sync", 1200),
+                is(Collections.singletonMap("socl-sync", 1200L)));
+        assertThat("unknown worker", connector.previewEnqueueAgency("no-such-worker", 1200).isEmpty(), is(true));
+    }
+
+    @Test
+    void getQueueStats() throws QueueServiceConnectorException {
+        final QueueStatsPoller poller = new QueueStatsPoller(connector, 2);
+
+        final QueueStatsPoller.Snapshot snapshot = poller.sample();
+
+        assertThat("workers", snapshot.getWorkers(), is(Map.of("broend-sync", 12L, "ims-bulk-sync", 1L, "socl-sync", 4711L)));
+        assertThat("agencies", snapshot.getAgencies(), is(Map.of("710100", 1L, "870970", 4723L)));
+    }
+
     @Test
     void enqueueRecordNoParams() throws QueueServiceConnectorException {
         final List<EnqueueResultDTO> enqueueResults = new ArrayList<>();
@@ -152,6 +221,94 @@ class QueueServiceConnectorTest {
         assertThat("enqueue record result matches", actual, is(expected));
     }
 
+    @Test
+    void enqueueRecordThroughOutbox(@TempDir Path tempDir) throws IOException, InterruptedException {
+        final Path log = tempDir.resolve("enqueue.log");
+        try (EnqueueOutbox outbox = new EnqueueOutbox(connector, log)) {
+            outbox.enqueueRecord(870970, "50129691", "fbs-ph-update");
+            assertThat("appended", outbox.getAppended(), is(1L));
+            assertThat("not delivered before start", outbox.isDrained(), is(false));
+        }
+        try (EnqueueOutbox outbox = new EnqueueOutbox(connector, log)
+                .withMaxUnsynced(1)
+                .start()) {
+            outbox.enqueueRecord(870970, "50129691", "fbs-ph-update", new QueueServiceConnector.EnqueueParams()
+                    .withChanged(false)
+                    .withLeaf(true));
+            assertThat("drained", outbox.awaitDrained(Duration.ofSeconds(10)), is(true));
+            assertThat("delivered after reopen", outbox.getDelivered(), is(2L));
+            assertThat("failures", outbox.getFailures(), is(0L));
+        }
+        try (EnqueueOutbox outbox = new EnqueueOutbox(connector, log)) {
+            assertThat("nothing left after reopen", outbox.isDrained(), is(true));
+        }
+    }
+
+    @Test
+    void enqueueRecordThroughOutboxOutlastingOutage(@TempDir Path tempDir) throws IOException, InterruptedException {
+        final String url = "/api/v1/queue/870970/outage/fbs-ph-update";
+        final int outage = 12;
+        for (int attempt = 0; attempt < outage; attempt++) {
+            stubFor(post(urlPathEqualTo(url))
+                    .inScenario("outage")
+                    .whenScenarioStateIs(attempt == 0 ? Scenario.STARTED : "attempt-" + attempt)
+                    .willSetStateTo("attempt-" + (attempt + 1))
+                    .willReturn(aResponse().withStatus(503)));
+        }
+        stubFor(post(urlPathEqualTo(url))
+                .inScenario("outage")
+                .whenScenarioStateIs("attempt-" + outage)
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("body-api-v1-queue-870970-50129691-fbs-ph-update-67Tli.json")));
+
+        try (EnqueueOutbox outbox = new EnqueueOutbox(connector, tempDir.resolve("enqueue.log"))
+                .withRetryDelay(Duration.ofMillis(1), Duration.ofMillis(1))
+                .start()) {
+            outbox.enqueueRecord(870970, "outage", "fbs-ph-update");
+            assertThat("drained", outbox.awaitDrained(Duration.ofSeconds(10)), is(true));
+            assertThat("delivered", outbox.getDelivered(), is(1L));
+            assertThat("failures", outbox.getFailures(), is((long) outage));
+            assertThat("dead-lettered", outbox.getDeadLettered(), is(0L));
+        }
+        verify(outage + 1, postRequestedFor(urlPathEqualTo(url)));
+        assertThat("no dead letters", Files.exists(tempDir.resolve("enqueue.log.dead")), is(false));
+    }
+
+    @Test
+    void enqueueRecordThroughOutboxDeadLetters(@TempDir Path tempDir) throws IOException, InterruptedException {
+        stubFor(post(urlPathEqualTo("/api/v1/queue/870970/rejected/fbs-ph-update"))
+                .willReturn(aResponse().withStatus(422)));
+        stubFor(post(urlPathEqualTo("/api/v1/queue/870970/unavailable/fbs-ph-update"))
+                .willReturn(aResponse().withStatus(502)));
+        final Path log = tempDir.resolve("enqueue.log");
+        Files.write(log, "not an entry\n".getBytes(StandardCharsets.UTF_8));
+
+        try (EnqueueOutbox outbox = new EnqueueOutbox(connector, log)
+                .withMaxAttempts(2)
+                .withRetryDelay(Duration.ofMillis(1), Duration.ofMillis(1))
+                .start()) {
+            outbox.enqueueRecord(870970, "rejected", "fbs-ph-update");
+            outbox.enqueueRecord(870970, "unavailable", "fbs-ph-update");
+            outbox.enqueueRecord(870970, "50129691", "fbs-ph-update", new QueueServiceConnector.EnqueueParams()
+                    .withChanged(false)
+                    .withLeaf(true));
+            assertThat("drained", outbox.awaitDrained(Duration.ofSeconds(10)), is(true));
+            assertThat("delivered", outbox.getDelivered(), is(1L));
+            assertThat("rejected", outbox.getRejected(), is(1L));
+            assertThat("failures", outbox.getFailures(), is(2L));
+            assertThat("dead-lettered", outbox.getDeadLettered(), is(3L));
+        }
+        // Each attempt is sent once, without the retries of the connector
+        verify(2, postRequestedFor(urlPathEqualTo("/api/v1/queue/870970/unavailable/fbs-ph-update")));
+        final List<String> deadLetters = Files.readAllLines(tempDir.resolve("enqueue.log.dead"));
+        assertThat(deadLetters, is(Arrays.asList(
+                "not an entry",
+                "870970 rejected fbs-ph-update ",
+                "870970 unavailable fbs-ph-update ")));
+    }
+
     @Test
     void enqueueAgencyNoParams() throws QueueServiceConnectorException {
         EnqueueAgencyResponseDTO actual = connector.enqueueAgency(870970, "socl-sync");
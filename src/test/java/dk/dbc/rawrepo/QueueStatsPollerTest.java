@@ -0,0 +1,93 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo;
+
+import dk.dbc.rawrepo.dto.QueueStatDTO;
+import dk.dbc.rawrepo.queue.QueueServiceConnector;
+import dk.dbc.rawrepo.queue.QueueServiceConnectorException;
+import dk.dbc.rawrepo.queue.QueueStatsPoller;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QueueStatsPollerTest {
+    @Test
+    void emptyStatsHaveNoQueues() throws QueueServiceConnectorException {
+        final QueueServiceConnector connector = mock(QueueServiceConnector.class);
+        when(connector.getQueueWorkerStats()).thenReturn(new QueueStatDTO());
+        when(connector.getQueueAgencyStats()).thenReturn(new QueueStatDTO());
+        final QueueStatsPoller poller = new QueueStatsPoller(connector, 2);
+
+        final QueueStatsPoller.Snapshot snapshot = poller.sample();
+
+        assertThat("workers", snapshot.getWorkers().isEmpty(), is(true));
+        assertThat("agencies", snapshot.getAgencies().isEmpty(), is(true));
+    }
+
+    @Test
+    void estimatesRatesAndTimeToDrain() throws Exception {
+        final QueueServiceConnector connector = mock(QueueServiceConnector.class);
+        when(connector.getQueueWorkerStats()).thenReturn(new QueueStatDTO());
+        when(connector.getQueueAgencyStats()).thenReturn(new QueueStatDTO());
+        final Iterator<Map<String, Long>> counts = Arrays.asList(
+                Map.of("socl-sync", 300L, "broend-sync", 10L), Map.of("870970", 310L),
+                Map.of("socl-sync", 200L, "broend-sync", 20L), Map.of("870970", 220L),
+                Map.of("socl-sync", 100L, "broend-sync", 30L), Map.of("870970", 130L),
+                Map.of("socl-sync", 50L, "broend-sync", 40L), Map.of("870970", 90L)).iterator();
+        final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+        final QueueStatsPoller poller = new QueueStatsPoller(connector, 3)
+                .withClock(clock)
+                .withCounts(stats -> counts.next());
+
+        assertThat("no estimate before samples", poller.getRate(QueueStatsPoller.Dimension.WORKER, "socl-sync"),
+                is(OptionalDouble.empty()));
+        for (int i = 0; i < 3; i++) {
+            poller.run();
+            clock.tick(Duration.ofSeconds(10));
+        }
+        assertThat("draining rate", poller.getRate(QueueStatsPoller.Dimension.WORKER, "socl-sync"),
+                is(OptionalDouble.of(-10.0)));
+        assertThat("growing rate", poller.getRate(QueueStatsPoller.Dimension.WORKER, "broend-sync"),
+                is(OptionalDouble.of(1.0)));
+        assertThat("time to drain", poller.getTimeToDrain(QueueStatsPoller.Dimension.WORKER, "socl-sync"),
+                is(Optional.of(Duration.ofSeconds(10))));
+        assertThat("growing queue does not drain", poller.getTimeToDrain(QueueStatsPoller.Dimension.WORKER, "broend-sync"),
+                is(Optional.empty()));
+        assertThat("agency time to drain", poller.getTimeToDrain(QueueStatsPoller.Dimension.AGENCY, "870970"),
+                is(Optional.of(Duration.ofMillis(14444))));
+        assertThat("absent queue is empty", poller.getTimeToDrain(QueueStatsPoller.Dimension.AGENCY, "191919"),
+                is(Optional.of(Duration.ZERO)));
+
+        poller.run();
+        assertThat("ring buffer capacity", poller.getSnapshots().size(), is(3));
+        assertThat("eldest evicted", poller.getSnapshots().get(0).getCount(QueueStatsPoller.Dimension.WORKER, "socl-sync"),
+                is(200L));
+        assertThat("samples", poller.getSamples(), is(4L));
+    }
+
+    @Test
+    void failedPollIsCounted() throws Exception {
+        final QueueServiceConnector connector = mock(QueueServiceConnector.class);
+        when(connector.getQueueWorkerStats()).thenThrow(new QueueServiceConnectorException("unavailable"));
+        final QueueStatsPoller poller = new QueueStatsPoller(connector, 2);
+
+        poller.run();
+
+        assertThat("failures", poller.getFailures(), is(1L));
+        assertThat("snapshots", poller.getSnapshots().isEmpty(), is(true));
+    }
+}
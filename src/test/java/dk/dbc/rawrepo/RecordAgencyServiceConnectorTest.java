@@ -4,6 +4,7 @@ import com.github.tomakehurst.wiremock.WireMockServer;
 import dk.dbc.httpclient.HttpClient;
 import dk.dbc.rawrepo.agency.RecordAgencyServiceConnector;
 import dk.dbc.rawrepo.agency.RecordAgencyServiceConnectorException;
+import dk.dbc.rawrepo.client.Bulkhead;
 import dk.dbc.rawrepo.dto.RecordIdCollectionDTO;
 import dk.dbc.rawrepo.dto.RecordIdDTO;
 import jakarta.ws.rs.client.Client;
@@ -13,12 +14,14 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.Arrays;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class RecordAgencyServiceConnectorTest {
     private static WireMockServer wireMockServer;
@@ -74,4 +77,18 @@ class RecordAgencyServiceConnectorTest {
 
         assertThat(actual.getRecordIds().size(), is(0));
     }
+
+    @Test
+    void callGetAllAgenciesWithBulkhead() throws RecordAgencyServiceConnectorException {
+        final Bulkhead bulkhead = new Bulkhead("agency", 1, 0, Duration.ZERO);
+        final RecordAgencyServiceConnector bulkheadConnector = RecordAgencyServiceConnector.builder(CLIENT, wireMockHost)
+                .withBulkhead(bulkhead)
+                .build();
+        assertThat("permit taken", bulkhead.acquire(), is(true));
+        assertThrows(RecordAgencyServiceConnectorException.class, bulkheadConnector::getAllAgencies);
+        assertThat("rejected", bulkhead.getRejected(), is(1L));
+        bulkhead.release();
+        assertThat(bulkheadConnector.getAllAgencies().length, is(12));
+        assertThat("active", bulkhead.getActive(), is(0));
+    }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.dbc.rawrepo.client.RecordDTOReader;
+import dk.dbc.rawrepo.client.RecordView;
+import dk.dbc.rawrepo.dto.RecordCollectionDTOv2;
+import dk.dbc.rawrepo.dto.RecordDTO;
+import jakarta.ws.rs.core.MediaType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RecordDTOReaderTest {
+    private static final Path FILES = Paths.get("src", "test", "resources", "__files");
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int ITERATIONS = 100;
+
+    @Test
+    void readRecordLikeDataBinding() throws IOException {
+        final byte[] json = Files.readAllBytes(
+                FILES.resolve("body-870970-44783851-2015-03-16T23_35_30.467032Z.json"));
+
+        final RecordDTO expected = OBJECT_MAPPER.readValue(json, RecordDTO.class);
+        final RecordDTO record = RecordDTOReader.read(json, RecordDTO.class);
+
+        assertRecord(record, expected);
+    }
+
+    @Test
+    void readRecordCollectionLikeDataBinding() throws IOException {
+        final byte[] json = Files.readAllBytes(FILES.resolve("body-api-v1-records-fetch-aeD1o.json"));
+
+        final RecordCollectionDTOv2 expected = OBJECT_MAPPER.readValue(json, RecordCollectionDTOv2.class);
+        final RecordCollectionDTOv2 collection = RecordDTOReader.read(json, RecordCollectionDTOv2.class);
+
+        assertThat("found", collection.getFound().size(), is(expected.getFound().size()));
+        for (int i = 0; i < expected.getFound().size(); i++) {
+            assertRecord(collection.getFound().get(i), expected.getFound().get(i));
+        }
+        assertThat("missing", collection.getMissing(), is(expected.getMissing()));
+    }
+
+    @Test
+    void readRecordViewDecodesContentOnAccess() throws IOException {
+        final byte[] json = Files.readAllBytes(
+                FILES.resolve("body-870970-44783851-2015-03-16T23_35_30.467032Z.json"));
+
+        final RecordDTO expected = OBJECT_MAPPER.readValue(json, RecordDTO.class);
+        final RecordView view = RecordDTOReader.read(json, RecordView.class);
+
+        assertThat("content not decoded", view.isContentDecoded(), is(false));
+        assertThat("modified", view.getModified(), is(expected.getModified()));
+        assertThat("content not decoded by meta access", view.isContentDecoded(), is(false));
+        assertRecord(view.toRecordDTO(), expected);
+        assertThat("content decoded", view.isContentDecoded(), is(true));
+        assertThat("content decoded once", view.getContent() == view.getContent(), is(true));
+    }
+
+    @Test
+    void readFromEntityStream() throws IOException {
+        final byte[] json = Files.readAllBytes(
+                FILES.resolve("body-870970-44783851-2015-03-16T23_35_30.467032Z.json"));
+        final RecordDTOReader.Record reader = new RecordDTOReader.Record();
+
+        assertThat("readable", reader.isReadable(RecordDTO.class, RecordDTO.class, new Annotation[0],
+                MediaType.APPLICATION_JSON_TYPE), is(true));
+        assertThat("view not readable", reader.isReadable(RecordView.class, RecordView.class, new Annotation[0],
+                MediaType.APPLICATION_JSON_TYPE), is(false));
+
+        final ClosingInputStream entityStream = new ClosingInputStream(json);
+        final RecordDTO record = reader.readFrom(RecordDTO.class, RecordDTO.class, new Annotation[0],
+                MediaType.APPLICATION_JSON_TYPE, null, entityStream);
+
+        assertRecord(record, OBJECT_MAPPER.readValue(json, RecordDTO.class));
+        assertThat("entity stream left for the client to close", entityStream.closed, is(false));
+    }
+
+    @Test
+    void readFromEmptyEntityStream() throws IOException {
+        final RecordDTO record = new RecordDTOReader.Record().readFrom(RecordDTO.class, RecordDTO.class,
+                new Annotation[0], MediaType.APPLICATION_JSON_TYPE, null, new ByteArrayInputStream(new byte[0]));
+
+        assertThat(record, is(nullValue()));
+    }
+
+    @Test
+    void readRecordAllocatesNoMoreThanDataBinding() throws IOException {
+        final byte[] json = Files.readAllBytes(FILES.resolve("body-870970-52880645-wjHCk.json"));
+
+        final long dataBinding = allocatedBytes(() -> OBJECT_MAPPER.readValue(json, RecordDTO.class));
+        final long streaming = allocatedBytes(() -> RecordDTOReader.read(json, RecordDTO.class));
+
+        // Content and contentJSON dominate, the rest of the record must not add to them
+        assertThat("bytes allocated per record", streaming / ITERATIONS, lessThan(dataBinding / ITERATIONS + 256));
+    }
+
+    @Test
+    void readRecordViewAllocatesLessThanDataBinding() throws IOException {
+        final byte[] json = Files.readAllBytes(FILES.resolve("body-870970-52880645-wjHCk.json"));
+
+        final long dataBinding = allocatedBytes(() -> OBJECT_MAPPER.readValue(json, RecordDTO.class));
+        final long view = allocatedBytes(() -> RecordDTOReader.read(json, RecordView.class));
+
+        // Content is kept encoded and contentJSON is skipped
+        assertThat("bytes allocated per record", view / ITERATIONS, lessThan(dataBinding / ITERATIONS / 2));
+    }
+
+    @Test
+    void unsupportedType() {
+        assertThat(RecordDTOReader.isSupported(String.class), is(false));
+        assertThrows(IllegalArgumentException.class, () -> RecordDTOReader.read("{}".getBytes(), String.class));
+    }
+
+    /* Bytes allocated by the current thread reading ITERATIONS times, after a warm up run */
+    private static long allocatedBytes(Read read) {
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final Runnable task = () -> {
+            try {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    read.read();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        task.run();
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        task.run();
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static void assertRecord(RecordDTO record, RecordDTO expected) {
+        assertThat("recordId", record.getRecordId(), is(expected.getRecordId()));
+        assertThat("deleted", record.isDeleted(), is(expected.isDeleted()));
+        assertThat("mimetype", record.getMimetype(), is(expected.getMimetype()));
+        assertThat("created", record.getCreated(), is(expected.getCreated()));
+        assertThat("modified", record.getModified(), is(expected.getModified()));
+        assertThat("trackingId", record.getTrackingId(), is(expected.getTrackingId()));
+        assertThat("enrichmentTrail", record.getEnrichmentTrail(), is(expected.getEnrichmentTrail()));
+        assertThat("content", record.getContent(), notNullValue());
+        assertThat("content", record.getContent(), is(expected.getContent()));
+    }
+
+    @FunctionalInterface
+    private interface Read {
+        Object read() throws IOException;
+    }
+
+    private static class ClosingInputStream extends ByteArrayInputStream {
+        private boolean closed;
+
+        ClosingInputStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
@@ -18,14 +18,17 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class RecordDumpServiceConnectorTest {
     private static WireMockServer wireMockServer;
@@ -74,6 +77,18 @@ class RecordDumpServiceConnectorTest {
                 params.getAgencies().isPresent(), is(false));
     }
 
+    @Test
+    void frozenParamsCopyCollections() {
+        final List<Integer> agencies = new ArrayList<>(Collections.singletonList(710100));
+        final RecordDumpServiceConnector.AgencyParams frozen = new RecordDumpServiceConnector.AgencyParams()
+                .withAgencies(agencies)
+                .freeze();
+        agencies.add(870970);
+        assertThat("not changed through the original list",
+                frozen.getAgencies().get(), is(Collections.singletonList(710100)));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.getAgencies().get().add(870970));
+    }
+
     @Test
     void callDumpAgencyDryRun() throws RecordDumpServiceConnectorException, IOException {
         RecordDumpServiceConnector.AgencyParams params = new RecordDumpServiceConnector.AgencyParams()
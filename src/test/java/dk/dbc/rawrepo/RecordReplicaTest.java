@@ -0,0 +1,141 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo;
+
+import dk.dbc.commons.jsonb.JSONBContext;
+import dk.dbc.commons.jsonb.JSONBException;
+import dk.dbc.rawrepo.dto.RecordDTO;
+import dk.dbc.rawrepo.dto.RecordIdDTO;
+import dk.dbc.rawrepo.record.RecordReplica;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+class RecordReplicaTest {
+    private static final int SEGMENT_SIZE = 1024;
+    private static final Duration MAX_STALENESS = Duration.ofHours(1);
+
+    @Test
+    void compactDropsRemovedAndSupersededEntries(@TempDir Path tempDir) throws IOException {
+        final Path replicaFile = tempDir.resolve("records.replica");
+        try (RecordReplica recordReplica = new RecordReplica(replicaFile, null, MAX_STALENESS, SEGMENT_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                recordReplica.put("870970", "52880645", record("52880645"));
+            }
+            recordReplica.put("870970", "44783851", record("44783851"));
+            recordReplica.remove("870970", "44783851");
+            final long size = Files.size(replicaFile);
+
+            recordReplica.compact();
+
+            assertThat("compactions", recordReplica.getCompactions(), is(1L));
+            assertThat("garbage", recordReplica.getGarbageBytes(), is(0L));
+            assertThat("file size", Files.size(replicaFile), lessThan(size));
+            assertThat("size", recordReplica.size(), is(1));
+            assertThat("compacted record", recordReplica.get("870970", "52880645"), is(notNullValue()));
+            recordReplica.put("870970", "38519387", record("38519387"));
+        }
+        try (RecordReplica reopened = new RecordReplica(replicaFile, null, MAX_STALENESS)) {
+            assertThat("size after reopen", reopened.size(), is(2));
+            assertThat("removed record", reopened.get("870970", "44783851"), is(nullValue()));
+            assertThat("record stored after compaction", reopened.get("870970", "38519387"), is(notNullValue()));
+        }
+        assertThat("compacted file moved in place", Files.exists(tempDir.resolve("records.replica.compact")), is(false));
+    }
+
+    @Test
+    void compactedWhenOpenedWithMoreGarbageThanRecords(@TempDir Path tempDir) throws IOException {
+        final Path replicaFile = tempDir.resolve("records.replica");
+        try (RecordReplica recordReplica = new RecordReplica(replicaFile, null, MAX_STALENESS, SEGMENT_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                recordReplica.put("870970", "52880645", record("52880645"));
+            }
+        }
+        try (RecordReplica reopened = new RecordReplica(replicaFile, null, MAX_STALENESS)) {
+            assertThat("compactions", reopened.getCompactions(), is(1L));
+            assertThat("file size", Files.size(replicaFile), is((long) SEGMENT_SIZE));
+            assertThat("size", reopened.size(), is(1));
+        }
+    }
+
+    @Test
+    void corruptEntryClearsReplica(@TempDir Path tempDir) throws IOException {
+        final Path replicaFile = tempDir.resolve("records.replica");
+        try (RecordReplica recordReplica = new RecordReplica(replicaFile, null, MAX_STALENESS, SEGMENT_SIZE)) {
+            recordReplica.put("870970", "52880645", record("52880645"));
+            recordReplica.put("870970", "44783851", record("44783851"));
+        }
+        // Flips a byte of the data of the first entry, after the file header and the entry header and key
+        overwrite(replicaFile, 12 + 20 + "870970:52880645".length() + 10, (byte) 42);
+
+        try (RecordReplica reopened = new RecordReplica(replicaFile, null, MAX_STALENESS)) {
+            assertThat("size", reopened.size(), is(0));
+            reopened.put("870970", "52880645", record("52880645"));
+        }
+        try (RecordReplica reopened = new RecordReplica(replicaFile, null, MAX_STALENESS)) {
+            assertThat("size after rebuild", reopened.size(), is(1));
+        }
+    }
+
+    @Test
+    void interruptedWriteIsCleared(@TempDir Path tempDir) throws IOException, JSONBException {
+        final Path replicaFile = tempDir.resolve("records.replica");
+        try (RecordReplica recordReplica = new RecordReplica(replicaFile, null, MAX_STALENESS, SEGMENT_SIZE)) {
+            recordReplica.put("870970", "52880645", record("52880645", 128));
+            recordReplica.put("870970", "44783851", record("44783851", 128));
+        }
+        // Unmarks the second entry as complete, like a write interrupted before its key length
+        final long secondEntry = 12 + 20 + "870970:52880645".length() + marshalledSize(record("52880645", 128));
+        overwrite(replicaFile, secondEntry, (byte) 0, (byte) 0, (byte) 0, (byte) 0);
+
+        try (RecordReplica reopened = new RecordReplica(replicaFile, null, MAX_STALENESS)) {
+            assertThat("size", reopened.size(), is(1));
+            // A smaller entry leaves the tail of the interrupted one after it unless cleared
+            reopened.put("870970", "38519387", record("38519387", 16));
+            reopened.force();
+        }
+        try (RecordReplica reopened = new RecordReplica(replicaFile, null, MAX_STALENESS)) {
+            assertThat("size after write", reopened.size(), is(2));
+            assertThat("record written after interrupted write", reopened.get("870970", "38519387"), is(notNullValue()));
+        }
+    }
+
+    private static RecordDTO record(String bibliographicRecordId) {
+        return record(bibliographicRecordId, 256);
+    }
+
+    private static RecordDTO record(String bibliographicRecordId, int contentLength) {
+        final RecordDTO record = new RecordDTO();
+        record.setRecordId(new RecordIdDTO(bibliographicRecordId, 870970));
+        record.setMimetype("text/marcxchange");
+        record.setContent(new byte[contentLength]);
+        return record;
+    }
+
+    private static int marshalledSize(RecordDTO record) throws JSONBException {
+        return new JSONBContext().marshall(record).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void overwrite(Path file, long position, byte... bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+}
@@ -1,19 +1,41 @@
 package dk.dbc.rawrepo;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 import dk.dbc.commons.jsonb.JSONBContext;
 import dk.dbc.commons.jsonb.JSONBException;
+import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.httpclient.HttpClient;
+import dk.dbc.rawrepo.client.BufferPool;
+import dk.dbc.rawrepo.client.Bulkhead;
+import dk.dbc.rawrepo.client.ClientFactory;
+import dk.dbc.rawrepo.client.ClientSettings;
+import dk.dbc.rawrepo.client.Deadline;
+import dk.dbc.rawrepo.client.LoadBalancer;
+import dk.dbc.rawrepo.client.RecordDTOFeature;
+import dk.dbc.rawrepo.client.RecordView;
+import dk.dbc.rawrepo.client.TransferStatistics;
 import dk.dbc.rawrepo.dto.RecordCollectionDTOv2;
 import dk.dbc.rawrepo.dto.RecordDTO;
 import dk.dbc.rawrepo.dto.RecordEntryDTO;
 import dk.dbc.rawrepo.dto.RecordHistoryCollectionDTO;
 import dk.dbc.rawrepo.dto.RecordHistoryDTO;
 import dk.dbc.rawrepo.dto.RecordIdDTO;
+import dk.dbc.rawrepo.record.HedgingPolicy;
+import dk.dbc.rawrepo.record.PrefetchPolicy;
+import dk.dbc.rawrepo.record.RecordCache;
+import dk.dbc.rawrepo.record.RecordReplica;
 import dk.dbc.rawrepo.record.RecordServiceConnector;
 import dk.dbc.rawrepo.record.RecordServiceConnectorException;
+import dk.dbc.rawrepo.record.RecordServiceConnectorFactory;
 import dk.dbc.rawrepo.record.RecordServiceConnectorNoContentStatusCodeException;
+import dk.dbc.rawrepo.record.RecordServiceConnectorTimeoutException;
+import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+import net.jodah.failsafe.RetryPolicy;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.hamcrest.Matchers;
@@ -21,16 +43,45 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
-
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -78,6 +129,36 @@ class RecordServiceConnectorTest {
                 params.getAllowDeleted().isPresent(), is(false));
     }
 
+    @Test
+    void frozenParams() {
+        final RecordServiceConnector.Params params = new RecordServiceConnector.Params()
+                .withMode(RecordServiceConnector.Params.Mode.MERGED)
+                .withAllowDeleted(true);
+        final RecordServiceConnector.Params frozen = params.freeze();
+        assertThat("frozen", frozen.isFrozen(), is(true));
+        assertThat("original not frozen", params.isFrozen(), is(false));
+        assertThat("equal to original", frozen, is(params));
+        assertThat("hash code", frozen.hashCode(), is(params.hashCode()));
+        assertThat("equal to same params frozen", new RecordServiceConnector.Params()
+                .withAllowDeleted(true)
+                .withMode(RecordServiceConnector.Params.Mode.MERGED)
+                .freeze(), is(frozen));
+        assertThat("query string", frozen.toQueryString(), is("allow-deleted=true&mode=merged"));
+        assertThat("param value", frozen.getMode().get(), is(RecordServiceConnector.Params.Mode.MERGED));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.withAllowDeleted(false));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.entrySet().iterator().next().setValue(false));
+        assertThrows(UnsupportedOperationException.class, frozen::clear);
+    }
+
+    @Test
+    void callRecordExistsWithFrozenParams() throws RecordServiceConnectorException {
+        final RecordServiceConnector.Params params = new RecordServiceConnector.Params()
+                .withAllowDeleted(true)
+                .freeze();
+        assertThat(connector.recordExists("870979", "NoSuchRecord", params),
+                is(false));
+    }
+
     @Test
     void callRecordExistsForExistingRecord() throws RecordServiceConnectorException {
         assertThat(connector.recordExists("870979", "68135699"),
@@ -150,6 +231,47 @@ class RecordServiceConnectorTest {
                 is(expected.getBytes()));
     }
 
+    @Test
+    void callGetRecordContentCollectionStreamed() throws RecordServiceConnectorException, IOException {
+        final byte[] expected = connector.getRecordContentCollection("870979", "68135699");
+
+        try (InputStream stream = connector.getRecordContentCollectionStream("870979", "68135699", null)) {
+            assertThat("stream", stream.readAllBytes(), is(expected));
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long written = connector.getRecordContentCollection("870979", "68135699", null,
+                Channels.newChannel(out));
+        assertThat("written", written, is((long) expected.length));
+        assertThat("channel", out.toByteArray(), is(expected));
+
+        final ByteBuffer buffer = connector.getRecordContentCollection("870979", "68135699", null,
+                ByteBuffer.allocate(16));
+        final byte[] buffered = new byte[buffer.remaining()];
+        buffer.get(buffered);
+        assertThat("buffer", buffered, is(expected));
+    }
+
+    @Test
+    void callLeaseRecordContentCollection() throws RecordServiceConnectorException {
+        final byte[] expected = connector.getRecordContentCollection("870979", "68135699");
+        final BufferPool bufferPool = new BufferPool(1 << 20, 4);
+        final RecordServiceConnector pooledConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                .withBufferPool(bufferPool)
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            try (BufferPool.Lease lease = pooledConnector.leaseRecordContentCollection("870979", "68135699", null)) {
+                final ByteBuffer buffer = lease.getBuffer();
+                final byte[] content = new byte[buffer.remaining()];
+                buffer.get(content);
+                assertThat("content", content, is(expected));
+            }
+        }
+        assertThat("reused", bufferPool.getReused(), is(1L));
+        assertThat("idle", bufferPool.getIdle(), is(1));
+    }
+
     @Test
     void callGetRecordContentCollection() throws RecordServiceConnectorException {
         final String expected = "<?xml version='1.0' encoding='UTF-8'?>\n" +
@@ -283,6 +405,554 @@ class RecordServiceConnectorTest {
         assertThat(record.getEnrichmentTrail(), is("870970"));
     }
 
+    @Test
+    void callGetRecordDataBulk() throws RecordServiceConnectorException {
+        final List<RecordIdDTO> recordIds = stubBulkRecords(4, 200);
+        final ExecutorService executorService = Executors.newCachedThreadPool();
+        try {
+            final RecordServiceConnector bulkConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                    .withExecutorService(executorService)
+                    .withFanOutParallelism(2)
+                    .build();
+            final long start = System.nanoTime();
+            final Map<RecordIdDTO, RecordDTO> records = bulkConnector.getRecordDataBulk(recordIds, null);
+            final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            assertThat("order", new ArrayList<>(records.keySet()), is(recordIds));
+            for (RecordDTO record : records.values()) {
+                assertThat(new String(record.getContent()), containsString("lokomotivmænd i krig"));
+            }
+            assertThat("at most two requests at a time", elapsed.compareTo(Duration.ofMillis(400)) >= 0, is(true));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void callGetRecordDataBulkWithoutExecutor() throws RecordServiceConnectorException {
+        final List<RecordIdDTO> recordIds = stubBulkRecords(2, 0);
+        final Map<RecordIdDTO, RecordDTO> records = connector.getRecordDataBulk(recordIds, null);
+        assertThat("order", new ArrayList<>(records.keySet()), is(recordIds));
+    }
+
+    @Test
+    void executorModeDefault() {
+        assertThat(ClientFactory.newExecutorService(new ClientSettings()), is(nullValue()));
+    }
+
+    @Test
+    void executorModeVirtual() throws RecordServiceConnectorException {
+        final ClientSettings settings = new ClientSettings()
+                .withExecutorMode(ClientSettings.ExecutorMode.VIRTUAL)
+                .withFanOutParallelism(2);
+        if (!hasVirtualThreads()) {
+            assertThrows(IllegalStateException.class, () -> ClientFactory.newExecutorService(settings));
+            assertThrows(IllegalStateException.class, () -> RecordServiceConnectorFactory.create(
+                    wireMockHost, RecordServiceConnector.TimingLogLevel.INFO, settings));
+            return;
+        }
+        final List<RecordIdDTO> recordIds = stubBulkRecords(4, 0);
+        final RecordServiceConnector virtualConnector = RecordServiceConnectorFactory.create(
+                wireMockHost, RecordServiceConnector.TimingLogLevel.INFO, settings);
+        try {
+            final Map<RecordIdDTO, RecordDTO> records = virtualConnector.getRecordDataBulk(recordIds, null);
+            assertThat("order", new ArrayList<>(records.keySet()), is(recordIds));
+        } finally {
+            virtualConnector.close();
+        }
+    }
+
+    @Test
+    void callGetRecordDataWithPooledTransport() throws RecordServiceConnectorException {
+        final ClientSettings settings = new ClientSettings()
+                .withTransport(ClientSettings.Transport.POOLED)
+                .withMaxConnectionsPerRoute(1)
+                .withReadTimeoutMs(5000);
+        final RecordServiceConnector pooledConnector = RecordServiceConnectorFactory.create(
+                wireMockHost, RecordServiceConnector.TimingLogLevel.INFO, settings);
+        try {
+            // A single pooled connection, so every request reuses the connection of the previous one
+            for (int i = 0; i < 3; i++) {
+                final RecordDTO record = pooledConnector.getRecordData("870970", "52880645");
+                assertThat(new String(record.getContent()), containsString("lokomotivmænd i krig"));
+            }
+        } finally {
+            pooledConnector.close();
+        }
+    }
+
+    @Test
+    void pooledTransportReadTimeout() {
+        stubFor(get(urlEqualTo("/api/v1/record/870970/pooled-read-timeout"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("body-870970-52880645-wjHCk.json")
+                        .withFixedDelay(2000)));
+        final ClientSettings settings = new ClientSettings()
+                .withTransport(ClientSettings.Transport.POOLED)
+                .withReadTimeoutMs(200);
+        final Client client = ClientFactory.newClient(settings);
+        final RecordServiceConnector pooledConnector = RecordServiceConnector.builder(
+                FailSafeHttpClient.create(client, new RetryPolicy<Response>().withMaxRetries(0)), wireMockHost)
+                .build();
+        try {
+            final ProcessingException e = assertThrows(ProcessingException.class,
+                    () -> pooledConnector.getRecordData("870970", "pooled-read-timeout"));
+            assertThat(e.getCause(), is(instanceOf(SocketTimeoutException.class)));
+        } finally {
+            pooledConnector.close();
+        }
+    }
+
+    @Test
+    void http2TransportGetAndPost() throws RecordServiceConnectorException {
+        final ClientSettings settings = new ClientSettings()
+                .withTransport(ClientSettings.Transport.HTTP2)
+                .withReadTimeoutMs(5000);
+        final RecordServiceConnector http2Connector = RecordServiceConnectorFactory.create(
+                wireMockHost, RecordServiceConnector.TimingLogLevel.INFO, settings);
+        try {
+            final RecordDTO record = http2Connector.getRecordData("870970", "52880645");
+            assertThat(new String(record.getContent()), containsString("lokomotivmænd i krig"));
+
+            final List<RecordIdDTO> recordIds = new ArrayList<>();
+            recordIds.add(new RecordIdDTO("55103461", 870970));
+            recordIds.add(new RecordIdDTO("54936931", 870970));
+            recordIds.add(new RecordIdDTO("missing", 123456));
+            final RecordCollectionDTOv2 fetched = http2Connector.fetchRecordList(recordIds);
+            assertThat("found", fetched.getFound().size(), is(2));
+            assertThat("missing", fetched.getMissing().size(), is(1));
+        } finally {
+            http2Connector.close();
+        }
+    }
+
+    @Test
+    void http2TransportSendsHeadersSetWhileWritingEntity() throws RecordServiceConnectorException {
+        final ClientSettings settings = new ClientSettings()
+                .withTransport(ClientSettings.Transport.HTTP2)
+                .withReadTimeoutMs(5000);
+        final Client client = ClientFactory.newClient(settings)
+                .register(EntityWrittenHeaderInterceptor.class);
+        final RecordServiceConnector http2Connector = RecordServiceConnector.builder(
+                FailSafeHttpClient.create(client, new RetryPolicy<Response>().withMaxRetries(0)), wireMockHost)
+                .build();
+        try {
+            final List<RecordIdDTO> recordIds = new ArrayList<>();
+            recordIds.add(new RecordIdDTO("55103461", 870970));
+            recordIds.add(new RecordIdDTO("54936931", 870970));
+            recordIds.add(new RecordIdDTO("missing", 123456));
+            http2Connector.fetchRecordList(recordIds);
+            verify(postRequestedFor(urlEqualTo("/api/v1/records/fetch/"))
+                    .withHeader("X-Entity-Written", equalTo("true")));
+        } finally {
+            http2Connector.close();
+        }
+    }
+
+    @Test
+    void http2TransportTimeout() {
+        stubFor(get(urlEqualTo("/api/v1/record/870970/http2-timeout"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("body-870970-52880645-wjHCk.json")
+                        .withFixedDelay(2000)));
+        final ClientSettings settings = new ClientSettings()
+                .withTransport(ClientSettings.Transport.HTTP2)
+                .withReadTimeoutMs(200);
+        final RecordServiceConnector http2Connector = RecordServiceConnector.builder(
+                FailSafeHttpClient.create(ClientFactory.newClient(settings), new RetryPolicy<Response>().withMaxRetries(0)),
+                wireMockHost)
+                .build();
+        try {
+            final ProcessingException e = assertThrows(ProcessingException.class,
+                    () -> http2Connector.getRecordData("870970", "http2-timeout"));
+            assertThat(e.getCause(), is(instanceOf(HttpTimeoutException.class)));
+        } finally {
+            http2Connector.close();
+        }
+    }
+
+    @Test
+    void callGetRecordDataGzipEncoded() throws RecordServiceConnectorException, IOException {
+        final byte[] body = Files.readAllBytes(Path.of("src/test/resources/__files/body-870970-52880645-wjHCk.json"));
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(body);
+        }
+        stubFor(get(urlEqualTo("/api/v1/record/870970/gzipped"))
+                .withHeader("Accept-Encoding", containing("gzip"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Content-Encoding", "gzip")
+                        .withBody(gzipped.toByteArray())));
+
+        for (ClientSettings.Transport transport : ClientSettings.Transport.values()) {
+            final TransferStatistics transferStatistics = new TransferStatistics();
+            final ClientSettings settings = new ClientSettings()
+                    .withTransport(transport)
+                    .withCompression(true)
+                    .withTransferStatistics(transferStatistics);
+            final RecordServiceConnector compressingConnector = RecordServiceConnectorFactory.create(
+                    wireMockHost, RecordServiceConnector.TimingLogLevel.INFO, settings);
+            try {
+                final RecordDTO record = compressingConnector.getRecordData("870970", "gzipped");
+                assertThat(transport + " content", new String(record.getContent()), containsString("lokomotivmænd i krig"));
+                assertThat(transport + " compressed responses", transferStatistics.getCompressedResponses(), is(1L));
+                assertThat(transport + " compressed bytes", transferStatistics.getCompressedBytes(),
+                        is((long) gzipped.size()));
+                assertThat(transport + " uncompressed bytes", transferStatistics.getUncompressedBytes(),
+                        is((long) body.length));
+            } finally {
+                compressingConnector.close();
+            }
+        }
+    }
+
+    private static List<RecordIdDTO> stubBulkRecords(int count, int delayMs) {
+        final List<RecordIdDTO> recordIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final String bibliographicRecordId = "bulk-" + delayMs + "-" + i;
+            stubFor(get(urlEqualTo("/api/v1/record/870970/" + bibliographicRecordId))
+                    .willReturn(aResponse()
+                            .withStatus(200)
+                            .withHeader("Content-Type", "application/json")
+                            .withBodyFile("body-870970-52880645-wjHCk.json")
+                            .withFixedDelay(delayMs)));
+            recordIds.add(new RecordIdDTO(bibliographicRecordId, 870970));
+        }
+        return recordIds;
+    }
+
+    private static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @Test
+    void callGetRecordDataWithRecordCache() throws RecordServiceConnectorException {
+        final RecordCache recordCache = new RecordCache(10, Duration.ofMinutes(1));
+        final RecordServiceConnector cachingConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                .withRecordCache(recordCache)
+                .build();
+        final RecordDTO first = cachingConnector.getRecordData("870970", "52880645");
+        final RecordDTO second = cachingConnector.getRecordData("870970", "52880645");
+        assertThat("misses", recordCache.getMisses(), is(1L));
+        assertThat("hits", recordCache.getHits(), is(1L));
+        assertThat(second.getModified(), is(first.getModified()));
+        assertThat(new String(second.getContent()), containsString("lokomotivmænd i krig"));
+    }
+
+    @Test
+    void callGetRecordDataRevalidatesWithIfNoneMatch() throws RecordServiceConnectorException {
+        stubFor(get(urlEqualTo("/api/v1/record/870970/etagged"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "\"v1\"")
+                        .withBodyFile("body-870970-52880645-wjHCk.json")));
+        stubFor(get(urlEqualTo("/api/v1/record/870970/etagged"))
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)));
+        final RecordCache recordCache = new RecordCache(10, Duration.ZERO);
+        final RecordServiceConnector cachingConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                .withRecordCache(recordCache)
+                .build();
+        final RecordDTO first = cachingConnector.getRecordData("870970", "etagged");
+        final RecordDTO second = cachingConnector.getRecordData("870970", "etagged");
+        assertThat("misses", recordCache.getMisses(), is(1L));
+        assertThat("revalidations", recordCache.getRevalidations(), is(1L));
+        assertThat(second.getContent(), is(first.getContent()));
+        verify(1, getRequestedFor(urlEqualTo("/api/v1/record/870970/etagged"))
+                .withHeader("If-None-Match", equalTo("\"v1\"")));
+        verify(0, getRequestedFor(urlEqualTo("/api/v1/record/870970/etagged/meta")));
+    }
+
+    @Test
+    void callGetRecordDataRevalidatesWithIfModifiedSince() throws RecordServiceConnectorException {
+        final String lastModified = "Mon, 24 Feb 2020 13:15:47 GMT";
+        stubFor(get(urlEqualTo("/api/v1/record/870970/last-modified"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Last-Modified", lastModified)
+                        .withBodyFile("body-870970-52880645-wjHCk.json")));
+        stubFor(get(urlEqualTo("/api/v1/record/870970/last-modified"))
+                .withHeader("If-Modified-Since", equalTo(lastModified))
+                .willReturn(aResponse()
+                        .withStatus(304)));
+        final RecordCache recordCache = new RecordCache(10, Duration.ZERO);
+        final RecordServiceConnector cachingConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                .withRecordCache(recordCache)
+                .build();
+        cachingConnector.getRecordData("870970", "last-modified");
+        final RecordDTO second = cachingConnector.getRecordData("870970", "last-modified");
+        assertThat("misses", recordCache.getMisses(), is(1L));
+        assertThat("revalidations", recordCache.getRevalidations(), is(1L));
+        assertThat(new String(second.getContent()), containsString("lokomotivmænd i krig"));
+        verify(1, getRequestedFor(urlEqualTo("/api/v1/record/870970/last-modified"))
+                .withHeader("If-Modified-Since", equalTo(lastModified)));
+    }
+
+    @Test
+    void callGetRecordDataWithoutValidatorsDownloadsStaleEntry() throws RecordServiceConnectorException {
+        stubFor(get(urlEqualTo("/api/v1/record/870970/no-validators"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("body-870970-52880645-wjHCk.json")));
+        final RecordCache recordCache = new RecordCache(10, Duration.ZERO);
+        final RecordServiceConnector cachingConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                .withRecordCache(recordCache)
+                .build();
+        cachingConnector.getRecordData("870970", "no-validators");
+        cachingConnector.getRecordData("870970", "no-validators");
+        assertThat("misses", recordCache.getMisses(), is(2L));
+        assertThat("revalidations", recordCache.getRevalidations(), is(0L));
+        verify(2, getRequestedFor(urlEqualTo("/api/v1/record/870970/no-validators")));
+        verify(0, getRequestedFor(urlEqualTo("/api/v1/record/870970/no-validators/meta")));
+    }
+
+    @Test
+    void callGetRecordDataWithRecordReplica(@TempDir Path tempDir) throws RecordServiceConnectorException, IOException {
+        final Path replicaFile = tempDir.resolve("records.replica");
+        final RecordDTO first;
+        try (RecordReplica recordReplica = new RecordReplica(replicaFile, null, Duration.ofHours(1), 1 << 16)) {
+            final RecordServiceConnector replicatingConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                    .withRecordReplica(recordReplica)
+                    .build();
+            first = replicatingConnector.getRecordData("870970", "52880645");
+            final RecordDTO second = replicatingConnector.getRecordData("870970", "52880645");
+            assertThat("misses", recordReplica.getMisses(), is(1L));
+            assertThat("hits", recordReplica.getHits(), is(1L));
+            assertThat(second.getModified(), is(first.getModified()));
+            assertThat(second.getContent(), is(first.getContent()));
+        }
+        try (RecordReplica reopened = new RecordReplica(replicaFile, null, Duration.ofHours(1))) {
+            assertThat("size after reopen", reopened.size(), is(1));
+            final RecordServiceConnector replicatingConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                    .withRecordReplica(reopened)
+                    .build();
+            assertThat(new String(replicatingConnector.getRecordData("870970", "52880645").getContent()),
+                    containsString("lokomotivmænd i krig"));
+            assertThat("hits after reopen", reopened.getHits(), is(1L));
+            reopened.remove("870970", "52880645");
+            assertThat("size after remove", reopened.size(), is(0));
+        }
+        assertThrows(IOException.class, () -> new RecordReplica(replicaFile,
+                new RecordServiceConnector.Params().withMode(RecordServiceConnector.Params.Mode.MERGED), Duration.ofHours(1)));
+    }
+
+    @Test
+    void callGetRecordDataWithHedging() throws RecordServiceConnectorException {
+        // The first request is slow, the hedge sent after 100 ms answers at once
+        stubFor(get(urlEqualTo("/api/v1/record/870970/hedged"))
+                .inScenario("hedging")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("hedged")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withFixedDelay(2000)
+                        .withBodyFile("body-870970-52880645-wjHCk.json")));
+        stubFor(get(urlEqualTo("/api/v1/record/870970/hedged"))
+                .inScenario("hedging")
+                .whenScenarioStateIs("hedged")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("body-870970-52880645-wjHCk.json")));
+        final ExecutorService executorService = Executors.newCachedThreadPool();
+        try {
+            final HedgingPolicy hedgingPolicy = new HedgingPolicy(95,
+                    Duration.ofMillis(100), Duration.ofMillis(100), 1);
+            final RecordServiceConnector hedgingConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                    .withExecutorService(executorService)
+                    .withHedgingPolicy(hedgingPolicy)
+                    .build();
+            final long start = System.nanoTime();
+            final RecordDTO record = hedgingConnector.getRecordData("870970", "hedged");
+            final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            assertThat(new String(record.getContent()), containsString("lokomotivmænd i krig"));
+            assertThat("requests", hedgingPolicy.getRequests(), is(1L));
+            assertThat("hedges", hedgingPolicy.getHedges(), is(1L));
+            assertThat("hedge wins", hedgingPolicy.getHedgeWins(), is(1L));
+            assertThat("hedge answers before the slow request", elapsed.compareTo(Duration.ofMillis(2000)) < 0, is(true));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void callGetRecordDataWithHedgingOnBusyExecutor() throws RecordServiceConnectorException, InterruptedException {
+        final ExecutorService executorService = Executors.newFixedThreadPool(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // Occupies the only executor thread, like a fan-out does
+            executorService.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            final HedgingPolicy hedgingPolicy = new HedgingPolicy(95,
+                    Duration.ofMillis(50), Duration.ofMillis(50), 1);
+            final RecordServiceConnector hedgingConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                    .withExecutorService(executorService)
+                    .withHedgingPolicy(hedgingPolicy)
+                    .build();
+            final RecordDTO record = hedgingConnector.getRecordData("870970", "52880645");
+            assertThat(new String(record.getContent()), containsString("lokomotivmænd i krig"));
+            assertThat("requests", hedgingPolicy.getRequests(), is(1L));
+            assertThat("original run by caller is not hedged", hedgingPolicy.getHedges(), is(0L));
+        } finally {
+            release.countDown();
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void callGetRecordDataWithLoadBalancer() throws RecordServiceConnectorException {
+        final ClientSettings settings = new ClientSettings();
+        final LoadBalancer loadBalancer = new LoadBalancer(LoadBalancer.parseBaseUrls(
+                wireMockHost + ",http://127.0.0.1:" + wireMockServer.port()), settings);
+        final RecordServiceConnector balancedConnector = RecordServiceConnectorFactory.create(
+                loadBalancer, RecordServiceConnector.TimingLogLevel.INFO, settings);
+        try {
+            for (int i = 0; i < 4; i++) {
+                final RecordDTO record = balancedConnector.getRecordData("870970", "52880645");
+                assertThat(new String(record.getContent()), containsString("lokomotivmænd i krig"));
+            }
+        } finally {
+            balancedConnector.close();
+        }
+        for (LoadBalancer.Endpoint endpoint : loadBalancer.getEndpoints()) {
+            assertThat(endpoint.getBaseUrl(), endpoint.getRequests(), is(2L));
+            assertThat(endpoint.getBaseUrl(), endpoint.getOutstanding(), is(0));
+        }
+    }
+
+    @Test
+    void loadBalancerCountsStreamedRequestUntilClosed() throws RecordServiceConnectorException, IOException {
+        final ClientSettings settings = new ClientSettings();
+        final LoadBalancer loadBalancer = new LoadBalancer(LoadBalancer.parseBaseUrls(wireMockHost), settings);
+        final RecordServiceConnector balancedConnector = RecordServiceConnectorFactory.create(
+                loadBalancer, RecordServiceConnector.TimingLogLevel.INFO, settings);
+        final LoadBalancer.Endpoint endpoint = loadBalancer.getEndpoints().get(0);
+        try {
+            try (InputStream content = balancedConnector.getRecordContentStream("870979", "68135699", null)) {
+                assertThat("responded", endpoint.getRequests(), is(1L));
+                assertThat("outstanding while streaming", endpoint.getOutstanding(), is(1));
+                content.readAllBytes();
+            }
+            assertThat("outstanding after close", endpoint.getOutstanding(), is(0));
+        } finally {
+            balancedConnector.close();
+        }
+    }
+
+    @Test
+    void callGetRecordDataWithLookupBulkhead() throws RecordServiceConnectorException {
+        final Bulkhead bulkhead = new Bulkhead("lookup", 1, 0, Duration.ZERO);
+        final RecordServiceConnector bulkheadConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                .withLookupBulkhead(bulkhead)
+                .build();
+        assertThat("permit taken", bulkhead.acquire(), is(true));
+        assertThrows(RecordServiceConnectorException.class,
+                () -> bulkheadConnector.getRecordData("870970", "52880645"));
+        assertThat("rejected", bulkhead.getRejected(), is(1L));
+        bulkhead.release();
+        final RecordDTO record = bulkheadConnector.getRecordData("870970", "52880645");
+        assertThat(new String(record.getContent()), containsString("lokomotivmænd i krig"));
+        assertThat("active", bulkhead.getActive(), is(0));
+    }
+
+    @Test
+    void callGetRecordView() throws RecordServiceConnectorException {
+        final RecordServiceConnector viewConnector = RecordServiceConnectorFactory.create(wireMockHost);
+        try {
+            final RecordView record = viewConnector.getRecordView("870970", "52880645", null);
+            assertThat("recordId", record.getRecordId(), is(new RecordIdDTO("52880645", 870970)));
+            assertThat("content not decoded", record.isContentDecoded(), is(false));
+            assertThat(new String(record.getContent()), containsString("lokomotivmænd i krig"));
+            assertThat("content decoded", record.isContentDecoded(), is(true));
+        } finally {
+            viewConnector.close();
+        }
+    }
+
+    @Test
+    void callGetRecordViewWithoutRecordDTOFeature() throws RecordServiceConnectorException {
+        final RecordView record = connector.getRecordView("870970", "52880645", null);
+        assertThat("recordId", record.getRecordId(), is(new RecordIdDTO("52880645", 870970)));
+        assertThat("content not decoded", record.isContentDecoded(), is(false));
+        assertThat(new String(record.getContent()), containsString("lokomotivmænd i krig"));
+
+        final RecordServiceConnector.Params params = new RecordServiceConnector.Params()
+                .withAllowDeleted(true)
+                .withMode(RecordServiceConnector.Params.Mode.EXPANDED);
+        final List<RecordView> records = connector.getRecordViewCollection("870970", "52880645", params);
+        assertThat(records.size(), is(2));
+        assertThat("Record from 870979", records.stream().anyMatch(r -> r.getRecordId().getAgencyId() == 870979));
+    }
+
+    @Test
+    void callGetRecordDataWithRecordDTOFeature() throws RecordServiceConnectorException {
+        final Client client = HttpClient.newClient(new ClientConfig()
+                .register(new JacksonFeature())
+                .register(new RecordDTOFeature()));
+        final RecordServiceConnector streamingConnector = new RecordServiceConnector(client, wireMockHost);
+        try {
+            final RecordDTO expected = connector.getRecordData("870970", "52880645");
+            final RecordDTO record = streamingConnector.getRecordData("870970", "52880645");
+            assertThat("recordId", record.getRecordId(), is(expected.getRecordId()));
+            assertThat("modified", record.getModified(), is(expected.getModified()));
+            assertThat("content", record.getContent(), is(expected.getContent()));
+
+            final RecordServiceConnector.Params params = new RecordServiceConnector.Params()
+                    .withAllowDeleted(true)
+                    .withMode(RecordServiceConnector.Params.Mode.EXPANDED);
+            final HashMap<String, RecordDTO> recordCollection =
+                    streamingConnector.getRecordDataCollection("870970", "52880645", params);
+            assertThat(recordCollection.keySet(), is(connector.getRecordDataCollection("870970", "52880645", params).keySet()));
+        } finally {
+            streamingConnector.close();
+        }
+    }
+
+    @Test
+    void callGetRecordDataAfterDeadline() {
+        final RecordServiceConnector deadlineConnector = RecordServiceConnectorFactory.create(wireMockHost);
+        try (Deadline ignored = Deadline.start(Duration.ZERO)) {
+            assertThrows(RecordServiceConnectorTimeoutException.class,
+                    () -> deadlineConnector.getRecordData("870970", "52880645"));
+        } finally {
+            deadlineConnector.close();
+        }
+        assertThat("deadline closed", Deadline.current(), is(nullValue()));
+    }
+
+    @Test
+    void callGetRecordDataRetriedStatusWithinDeadline() {
+        stubFor(get(urlEqualTo("/api/v1/record/870970/bad-gateway"))
+                .willReturn(aResponse()
+                        .withStatus(502)));
+        try (Deadline ignored = Deadline.start(Duration.ofSeconds(5))) {
+            final RecordServiceConnectorTimeoutException e = assertThrows(RecordServiceConnectorTimeoutException.class,
+                    () -> connector.getRecordData("870970", "bad-gateway"));
+            assertThat(e.getMessage(), containsString("502"));
+        }
+        verify(1, getRequestedFor(urlEqualTo("/api/v1/record/870970/bad-gateway")));
+    }
+
     @Test
     void callGetRecordData_NotFound() {
         Assertions.assertThrows(RecordServiceConnectorNoContentStatusCodeException.class, () -> {
@@ -301,6 +971,79 @@ class RecordServiceConnectorTest {
         assertThat("Record from 870979", recordCollection.values().stream().anyMatch(r -> r.getRecordId().getAgencyId() == 870979));
     }
 
+    @Test
+    void callGetRecordDataCollectionWithPrefetch() throws RecordServiceConnectorException {
+        final ExecutorService executorService = Executors.newCachedThreadPool();
+        try {
+            final PrefetchPolicy prefetchPolicy = new PrefetchPolicy(EnumSet.of(PrefetchPolicy.Lookup.META),
+                    null, Duration.ofMinutes(1), 100);
+            final RecordServiceConnector prefetchingConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                    .withExecutorService(executorService)
+                    .withPrefetchPolicy(prefetchPolicy)
+                    .build();
+            final RecordServiceConnector.Params params = new RecordServiceConnector.Params()
+                    .withAllowDeleted(true)
+                    .withMode(RecordServiceConnector.Params.Mode.EXPANDED);
+            final HashMap<String, RecordDTO> recordCollection = prefetchingConnector.getRecordDataCollection("870970", "52880645", params);
+            assertThat(recordCollection.size(), is(2));
+            assertThat("prefetches", prefetchPolicy.getPrefetches(), is(2L));
+
+            final RecordDTO recordMeta = prefetchingConnector.getRecordMeta("870970", "52880645");
+            assertThat(recordMeta.getModified(), is("2018-06-01T13:43:13.147Z"));
+            assertThat("hits", prefetchPolicy.getHits(), is(1L));
+            assertThat("parked", prefetchPolicy.size(), is(1));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void callGetRecordMetaWithSlowPrefetch() throws RecordServiceConnectorException {
+        stubFor(get(urlEqualTo("/api/v1/record/870970/slow-prefetch/children"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"recordIds\":[{\"bibliographicRecordId\":\"slow-prefetch-child\",\"agencyId\":870970}]}")));
+        // The prefetch is slow, the lookup sent after giving up on it answers at once
+        stubFor(get(urlEqualTo("/api/v1/record/870970/slow-prefetch-child/meta"))
+                .inScenario("slow prefetch")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("prefetched")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withFixedDelay(2000)
+                        .withBodyFile("body-52880645-meta-AzKsb.json")));
+        stubFor(get(urlEqualTo("/api/v1/record/870970/slow-prefetch-child/meta"))
+                .inScenario("slow prefetch")
+                .whenScenarioStateIs("prefetched")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("body-52880645-meta-AzKsb.json")));
+        final ExecutorService executorService = Executors.newCachedThreadPool();
+        try {
+            final PrefetchPolicy prefetchPolicy = new PrefetchPolicy(EnumSet.of(PrefetchPolicy.Lookup.META),
+                    null, Duration.ofMinutes(1), 100, Duration.ofMillis(100));
+            final RecordServiceConnector prefetchingConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                    .withExecutorService(executorService)
+                    .withPrefetchPolicy(prefetchPolicy)
+                    .build();
+            final RecordIdDTO[] children = prefetchingConnector.getRecordChildren("870970", "slow-prefetch");
+            assertThat(children.length, is(1));
+            assertThat("prefetches", prefetchPolicy.getPrefetches(), is(1L));
+
+            final long start = System.nanoTime();
+            final RecordDTO recordMeta = prefetchingConnector.getRecordMeta("870970", "slow-prefetch-child");
+            final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            assertThat(recordMeta.getModified(), is("2018-06-01T13:43:13.147Z"));
+            assertThat("timed out", prefetchPolicy.getTimedOut(), is(1L));
+            assertThat("answered before the prefetch", elapsed.compareTo(Duration.ofMillis(2000)) < 0, is(true));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
     @Test
     void callGetRecordDataCollection_NotFound() {
         final RecordServiceConnector.Params params = new RecordServiceConnector.Params()
@@ -453,6 +1196,75 @@ class RecordServiceConnectorTest {
         assertThat(record2.getEnrichmentTrail(), is("870970"));
     }
 
+    @Test
+    void callGetHistoricRecords() throws RecordServiceConnectorException {
+        final ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            final RecordServiceConnector concurrentConnector = RecordServiceConnector.builder(CLIENT, wireMockHost)
+                    .withExecutorService(executorService)
+                    .build();
+            final List<RecordDTO> records = concurrentConnector.getHistoricRecords("870970", "44783851", 2);
+            assertThat("all versions", records.size(), is(2));
+            assertThat(records.get(0).getModified(), is("2016-06-15T08:58:06.640Z"));
+            assertThat(records.get(1).getModified(), is("2015-03-16T23:35:30.467032Z"));
+
+            final List<RecordDTO> filtered = concurrentConnector.getHistoricRecords("870970", "44783851",
+                    Instant.parse("2016-01-01T00:00:00Z"), null, 2);
+            assertThat("versions modified from", filtered.size(), is(1));
+            assertThat(new String(filtered.get(0).getContent()), containsString("Forlaget Oktober"));
+
+            final RecordIdDTO recordId = new RecordIdDTO("44783851", 870970);
+            final Map<RecordIdDTO, List<RecordDTO>> bulk = concurrentConnector.getHistoricRecordsBulk(
+                    Collections.singletonList(recordId), null, Instant.parse("2016-01-01T00:00:00Z"), 1);
+            assertThat("versions modified before", bulk.get(recordId).size(), is(1));
+            assertThat(bulk.get(recordId).get(0).getMimetype(), is("text/enrichment+marcxchange"));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void callGetHistoricRecordsWithoutOffset() throws RecordServiceConnectorException {
+        stubFor(get(urlEqualTo("/api/v1/record/870970/local-time/history"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"recordHistoryList\":[" +
+                                "{\"id\":{\"bibliographicRecordId\":\"local-time\",\"agencyId\":870970},\"modified\":\"2016-06-15T08:58:06.640\"}," +
+                                "{\"id\":{\"bibliographicRecordId\":\"local-time\",\"agencyId\":870970},\"modified\":\"2015-03-16T23:35:30.467032\"}]}")));
+        stubFor(get(urlEqualTo("/api/v1/record/870970/local-time/2015-03-16T23:35:30.467032"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("body-870970-44783851-2015-03-16T23_35_30.467032Z.json")));
+
+        final List<RecordDTO> records = connector.getHistoricRecords("870970", "local-time",
+                null, Instant.parse("2016-01-01T00:00:00Z"), 1);
+
+        assertThat("versions modified before", records.size(), is(1));
+        assertThat(records.get(0).getMimetype(), is("text/enrichment+marcxchange"));
+    }
+
+    @Test
+    void callGetHistoricRecordsWithInvalidTimestamp() {
+        stubFor(get(urlEqualTo("/api/v1/record/870970/invalid-time/history"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"recordHistoryList\":[" +
+                                "{\"id\":{\"bibliographicRecordId\":\"invalid-time\",\"agencyId\":870970},\"modified\":\"yesterday\"}]}")));
+
+        final RecordServiceConnectorException exception = assertThrows(RecordServiceConnectorException.class,
+                () -> connector.getHistoricRecords("870970", "invalid-time", Instant.parse("2016-01-01T00:00:00Z"), null, 1));
+        assertThat(exception.getMessage(), containsString("yesterday"));
+    }
+
+    @Test
+    void callGetHistoricRecordsWithNonNumericAgencyId() {
+        assertThrows(IllegalArgumentException.class,
+                () -> connector.getHistoricRecords("DBC", "44783851", 1));
+    }
+
     @Test
     void callGetHistoricRecord_NotFound() {
         Assertions.assertThrows(RecordServiceConnectorNoContentStatusCodeException.class, () -> {
@@ -521,4 +1333,12 @@ class RecordServiceConnectorTest {
         assertThat("collection is missing record", actual.getMissing().get(0), is(new RecordIdDTO("missing", 123456)));
     }
 
+    /* Sets a header while the entity is written, like the content encoders do */
+    public static class EntityWrittenHeaderInterceptor implements WriterInterceptor {
+        @Override
+        public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+            context.getHeaders().putSingle("X-Entity-Written", "true");
+            context.proceed();
+        }
+    }
 }
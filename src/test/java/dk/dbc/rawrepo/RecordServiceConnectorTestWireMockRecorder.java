@@ -146,6 +146,7 @@ public class RecordServiceConnectorTestWireMockRecorder {
         queueServiceConnectorTest.getQueueRulesTest();
         queueServiceConnectorTest.getQueueProviders();
         queueServiceConnectorTest.getQueueWorkers();
+        queueServiceConnectorTest.getQueueStats();
     }
 
     private static void enqueue(QueueServiceConnectorTest queueServiceConnectorTest)
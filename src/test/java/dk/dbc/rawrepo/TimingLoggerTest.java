@@ -0,0 +1,250 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.rawrepo;
+
+import dk.dbc.rawrepo.client.TimingLogger;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MarkerIgnoringBase;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class TimingLoggerTest {
+    private static final int ITERATIONS = 100_000;
+
+    @Test
+    void formatsArgumentsAndElapsedTime() {
+        final Logger logger = mock(Logger.class);
+        when(logger.isDebugEnabled()).thenReturn(true);
+        final List<String> messages = new ArrayList<>();
+        doAnswer(invocation -> messages.add(invocation.getArgument(1).toString()))
+                .when(logger).debug(eq("{}"), any(Object.class));
+        final TimingLogger timingLogger = new TimingLogger(logger, "debug");
+
+        timingLogger.log("getRecordData({}, {}) took {} milliseconds", 870970, "52880645", timingLogger.start());
+        timingLogger.log("getSitemap({}) took {} milliseconds", 191919L, timingLogger.start());
+        timingLogger.log("getAllAgencies() took {} milliseconds", timingLogger.start());
+        timingLogger.message("Prefetching {} records of agency {}", 2, 870970);
+
+        assertThat("messages logged", messages.size(), is(4));
+        assertThat(messages.get(0).matches("getRecordData\\(870970, 52880645\\) took \\d+ milliseconds"), is(true));
+        assertThat(messages.get(1).matches("getSitemap\\(191919\\) took \\d+ milliseconds"), is(true));
+        assertThat(messages.get(2).matches("getAllAgencies\\(\\) took \\d+ milliseconds"), is(true));
+        assertThat(messages.get(3), is("Prefetching 2 records of agency 870970"));
+    }
+
+    @Test
+    void nothingLoggedWhenLevelIsDisabled() {
+        final Logger logger = mock(Logger.class);
+        final TimingLogger timingLogger = new TimingLogger(logger, "TRACE");
+
+        final long start = timingLogger.start();
+        timingLogger.log("getRecordData({}, {}) took {} milliseconds", "870970", "52880645", start);
+
+        assertThat(start, is(TimingLogger.DISABLED));
+        verify(logger).isTraceEnabled();
+        verifyNoMoreInteractions(logger);
+    }
+
+    @Test
+    void disabledLevelDoesNotAllocate() {
+        // slf4j-simple logs at INFO and above by default
+        final TimingLogger timingLogger = new TimingLogger(LoggerFactory.getLogger(TimingLoggerTest.class), "TRACE");
+
+        final long allocated = allocatedBytes(() -> callTimingLogger(timingLogger, "870970", "52880645"));
+
+        assertThat("bytes allocated by " + ITERATIONS + " calls", allocated, lessThan((long) ITERATIONS));
+    }
+
+    @Test
+    void enabledLevelDoesNotAllocate() {
+        final CountingLogger logger = new CountingLogger();
+        final TimingLogger timingLogger = new TimingLogger(logger, "INFO");
+
+        final long allocated = allocatedBytes(() -> callTimingLogger(timingLogger, "870970", "52880645"));
+
+        assertThat("calls logged", logger.calls, is(2L * ITERATIONS));
+        // The message is formatted into a builder reused by the thread, without boxing
+        assertThat("bytes allocated per call", allocated / ITERATIONS, is(0L));
+    }
+
+    /* Bytes allocated by the current thread running the task, after a warm up run */
+    private static long allocatedBytes(Runnable task) {
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        task.run();
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        task.run();
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static void callTimingLogger(TimingLogger timingLogger, String agencyId, String bibliographicRecordId) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            final long start = timingLogger.start();
+            timingLogger.log("getRecordData({}, {}) took {} milliseconds", agencyId, bibliographicRecordId, start);
+        }
+    }
+
+    /* Logger enabled at INFO and above, counting calls without formatting them */
+    private static class CountingLogger extends MarkerIgnoringBase {
+        private long calls;
+
+        @Override
+        public boolean isTraceEnabled() {
+            return false;
+        }
+
+        @Override
+        public void trace(String msg) {
+        }
+
+        @Override
+        public void trace(String format, Object arg) {
+        }
+
+        @Override
+        public void trace(String format, Object arg1, Object arg2) {
+        }
+
+        @Override
+        public void trace(String format, Object... arguments) {
+        }
+
+        @Override
+        public void trace(String msg, Throwable t) {
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            return false;
+        }
+
+        @Override
+        public void debug(String msg) {
+        }
+
+        @Override
+        public void debug(String format, Object arg) {
+        }
+
+        @Override
+        public void debug(String format, Object arg1, Object arg2) {
+        }
+
+        @Override
+        public void debug(String format, Object... arguments) {
+        }
+
+        @Override
+        public void debug(String msg, Throwable t) {
+        }
+
+        @Override
+        public boolean isInfoEnabled() {
+            return true;
+        }
+
+        @Override
+        public void info(String msg) {
+            calls++;
+        }
+
+        @Override
+        public void info(String format, Object arg) {
+            calls++;
+        }
+
+        @Override
+        public void info(String format, Object arg1, Object arg2) {
+            calls++;
+        }
+
+        @Override
+        public void info(String format, Object... arguments) {
+            calls++;
+        }
+
+        @Override
+        public void info(String msg, Throwable t) {
+            calls++;
+        }
+
+        @Override
+        public boolean isWarnEnabled() {
+            return true;
+        }
+
+        @Override
+        public void warn(String msg) {
+            calls++;
+        }
+
+        @Override
+        public void warn(String format, Object arg) {
+            calls++;
+        }
+
+        @Override
+        public void warn(String format, Object arg1, Object arg2) {
+            calls++;
+        }
+
+        @Override
+        public void warn(String format, Object... arguments) {
+            calls++;
+        }
+
+        @Override
+        public void warn(String msg, Throwable t) {
+            calls++;
+        }
+
+        @Override
+        public boolean isErrorEnabled() {
+            return true;
+        }
+
+        @Override
+        public void error(String msg) {
+            calls++;
+        }
+
+        @Override
+        public void error(String format, Object arg) {
+            calls++;
+        }
+
+        @Override
+        public void error(String format, Object arg1, Object arg2) {
+            calls++;
+        }
+
+        @Override
+        public void error(String format, Object... arguments) {
+            calls++;
+        }
+
+        @Override
+        public void error(String msg, Throwable t) {
+            calls++;
+        }
+    }
+}